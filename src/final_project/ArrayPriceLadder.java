@@ -0,0 +1,151 @@
+package final_project;
+
+
+/**
+ * ArrayPriceLadder indexes price levels with a preallocated array over a bounded
+ * integer price band [minPrice, maxPrice], for instruments that trade in a narrow tick band.
+ *
+ * 1. The level of a price is levels[price - minPrice]: no lookup, no allocation and
+ *    no tree rebalancing when orders are added, filled or cancelled.
+ * 2. A LevelBitmap marks the non-empty levels, so the best level and the next level
+ *    in priority order are found with a few Long.numberOfTrailingZeros /
+ *    numberOfLeadingZeros calls.
+ * 3. Prices outside the band are either:
+ *        1. rejected (accepts() returns false, the order book refuses the order), or
+ *        2. kept in an overflow TreePriceLadder, merged with the band when walking levels
+ *           (skipped while it holds no order).
+ *
+ * Not thread-safe: always accessed under the order book lock.
+ */
+
+public class ArrayPriceLadder<T extends Order> extends PriceLadder<T> {
+
+    private final int minPrice;
+    private final int maxPrice;
+    private final PriceLevel<T>[] levels;
+    private final LevelBitmap nonEmpty;
+
+    // Index of out-of-band prices, null when they are rejected
+    private final TreePriceLadder<T> overflow;
+
+
+    public ArrayPriceLadder(boolean descending, int minPrice, int maxPrice, boolean allowOverflow) {
+
+        super(descending);
+        if (maxPrice < minPrice) {
+            throw new IllegalArgumentException("Invalid price band: [" + minPrice + ", " + maxPrice + "]");
+        }
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        int size = maxPrice - minPrice + 1;
+        @SuppressWarnings("unchecked")
+        PriceLevel<T>[] array = (PriceLevel<T>[]) new PriceLevel<?>[size];
+        this.levels = array;
+        for (int i = 0; i < size; i++) {
+            levels[i] = new PriceLevel<>(minPrice + i);
+        }
+        this.nonEmpty = new LevelBitmap(size);
+        this.overflow = allowOverflow ? new TreePriceLadder<>(descending) : null;
+
+    }
+
+
+
+    private boolean inBand(int price) {
+        return price >= minPrice && price <= maxPrice;
+    }
+
+
+
+    @Override
+    public boolean accepts(int price) {
+        return overflow != null || inBand(price);
+    }
+
+
+
+    @Override
+    protected PriceLevel<T> levelFor(int price) {
+
+        if (inBand(price)) {
+            return levels[price - minPrice];
+        }
+        if (overflow == null) {
+            throw new IllegalArgumentException("Price " + price + " outside band [" + minPrice + ", " + maxPrice + "]");
+        }
+        return overflow.levelFor(price);
+
+    }
+
+
+
+    @Override
+    protected void levelActivated(PriceLevel<T> level) {
+
+        if (inBand(level.getPrice())) {
+            nonEmpty.set(level.getPrice() - minPrice);
+        } else {
+            overflow.levelActivated(level);
+        }
+
+    }
+
+
+
+    @Override
+    protected void levelEmptied(PriceLevel<T> level) {
+
+        if (inBand(level.getPrice())) {
+            nonEmpty.clear(level.getPrice() - minPrice);
+        } else {
+            overflow.levelEmptied(level);
+        }
+
+    }
+
+
+
+    @Override
+    public PriceLevel<T> bestLevel() {
+
+        int i = descending ? nonEmpty.previousSetBit(levels.length - 1) : nonEmpty.nextSetBit(0);
+        PriceLevel<T> inBand = i < 0 ? null : levels[i];
+        return overflow == null || overflow.isEmpty() ? inBand : better(inBand, overflow.bestLevel());
+
+    }
+
+
+
+    @Override
+    protected PriceLevel<T> levelAfter(int price) {
+
+        // Index of the first level after "price" in priority order, inside the band
+        int i;
+        if (descending) {
+            i = price > maxPrice ? nonEmpty.previousSetBit(levels.length - 1) : nonEmpty.previousSetBit(price - minPrice - 1);
+        } else {
+            i = price < minPrice ? nonEmpty.nextSetBit(0) : (price >= maxPrice ? -1 : nonEmpty.nextSetBit(price - minPrice + 1));
+        }
+        PriceLevel<T> inBand = i < 0 ? null : levels[i];
+        return overflow == null || overflow.isEmpty() ? inBand : better(inBand, overflow.levelAfter(price));
+
+    }
+
+
+
+    // The level with the higher priority of the two (either may be null)
+    private PriceLevel<T> better(PriceLevel<T> a, PriceLevel<T> b) {
+
+        if (a == null) return b;
+        if (b == null) return a;
+        return isBetter(a.getPrice(), b.getPrice()) ? a : b;
+
+    }
+
+
+
+    @Override
+    public int getLevelCount() {
+        return nonEmpty.cardinality() + (overflow == null ? 0 : overflow.getLevelCount());
+    }
+}
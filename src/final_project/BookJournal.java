@@ -0,0 +1,340 @@
+package final_project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * BookJournal is the write-ahead journal of one OrderBook: one binary record per command,
+ * holding the book events the command produced, in the order they happened.
+ *
+ * 1. Events:
+ *        1. LIMIT:   a limit order after its own matching (remaining size, resting or not)
+ *        2. STOP:    a stop order added to the trigger index
+ *        3. FILL:    a resting limit order reduced by a trade (removed at size 0)
+ *        4. CANCEL:  a resting order unlinked (cancel request or self-trade prevention)
+ *        5. TRIGGER: a stop order taken out of the trigger index (its fills follow)
+ *    Market orders leave no event of their own, only the FILL events of their counters.
+ * 2. The matcher records events while the command runs (begin(), then the event methods);
+ *    commit() appends the whole command as one record with the next sequence number.
+ *    Events are encoded into a reused buffer, so recording allocates nothing.
+ * 3. Recovery loads the latest snapshot, then replays the records whose sequence number is
+ *    above the snapshot's one through a Listener that applies each event to the book.
+ *    Replay applies outcomes, it does not match again, so it does not depend on the config
+ *    (e.g. the self-trade policy) of the run that wrote the journal.
+ * 4. After "snapshot_interval" commands, isSnapshotDue() asks the owner to request a snapshot
+ *    (written in the background by a Snapshotter) and call snapshotTaken().
+ * 5. Durability follows the "durability" setting (see JournalFlusher): commit() returns the
+ *    record's sequence number, and the owner calls awaitDurable() with it once it has
+ *    released the book, before the command's response is sent.
+ * 6. A record that cannot be appended fails its command with a JournalFailedException, and
+ *    so does every later begin(): the journal stops taking commands, before they change the
+ *    book, since their records could not follow the missing one. A failed fsync (see
+ *    JournalFlusher) stops it the same way, and fails the commands waiting for it.
+ *
+ * Not thread-safe: always accessed through OrderBook.execute().
+ */
+
+public class BookJournal {
+
+    private static final byte LIMIT = 1;
+    private static final byte STOP = 2;
+    private static final byte FILL = 3;
+    private static final byte CANCEL = 4;
+    private static final byte TRIGGER = 5;
+
+    private static final int SEQUENCE_BYTES = 8;
+
+
+    // Applies the events of a replayed record, in order
+    public interface Listener {
+        void limit(LimitOrder order, boolean resting);
+        void stop(StopOrder order);
+        void fill(int orderId, int size);
+        void cancel(int orderId);
+        void trigger(int orderId);
+    }
+
+
+    private final Journal journal;
+    private final JournalFlusher flusher;
+    private final int snapshotInterval;
+
+    private ByteBuffer record = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    private long sequence;
+    private int commandsSinceSnapshot;
+
+    // First append failure, after which no command is accepted (null while healthy)
+    private IOException failure;
+
+
+    /**
+     * @param journal          The file the records are appended to.
+     * @param flusher          Makes the records durable.
+     * @param snapshotInterval Number of commands between two snapshots.
+     */
+    public BookJournal(Journal journal, JournalFlusher flusher, int snapshotInterval) {
+
+        this.journal = journal;
+        this.flusher = flusher;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+
+    }
+
+
+
+    // Starts the record of a new command; call it before the command changes the book
+    public void begin() {
+
+        IOException failed = failure != null ? failure : flusher.getFailure();
+        if (failed != null) {
+            throw new JournalFailedException("The order book journal failed, commands are rejected", failed);
+        }
+        record.clear();
+        record.position(SEQUENCE_BYTES);
+
+    }
+
+
+    public void limit(LimitOrder order, boolean resting) {
+
+        ensure(32 + 2 * order.getUsername().length());
+        record.put(LIMIT);
+        putOrder(order, order.getLimitPrice());
+        record.put((byte) (resting ? 1 : 0));
+
+    }
+
+
+    public void stop(StopOrder order) {
+
+        ensure(32 + 2 * order.getUsername().length());
+        record.put(STOP);
+        putOrder(order, order.getStopPrice());
+
+    }
+
+
+    public void fill(int orderId, int size) {
+
+        ensure(9);
+        record.put(FILL).putInt(orderId).putInt(size);
+
+    }
+
+
+    public void cancel(int orderId) {
+
+        ensure(5);
+        record.put(CANCEL).putInt(orderId);
+
+    }
+
+
+    public void trigger(int orderId) {
+
+        ensure(5);
+        record.put(TRIGGER).putInt(orderId);
+
+    }
+
+
+
+    /**
+     * Appends the events recorded since begin() as one record (nothing if there are none).
+     *
+     * @return The sequence number to pass to awaitDurable(), 0 if nothing was appended.
+     * @throws JournalFailedException if the record could not be appended (or forced, with SYNC).
+     */
+    public long commit() {
+
+        if (record.position() == SEQUENCE_BYTES) return 0;
+
+        record.putLong(0, sequence + 1);
+        record.flip();
+        try {
+            journal.append(record);
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to append to the order book journal: " + e.getMessage());
+            failure = e;
+            throw new JournalFailedException("Cannot append to the order book journal", e);
+        }
+        sequence++;
+        commandsSinceSnapshot++;
+        flusher.appended(sequence);
+        return sequence;
+
+    }
+
+
+
+    // Waits until the committed record is durable (see JournalFlusher); call it outside the book.
+    // Throws a JournalFailedException if the journal failed before.
+    public void awaitDurable(long sequence) {
+        if (sequence > 0) flusher.awaitDurable(sequence);
+    }
+
+
+
+    public boolean isSnapshotDue() {
+        return commandsSinceSnapshot >= snapshotInterval;
+    }
+
+
+    // Sequence number of the last committed (or replayed) command
+    public long getSequence() {
+        return sequence;
+    }
+
+
+    // A snapshot up to getSequence() has been requested: restarts the interval
+    public void snapshotTaken() {
+        commandsSinceSnapshot = 0;
+    }
+
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public JournalFlusher getFlusher() {
+        return flusher;
+    }
+
+
+
+    /**
+     * Replays the records written after the given snapshot.
+     *
+     * @param snapshotSequence Sequence number stored in the snapshot (0 for none).
+     * @param segment          Journal segment where the snapshot ends (-1 if unknown: oldest segment).
+     * @param position         Offset in that segment of the first record after the snapshot.
+     * @param listener         Applies the events to the book.
+     * @return The number of replayed commands.
+     * @throws IOException if a record fails its CRC check (replay stops there, it does not
+     *         end as if the journal were complete); the book must not be used.
+     * @throws IllegalStateException if a record does not apply to the book (corrupt journal);
+     *         getSequence() is then the last record applied, and the book must not be used.
+     */
+    public int replay(long snapshotSequence, long segment, int position, Listener listener) throws IOException {
+
+        JournalReader reader = new JournalReader(journal.getPath(), segment, position);
+        sequence = snapshotSequence;
+        while (reader.poll(payload -> replayRecord(payload, listener), Integer.MAX_VALUE) > 0) {
+            // until the end of the journal
+        }
+        if (reader.isCorrupt()) {
+            throw new IOException("Corrupt order book journal after record " + sequence + " (offset "
+                    + reader.getPosition() + " of segment " + reader.getSegment() + ")");
+        }
+        int replayed = (int) (sequence - snapshotSequence);
+
+        commandsSinceSnapshot = replayed;
+        return replayed;
+
+    }
+
+
+    // Applies one record and moves the sequence number to it
+    private void replayRecord(ByteBuffer payload, Listener listener) {
+
+        try {
+            sequence = apply(payload, sequence, listener);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Corrupt order book journal after record " + sequence + ": " + e.getMessage(), e);
+        }
+
+    }
+
+
+
+    /**
+     * Applies the events of one record, unless it is already covered.
+     *
+     * @param payload       The record.
+     * @param afterSequence Records up to this sequence number are skipped.
+     * @param listener      Applies the events.
+     * @return The sequence number reached: the record's one if applied, afterSequence otherwise.
+     */
+    public static long apply(ByteBuffer payload, long afterSequence, Listener listener) {
+
+        long recordSequence = payload.getLong();
+        if (recordSequence <= afterSequence) return afterSequence; // already applied
+        while (payload.hasRemaining()) {
+            byte event = payload.get();
+            switch (event) {
+                case LIMIT:
+                    LimitOrder limit = getOrder(payload, true);
+                    listener.limit(limit, payload.get() == 1);
+                    break;
+                case STOP:
+                    listener.stop(getOrder(payload, false));
+                    break;
+                case FILL:
+                    listener.fill(payload.getInt(), payload.getInt());
+                    break;
+                case CANCEL:
+                    listener.cancel(payload.getInt());
+                    break;
+                case TRIGGER:
+                    listener.trigger(payload.getInt());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal event " + event + " in record " + recordSequence);
+            }
+        }
+        return recordSequence;
+
+    }
+
+
+
+    // Order fields: ID, side, size, price, timestamp, username (length + UTF-16 chars)
+    private void putOrder(Order order, int price) {
+
+        record.putInt(order.getOrderId());
+        record.put((byte) (order.getSide() == Side.BID ? 0 : 1));
+        record.putInt(order.getSize());
+        record.putInt(price);
+        record.putLong(order.getTimestamp());
+        String username = order.getUsername();
+        record.putShort((short) username.length());
+        for (int i = 0; i < username.length(); i++) {
+            record.putChar(username.charAt(i));
+        }
+
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Order> T getOrder(ByteBuffer payload, boolean limit) {
+
+        int orderId = payload.getInt();
+        String type = payload.get() == 0 ? "bid" : "ask";
+        int size = payload.getInt();
+        int price = payload.getInt();
+        long timestamp = payload.getLong();
+        char[] username = new char[payload.getShort()];
+        for (int i = 0; i < username.length; i++) {
+            username[i] = payload.getChar();
+        }
+        return (T) (limit
+                ? new LimitOrder(orderId, new String(username), type, size, timestamp, price)
+                : new StopOrder(orderId, new String(username), type, size, timestamp, price));
+
+    }
+
+
+    private void ensure(int bytes) {
+
+        if (record.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+
+    }
+}
@@ -0,0 +1,383 @@
+package final_project;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * BookSnapshot is the content of an order book snapshot file ("orderbook_data.json"),
+ * independent of the live book: it can be read, brought forward with journal records,
+ * and written back without touching the OrderBook.
+ *
+ * 1. Holds the live limit and stop orders ("activeOrders"), the resting limit orders and stop
+ *    orders of each side, and where the snapshot ends in the journal: the sequence number
+ *    of the last record it covers, and the segment / offset of the next record.
+ * 2. As a BookJournal.Listener it applies journaled events the same way recovery does,
+ *    so a Snapshotter can build the next snapshot from the previous one and the journal.
+ *    Orders that leave the book (filled, triggered, cancelled) are dropped from activeOrders
+ *    and collected with their final status (getEvicted()), for the book's ColdOrderIndex.
+ *    Files of older versions, which kept every order in activeOrders, are split the same way on read().
+ * 3. Resting orders are kept in arrival order per side; write() sorts them by price with a
+ *    stable sort, which is the ladder order (price priority, FIFO inside a price).
+ * 4. write() writes and fsyncs a temporary file first, then renames it over the previous
+ *    snapshot, so a crash never leaves a half-written snapshot.
+ *
+ * Not thread-safe: owned by one thread at a time (loading, or the snapshot thread).
+ */
+
+public class BookSnapshot implements BookJournal.Listener {
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    // Old files stored the queues in heap order: price-time priority puts them back in ladder order
+    private static final Comparator<LimitOrder> BID_PRIORITY = Comparator.comparingInt(LimitOrder::getLimitPrice).reversed()
+            .thenComparingLong(LimitOrder::getTimestamp);
+    private static final Comparator<LimitOrder> ASK_PRIORITY = Comparator.comparingInt(LimitOrder::getLimitPrice)
+            .thenComparingLong(LimitOrder::getTimestamp);
+    private static final Comparator<StopOrder> STOP_PRIORITY = Comparator.comparingLong(StopOrder::getTimestamp);
+
+    private final Map<Integer, Order> activeOrders = new LinkedHashMap<>();
+    private final Map<Integer, LimitOrder> bidOrders = new LinkedHashMap<>();
+    private final Map<Integer, LimitOrder> askOrders = new LinkedHashMap<>();
+    private final Map<Integer, StopOrder> bidStops = new LinkedHashMap<>();
+    private final Map<Integer, StopOrder> askStops = new LinkedHashMap<>();
+
+    // Orders dropped from activeOrders since the snapshot was read -> final status
+    private final Map<Integer, Byte> evicted = new LinkedHashMap<>();
+
+    // Last covered journal record, and position of the next one (segment -1: oldest segment)
+    private long sequence;
+    private long segment = -1;
+    private int position;
+
+
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @param filePath The snapshot file.
+     * @return The snapshot, or null if the file does not exist.
+     */
+    public static BookSnapshot read(String filePath) throws IOException {
+
+        File file = new File(filePath);
+        if (!file.exists()) return null;
+
+        BookSnapshot snapshot = new BookSnapshot();
+        List<LimitOrder> bidList = new ArrayList<>();
+        List<LimitOrder> askList = new ArrayList<>();
+        List<StopOrder> bidStopList = new ArrayList<>();
+        List<StopOrder> askStopList = new ArrayList<>();
+
+        // Streamed: one order object at a time, the file is never held as a JSON tree
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(file)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    // Files written before the journal have no sequence number, and older ones no offset
+                    case "journalSequence":
+                        snapshot.sequence = reader.nextLong();
+                        break;
+                    case "journalSegment":
+                        snapshot.segment = reader.nextLong();
+                        break;
+                    case "journalPosition":
+                        snapshot.position = reader.nextInt();
+                        break;
+                    case "activeOrders":
+                        readActiveOrders(reader, snapshot.activeOrders);
+                        break;
+                    case "bidOrders":
+                        readList(reader, LimitOrder.class, bidList);
+                        break;
+                    case "askOrders":
+                        readList(reader, LimitOrder.class, askList);
+                        break;
+                    case "bidStopOrders":
+                        readList(reader, StopOrder.class, bidStopList);
+                        break;
+                    case "askStopOrders":
+                        readList(reader, StopOrder.class, askStopList);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | JsonParseException e) {
+            throw new IOException("Malformed order book file " + filePath + ": " + e.getMessage(), e);
+        }
+
+        // limit orders (the sort is stable: orders saved in ladder order keep their FIFO position)
+        bidList.sort(BID_PRIORITY);
+        askList.sort(ASK_PRIORITY);
+
+        // stop orders: only the arrival order matters, the indexes sort by stop price themselves
+        bidStopList.sort(STOP_PRIORITY);
+        askStopList.sort(STOP_PRIORITY);
+
+        for (LimitOrder l : bidList) snapshot.bidOrders.put(l.getOrderId(), snapshot.sameInstance(l));
+        for (LimitOrder l : askList) snapshot.askOrders.put(l.getOrderId(), snapshot.sameInstance(l));
+        for (StopOrder st : bidStopList) snapshot.bidStops.put(st.getOrderId(), snapshot.sameInstance(st));
+        for (StopOrder st : askStopList) snapshot.askStops.put(st.getOrderId(), snapshot.sameInstance(st));
+
+        // Older files also hold the orders that left the book
+        for (Order order : new ArrayList<>(snapshot.activeOrders.values())) {
+            if (!snapshot.isResting(order)) {
+                snapshot.evict(order);
+            }
+        }
+        return snapshot;
+
+    }
+
+
+
+    // "activeOrders": order ID -> order, whose class depends on its "orderType"
+    private static void readActiveOrders(JsonReader reader, Map<Integer, Order> activeOrders) throws IOException {
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+
+            int orderId = Integer.parseInt(reader.nextName());
+            JsonObject obj = JsonParser.parseReader(reader).getAsJsonObject(); // one order
+            String orderType = obj.get("orderType").getAsString();
+
+            if ("limit".equalsIgnoreCase(orderType)) {
+                activeOrders.put(orderId, gson.fromJson(obj, LimitOrder.class));
+            } else if ("stop".equalsIgnoreCase(orderType)) {
+                activeOrders.put(orderId, gson.fromJson(obj, StopOrder.class));
+            } else {
+                System.err.println("[Main]️ Order book Unknown orderType: " + orderType + " skipping order ID " + orderId);
+            }
+        }
+        reader.endObject();
+
+    }
+
+
+    private static <T> void readList(JsonReader reader, Class<T> type, List<T> out) throws IOException {
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            out.add(gson.fromJson(reader, type));
+        }
+        reader.endArray();
+
+    }
+
+
+
+    /**
+     * Returns the instance stored in activeOrders for the same order ID, so that the resting
+     * lists and activeOrders share one object per order (falls back to the given order).
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Order> T sameInstance(T order) {
+
+        Order active = activeOrders.get(order.getOrderId());
+        if (active != null && active.getClass() == order.getClass()) {
+            return (T) active;
+        }
+        activeOrders.put(order.getOrderId(), order);
+        return order;
+
+    }
+
+
+
+    private boolean isResting(Order order) {
+
+        int orderId = order.getOrderId();
+        if (order instanceof LimitOrder) {
+            return bidOrders.containsKey(orderId) || askOrders.containsKey(orderId);
+        }
+        return bidStops.containsKey(orderId) || askStops.containsKey(orderId);
+
+    }
+
+
+    // Moves an order that left the book from activeOrders to the evicted ones
+    private void evict(Order order) {
+
+        activeOrders.remove(order.getOrderId());
+        evicted.put(order.getOrderId(), ColdOrderIndex.statusOf(order));
+
+    }
+
+
+
+    /**
+     * Writes the snapshot to the given file, replacing it atomically.
+     */
+    public void write(String filePath) throws IOException {
+
+        List<LimitOrder> bidList = new ArrayList<>(bidOrders.values());
+        List<LimitOrder> askList = new ArrayList<>(askOrders.values());
+        List<StopOrder> bidStopList = new ArrayList<>(bidStops.values());
+        List<StopOrder> askStopList = new ArrayList<>(askStops.values());
+        // Stable sorts: arrival order is kept inside each price
+        bidList.sort(Comparator.comparingInt(LimitOrder::getLimitPrice).reversed());
+        askList.sort(Comparator.comparingInt(LimitOrder::getLimitPrice));
+        bidStopList.sort(Comparator.comparingInt(StopOrder::getStopPrice));
+        askStopList.sort(Comparator.comparingInt(StopOrder::getStopPrice).reversed());
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("journalSequence", sequence);
+        map.put("journalSegment", segment);
+        map.put("journalPosition", position);
+        map.put("bidOrders", bidList);
+        map.put("askOrders", askList);
+        map.put("bidStopOrders", bidStopList);
+        map.put("askStopOrders", askStopList);
+        map.put("activeOrders", activeOrders);
+
+        String tmpPath = filePath + ".tmp";
+        try (FileOutputStream out = new FileOutputStream(tmpPath);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            gson.toJson(map, writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(Paths.get(tmpPath), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    }
+
+
+
+    /**
+     * Applies one journal record, if it is not covered yet.
+     *
+     * @param payload The record, as handed by a JournalReader.
+     */
+    public void apply(ByteBuffer payload) {
+        sequence = BookJournal.apply(payload, sequence, this);
+    }
+
+
+    // Journal position of the record after the last applied one
+    public void setJournalPosition(long segment, int position) {
+
+        this.segment = segment;
+        this.position = position;
+
+    }
+
+
+
+    // BookJournal.Listener: same effects as the replay of the heap store (see OrderBook.replayJournal())
+
+    public void limit(LimitOrder order, boolean resting) {
+
+        if (resting) {
+            activeOrders.put(order.getOrderId(), order);
+            (order.getSide() == Side.BID ? bidOrders : askOrders).put(order.getOrderId(), order);
+        } else {
+            evicted.put(order.getOrderId(), ColdOrderIndex.statusOf(order));
+        }
+
+    }
+
+    public void stop(StopOrder order) {
+
+        activeOrders.put(order.getOrderId(), order);
+        (order.getSide() == Side.BID ? bidStops : askStops).put(order.getOrderId(), order);
+
+    }
+
+    public void fill(int orderId, int size) {
+
+        Order order = activeOrders.get(orderId);
+        order.setSize(order.getSize() - size);
+        if (order.getSize() == 0) {
+            (order.getSide() == Side.BID ? bidOrders : askOrders).remove(orderId);
+            evict(order);
+        }
+
+    }
+
+    public void cancel(int orderId) {
+
+        Order order = activeOrders.get(orderId);
+        if (order instanceof LimitOrder) {
+            (order.getSide() == Side.BID ? bidOrders : askOrders).remove(orderId);
+        } else if (order instanceof StopOrder) {
+            (order.getSide() == Side.BID ? bidStops : askStops).remove(orderId);
+        }
+        evict(order);
+
+    }
+
+    public void trigger(int orderId) {
+
+        Order order = activeOrders.get(orderId);
+        (order.getSide() == Side.BID ? bidStops : askStops).remove(orderId);
+        order.setSize(0);
+        evict(order);
+
+    }
+
+
+
+    public Map<Integer, Order> getActiveOrders() {
+        return activeOrders;
+    }
+
+    // Orders that left the book since the snapshot was read (including those of an older file) -> final status
+    public Map<Integer, Byte> getEvicted() {
+        return evicted;
+    }
+
+    // Resting orders of each side, in ladder order (limit) or arrival order (stop)
+    public List<LimitOrder> getBidOrders() {
+        return new ArrayList<>(bidOrders.values());
+    }
+
+    public List<LimitOrder> getAskOrders() {
+        return new ArrayList<>(askOrders.values());
+    }
+
+    public List<StopOrder> getBidStops() {
+        return new ArrayList<>(bidStops.values());
+    }
+
+    public List<StopOrder> getAskStops() {
+        return new ArrayList<>(askStops.values());
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getSegment() {
+        return segment;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
@@ -6,9 +6,12 @@ package final_project;
  * {
  *   "operation": "cancelOrder",
  *   "values": {
- *       "orderId": <NUMBER>
+ *       "orderId": <NUMBER>,
+ *       "symbol": "BTC"
  *   }
  * }
+ * 
+ * "symbol" is optional: without it, the order is looked up in every order book.
  */
 public class CancelOrderRequest {
     private String operation;
@@ -29,14 +32,24 @@ public class CancelOrderRequest {
 
     public static class Values {
         private int orderId;
+        private String symbol;
 
         public Values(int orderId) {
+            this(orderId, null);
+        }
+
+        public Values(int orderId, String symbol) {
             this.orderId = orderId;
+            this.symbol = symbol;
         }
 
         public int getOrderId() {
             return orderId;
         }
+
+        public String getSymbol() {
+            return symbol;
+        }
     }
 }
 
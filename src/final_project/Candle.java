@@ -0,0 +1,63 @@
+package final_project;
+
+
+
+/**
+ * Candle is one bar of the getCandles operation: the trades of a symbol during one period
+ * of the requested resolution.
+ *
+ * 1. start: start of the period, in epoch seconds (a multiple of the resolution).
+ * 2. open, high, low, close: prices of the first trade, the highest and lowest prices, and the
+ *    price of the last trade of the period.
+ * 3. volume: traded size, and trades: number of executions (each one counted once, not per side).
+ */
+
+public class Candle {
+
+    private long start;
+    private int open;
+    private int high;
+    private int low;
+    private int close;
+    private long volume;
+    private int trades;
+
+    public Candle(long start, int open, int high, int low, int close, long volume, int trades) {
+
+        this.start = start;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.trades = trades;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public int getOpen() {
+        return open;
+    }
+
+    public int getHigh() {
+        return high;
+    }
+
+    public int getLow() {
+        return low;
+    }
+
+    public int getClose() {
+        return close;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public int getTrades() {
+        return trades;
+    }
+}
@@ -0,0 +1,170 @@
+package final_project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * CandleEngine keeps the candles of every symbol at the resolutions of the getCandles
+ * operation (1s, 1m, 5m, 1h, 1d), fed with each trade as TradeHistory records it.
+ *
+ * 1. One CandleSeries per symbol and resolution: the recent candles in a ring of primitive arrays,
+ *    the older ones in a file of fixed-width records "<SYMBOL>_<resolution>.bin" of the candle
+ *    directory ("candle_dir" in the config).
+ * 2. Each execution is recorded twice in the trade log (one TradeInfo per side): both update the
+ *    prices, only the "bid" one counts in the volume and trade count.
+ * 3. On startup, TradeHistory replays the trade log from the oldest candle not yet in a file
+ *    (see getReplayStart()), so candles lost by a crash are rebuilt and nothing is counted twice.
+ * 4. A query reads one ring or one file range, whatever the size of the trade log.
+ *
+ * Not thread-safe: guarded by the TradeHistory lock.
+ */
+
+public class CandleEngine {
+
+    private static final String[] RESOLUTION_NAMES = {"1s", "1m", "5m", "1h", "1d"};
+    private static final int[] RESOLUTIONS = {1, 60, 300, 3600, 86400};
+
+    private final Path dir;
+    private final int ringSize;
+    private final Map<String, CandleSeries[]> series = new HashMap<>();
+
+
+    /**
+     * @param dir      Directory of the candle files.
+     * @param ringSize Number of recent candles of each series kept in memory.
+     */
+    public CandleEngine(String dir, int ringSize) {
+
+        this.dir = Paths.get(dir);
+        this.ringSize = Math.max(1, ringSize);
+
+    }
+
+
+
+    // Resolution in seconds of a resolution name ("1s", "1m", "5m", "1h", "1d"), or -1 if unknown
+    public static int resolutionOf(String name) {
+
+        for (int i = 0; i < RESOLUTION_NAMES.length; i++) {
+            if (RESOLUTION_NAMES[i].equalsIgnoreCase(name)) return RESOLUTIONS[i];
+        }
+        return -1;
+
+    }
+
+
+
+    // Opens the series of the given symbols, reading the end of their files back
+    public void open(Collection<String> symbols) throws IOException {
+
+        for (String symbol : symbols) {
+            seriesOf(symbol);
+        }
+
+    }
+
+
+    private CandleSeries[] seriesOf(String symbol) throws IOException {
+
+        CandleSeries[] found = series.get(symbol);
+        if (found != null) return found;
+
+        Files.createDirectories(dir);
+        found = new CandleSeries[RESOLUTIONS.length];
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            found[i] = new CandleSeries(RESOLUTIONS[i], ringSize, dir.resolve(symbol + "_" + RESOLUTION_NAMES[i] + ".bin"));
+        }
+        series.put(symbol, found);
+        return found;
+
+    }
+
+
+
+    // Adds a trade to the candles of its symbol (trades without a symbol belong to the default symbol)
+    public void add(TradeInfo trade) {
+
+        String symbol = trade.getSymbol() != null ? trade.getSymbol() : ServerConfig.getDefaultSymbol();
+        CandleSeries[] symbolSeries;
+        try {
+            symbolSeries = seriesOf(symbol);
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to open candles of " + symbol + ":" + e.getMessage());
+            return;
+        }
+        boolean count = "bid".equals(trade.getType());
+        for (CandleSeries candles : symbolSeries) {
+            candles.add(trade.getTimestamp(), trade.getPrice(), trade.getSize(), count);
+        }
+
+    }
+
+
+
+    /**
+     * Time from which the trade log must be replayed on startup: the start of the first candle
+     * after the last one in the file, over all series.
+     *
+     * @return Epoch seconds, or Long.MIN_VALUE if a series has no file yet (replay everything).
+     */
+    public long getReplayStart() {
+
+        long start = Long.MAX_VALUE;
+        for (CandleSeries[] symbolSeries : series.values()) {
+            for (CandleSeries candles : symbolSeries) {
+                if (candles.getLastClosed() == Long.MIN_VALUE) return Long.MIN_VALUE;
+                start = Math.min(start, candles.getLastClosed() + candles.getResolution());
+            }
+        }
+        return start == Long.MAX_VALUE ? Long.MIN_VALUE : start;
+
+    }
+
+
+
+    // Closes the candles that ended a while ago into their files and forces them
+    public void checkpoint() {
+
+        for (CandleSeries[] symbolSeries : series.values()) {
+            for (CandleSeries candles : symbolSeries) {
+                candles.checkpoint();
+                try {
+                    candles.force();
+                } catch (IOException e) {
+                    System.err.println("[Main] Failed to save candles:" + e.getMessage());
+                }
+            }
+        }
+
+    }
+
+
+
+    /**
+     * Candles of a symbol starting in [from, to), oldest first.
+     *
+     * @param symbol     The traded symbol.
+     * @param resolution Resolution in seconds (see resolutionOf()).
+     * @param max        At most this many candles.
+     * @return The candles; empty if the symbol has never traded.
+     */
+    public List<Candle> getCandles(String symbol, int resolution, long from, long to, int max) throws IOException {
+
+        CandleSeries[] symbolSeries = seriesOf(symbol);
+        for (CandleSeries candles : symbolSeries) {
+            if (candles.getResolution() == resolution) {
+                return candles.getCandles(from, to, max);
+            }
+        }
+        throw new IllegalArgumentException("Unknown resolution: " + resolution);
+
+    }
+
+}
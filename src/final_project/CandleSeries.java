@@ -0,0 +1,334 @@
+package final_project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * CandleSeries holds the candles (open, high, low, close, volume, trade count) of one symbol
+ * at one resolution.
+ *
+ * 1. The candle of a trade starts at its timestamp rounded down to a multiple of the resolution
+ *    (epoch seconds, so days are UTC days).
+ * 2. The most recent "candle_ring_size" candles live in a ring of primitive arrays, one slot per
+ *    candle start (start / resolution modulo the ring size): a trade updates its slot in place.
+ * 3. Closed candles are appended, in start order, to a file of fixed-width records: as soon as
+ *    they fall out of the ring window (the "candle_ring_size" candle starts up to the newest one),
+ *    and at each checkpoint() for the candles that ended well before the newest trade.
+ *    The file is never rewritten, and a range is found in it by binary search.
+ * 4. So a query reads the ring for the starts inside the window, and the file before it.
+ * 5. A candle is closed once: a trade arriving for a candle already in the file (recorded
+ *    more than a minute late) is not counted, nor one older than the ring.
+ * 6. On startup the ring is filled again from the end of the file; the trades after the last
+ *    closed candle are then replayed from the trade log (see CandleEngine.load()).
+ *
+ * Record format (big-endian, 36 bytes): long start, int open, int high, int low, int close,
+ * long volume, int trade count.
+ *
+ * Not thread-safe: guarded by the CandleEngine.
+ */
+
+public class CandleSeries {
+
+    private static final int RECORD_SIZE = 36;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    // Seconds after its end before a candle is closed by checkpoint(): trades of concurrent commands
+    // may be recorded slightly out of timestamp order
+    private static final long CLOSE_DELAY = 60;
+
+    private final int resolution;
+    private final int ringSize;
+
+    private final long[] starts;
+    private final int[] opens;
+    private final int[] highs;
+    private final int[] lows;
+    private final int[] closes;
+    private final long[] volumes;
+    private final int[] trades;
+
+    private final FileChannel file;
+    private long fileRecords;
+    private long lastClosed = EMPTY;  // start of the last candle in the file
+    private long newest = EMPTY;      // start of the newest candle
+    private long newestTimestamp = EMPTY;
+
+
+    /**
+     * @param resolution Candle length in seconds.
+     * @param ringSize   Number of recent candles kept in memory.
+     * @param path       File of the closed candles.
+     */
+    public CandleSeries(int resolution, int ringSize, Path path) throws IOException {
+
+        this.resolution = resolution;
+        this.ringSize = ringSize;
+        this.starts = new long[ringSize];
+        this.opens = new int[ringSize];
+        this.highs = new int[ringSize];
+        this.lows = new int[ringSize];
+        this.closes = new int[ringSize];
+        this.volumes = new long[ringSize];
+        this.trades = new int[ringSize];
+        Arrays.fill(starts, EMPTY);
+
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // A record torn by a crash is dropped
+        this.fileRecords = file.size() / RECORD_SIZE;
+        file.truncate(fileRecords * RECORD_SIZE);
+        loadTail();
+
+    }
+
+
+    // Puts the last candles of the file back in the ring
+    private void loadTail() throws IOException {
+
+        long first = Math.max(0, fileRecords - ringSize);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (fileRecords - first) * RECORD_SIZE);
+        readFully(buffer, first * RECORD_SIZE);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            int slot = slotOf(buffer.getLong(buffer.position()));
+            readRecord(buffer, slot);
+            lastClosed = starts[slot];
+            newest = starts[slot];
+        }
+
+    }
+
+
+
+    /**
+     * Adds a trade to its candle.
+     *
+     * @param timestamp Trade timestamp (seconds).
+     * @param price     Trade price.
+     * @param size      Traded size, counted in the volume.
+     * @param count     Whether the trade counts in the volume and trade count (one side of each execution).
+     */
+    public void add(long timestamp, int price, int size, boolean count) {
+
+        long start = Math.floorDiv(timestamp, resolution) * resolution;
+        if (lastClosed != EMPTY && start <= lastClosed) return;
+        if (newest == EMPTY || start > newest) {
+            newest = start;
+            closeUpTo(oldestInRing() - 1); // out of the window: their slots may be reused
+        }
+        if (newestTimestamp == EMPTY || timestamp > newestTimestamp) {
+            newestTimestamp = timestamp;
+        }
+
+        int slot = slotOf(start);
+        if (starts[slot] != start) {
+            if (starts[slot] != EMPTY && starts[slot] > start) return; // older than the ring
+            starts[slot] = start;
+            opens[slot] = price;
+            highs[slot] = price;
+            lows[slot] = price;
+            closes[slot] = price;
+            volumes[slot] = 0;
+            trades[slot] = 0;
+        } else {
+            highs[slot] = Math.max(highs[slot], price);
+            lows[slot] = Math.min(lows[slot], price);
+            closes[slot] = price;
+        }
+        if (count) {
+            volumes[slot] += size;
+            trades[slot]++;
+        }
+
+    }
+
+
+
+    // Closes the candles that ended CLOSE_DELAY seconds before the newest trade
+    public void checkpoint() {
+
+        if (newest == EMPTY) return;
+        closeUpTo(newestTimestamp - CLOSE_DELAY - resolution);
+
+    }
+
+
+    // Appends to the file, oldest first, the candles of the ring after the last closed one up to limit
+    private void closeUpTo(long limit) {
+
+        for (long start : ringStarts(lastClosed, limit)) {
+            if (!close(slotOf(start))) return;
+        }
+
+    }
+
+
+    /**
+     * Starts of the candles of the ring in (after, upTo], in order: steps through the candle starts
+     * when there are few of them, otherwise sorts the occupied slots.
+     */
+    private long[] ringStarts(long after, long upTo) {
+
+        if (after != EMPTY && upTo - after <= (long) ringSize * resolution) {
+            long first = Math.floorDiv(after, resolution) * resolution + resolution;
+            if (upTo < first) return new long[0];
+            long[] found = new long[(int) ((upTo - first) / resolution) + 1];
+            int n = 0;
+            for (long start = first; start <= upTo; start += resolution) {
+                if (starts[slotOf(start)] == start) found[n++] = start;
+            }
+            return Arrays.copyOf(found, n);
+        }
+        long[] found = new long[ringSize];
+        int n = 0;
+        for (long start : starts) {
+            if (start != EMPTY && (after == EMPTY || start > after) && start <= upTo) found[n++] = start;
+        }
+        found = Arrays.copyOf(found, n);
+        Arrays.sort(found);
+        return found;
+
+    }
+
+
+    // Appends the candle of a slot to the file; false if it could not be written
+    private boolean close(int slot) {
+
+        long start = starts[slot];
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(start).putInt(opens[slot]).putInt(highs[slot]).putInt(lows[slot]).putInt(closes[slot])
+                .putLong(volumes[slot]).putInt(trades[slot]).flip();
+        try {
+            long position = fileRecords * RECORD_SIZE;
+            while (record.hasRemaining()) {
+                position += file.write(record, position);
+            }
+            fileRecords++;
+            lastClosed = start;
+            return true;
+        } catch (IOException e) {
+            // Retried by the next close, and rebuilt from the trade log on the next startup anyway
+            System.err.println("[Main] Failed to save candles:" + e.getMessage());
+            return false;
+        }
+
+    }
+
+
+    public void force() throws IOException {
+        file.force(false);
+    }
+
+
+
+    /**
+     * Candles starting in [from, to), oldest first: from the file before the ring, then from the ring.
+     *
+     * @param max At most this many candles.
+     */
+    public List<Candle> getCandles(long from, long to, int max) throws IOException {
+
+        List<Candle> result = new ArrayList<>();
+        long window = newest == EMPTY ? Long.MAX_VALUE : oldestInRing();
+
+        // Before the window: every candle is in the file
+        if (from < window) {
+            long end = Math.min(to, window);
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            for (long index = firstRecordFrom(from); index < fileRecords && result.size() < max; index++) {
+                buffer.clear();
+                readFully(buffer, index * RECORD_SIZE);
+                buffer.flip();
+                long start = buffer.getLong();
+                if (start >= end) break;
+                result.add(new Candle(start, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                        buffer.getLong(), buffer.getInt()));
+            }
+        }
+
+        // Inside the window: the ring
+        if (to > window) {
+            for (long start : ringStarts(Math.max(from, window) - 1, Math.min(to - 1, newest))) {
+                if (result.size() >= max) break;
+                int slot = slotOf(start);
+                result.add(new Candle(start, opens[slot], highs[slot], lows[slot], closes[slot], volumes[slot], trades[slot]));
+            }
+        }
+        return result;
+
+    }
+
+
+    // Index of the first record of the file starting at or after the given time
+    private long firstRecordFrom(long from) throws IOException {
+
+        long low = 0;
+        long high = fileRecords;
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            buffer.clear();
+            readFully(buffer, mid * RECORD_SIZE);
+            if (buffer.getLong(0) < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+
+    }
+
+
+
+    // Start of the oldest candle the ring may hold
+    private long oldestInRing() {
+        return newest - (long) (ringSize - 1) * resolution;
+    }
+
+    private int slotOf(long start) {
+        return (int) Math.floorMod(Math.floorDiv(start, resolution), (long) ringSize);
+    }
+
+    private void readRecord(ByteBuffer buffer, int slot) {
+
+        starts[slot] = buffer.getLong();
+        opens[slot] = buffer.getInt();
+        highs[slot] = buffer.getInt();
+        lows[slot] = buffer.getInt();
+        closes[slot] = buffer.getInt();
+        volumes[slot] = buffer.getLong();
+        trades[slot] = buffer.getInt();
+
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+
+        while (buffer.hasRemaining()) {
+            int n = file.read(buffer, position);
+            if (n < 0) throw new IOException("Unexpected end of candle file");
+            position += n;
+        }
+
+    }
+
+
+    // Start of the last candle in the file (Long.MIN_VALUE if none)
+    public long getLastClosed() {
+        return lastClosed;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,136 @@
+package final_project;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * ColdOrderIndex is the cold tier of an OrderBook: the final status of the limit and stop
+ * orders that have left the book.
+ *
+ * 1. An order leaves "activeOrders" when it is fully filled or triggered (FINALIZED), or when it
+ *    is cancelled by its owner or by self-trade prevention with some size left (CANCELLED).
+ *    Only that status is kept here; the order itself (owner, prices) stays in OrderHistory.
+ * 2. Statuses are stored like OrderOffsetIndex entries: chunks of 65536 consecutive order IDs,
+ *    allocated on first use, but one byte per order.
+ * 3. The statuses are persisted in an append-only log ("order_book_cold_log" in the config,
+ *    a Journal) of [int orderId][byte status] pairs. The snapshot thread appends the orders
+ *    a snapshot drops and forces them before writing it (see Snapshotter), so every order is
+ *    in a snapshot, in the journal after it, or in this log.
+ * 4. load() reads the log back on startup. An order logged twice (crash before the snapshot
+ *    was written) has the same status both times.
+ *
+ * Thread safety: put() and get() are lock-free (chunks are installed with a CAS, statuses are
+ * written with release and read with acquire semantics). append() and load() are called by one
+ * thread at a time (the snapshot thread, or the loading thread before any command).
+ */
+
+public class ColdOrderIndex {
+
+    public static final byte UNKNOWN = 0;
+    public static final byte FINALIZED = 1;
+    public static final byte CANCELLED = 2;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int ENTRY_SIZE = 5;
+    private static final int ENTRIES_PER_RECORD = 4096;
+
+    private static final VarHandle STATUS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final AtomicReferenceArray<byte[]> chunks =
+            new AtomicReferenceArray<>((Integer.MAX_VALUE >>> CHUNK_BITS) + 1);
+    private final Journal log;
+
+
+    public ColdOrderIndex(Journal log) {
+        this.log = log;
+    }
+
+
+
+    // Final status of an order that has left the book, or the one of its remaining size
+    public static byte statusOf(Order order) {
+        return order.getSize() == 0 ? FINALIZED : CANCELLED;
+    }
+
+
+    // Records the final status of an order (in memory only, see append())
+    public void put(int orderId, byte status) {
+
+        if (orderId <= 0) {
+            throw new IllegalArgumentException("Invalid order ID: " + orderId);
+        }
+        int index = orderId >>> CHUNK_BITS;
+        byte[] chunk = chunks.get(index);
+        if (chunk == null) {
+            chunks.compareAndSet(index, null, new byte[CHUNK_SIZE]);
+            chunk = chunks.get(index);
+        }
+        STATUS.setRelease(chunk, orderId & CHUNK_MASK, status);
+
+    }
+
+
+    // Final status of an order, or UNKNOWN if it has not left the book (or was never in it)
+    public byte get(int orderId) {
+
+        if (orderId <= 0) return UNKNOWN;
+        byte[] chunk = chunks.get(orderId >>> CHUNK_BITS);
+        if (chunk == null) return UNKNOWN;
+        return (byte) STATUS.getAcquire(chunk, orderId & CHUNK_MASK);
+
+    }
+
+
+
+    /**
+     * Appends final statuses to the log, then forces it. Also records them in memory.
+     *
+     * @param statuses Order ID -> final status.
+     */
+    public void append(Map<Integer, Byte> statuses) throws IOException {
+
+        if (statuses.isEmpty()) return;
+
+        ByteBuffer record = ByteBuffer.allocate(ENTRIES_PER_RECORD * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (Map.Entry<Integer, Byte> entry : statuses.entrySet()) {
+            if (!record.hasRemaining()) {
+                record.flip();
+                log.append(record);
+                record.clear();
+            }
+            record.putInt(entry.getKey()).put(entry.getValue());
+            put(entry.getKey(), entry.getValue());
+        }
+        record.flip();
+        log.append(record);
+        log.force();
+
+    }
+
+
+
+    // Reads the statuses of the log into memory
+    public void load() throws IOException {
+
+        int[] count = new int[1];
+        log.replay(record -> {
+            while (record.remaining() >= ENTRY_SIZE) {
+                put(record.getInt(), record.get());
+                count[0]++;
+            }
+        });
+        if (count[0] > 0) {
+            System.out.println("[Main] " + count[0] + " finalized orders loaded from " + log.getPath());
+        }
+
+    }
+}
@@ -0,0 +1,194 @@
+package final_project;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+
+/**
+ * CommandSequencer runs commands one at a time on a single dedicated thread (the "matching thread"),
+ * in the order they were published.
+ *
+ * 1. Connection threads publish commands into a preallocated ring buffer of "ringSize" slots:
+ *        1. a slot is claimed with one atomic increment, which fixes the arrival (FIFO) order
+ *        2. the slot is then filled and marked as published with its sequence number
+ *        3. when the ring is full, the publisher waits for the matching thread to free a slot
+ * 2. The matching thread consumes the slots strictly in sequence order, runs each command
+ *    and completes its future. As the only thread touching the state behind the commands,
+ *    it needs no lock.
+ * 3. When no command is published, the matching thread waits according to its IdleStrategy:
+ *        1. BLOCK: parks until a publisher wakes it up (lowest CPU usage)
+ *        2. YIELD: gives up its time slice between checks
+ *        3. SPIN: busy-spins on the next slot (lowest latency, uses a whole core)
+ * 4. A command published from the matching thread itself (a command calling another one)
+ *    is run directly, so nested calls cannot deadlock.
+ */
+
+public class CommandSequencer {
+
+    public enum IdleStrategy {
+        BLOCK, YIELD, SPIN;
+
+        // Parses the "sequencer_idle_strategy" config value, BLOCK if unknown
+        public static IdleStrategy fromConfig(String value) {
+            try {
+                return IdleStrategy.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                System.err.println("[Config] Unknown sequencer idle strategy: " + value + ", using block");
+                return BLOCK;
+            }
+        }
+    }
+
+
+    // One entry of the ring, reused for every ringSize-th command
+    private static final class Slot {
+        volatile long sequence = -1;   // sequence number of the command published in this slot
+        Supplier<?> command;
+        CompletableFuture<Object> future;
+    }
+
+
+    private final Slot[] ring;
+    private final int mask;
+    private final IdleStrategy idleStrategy;
+
+    // Next sequence number to claim (publishers)
+    private final AtomicLong claimed = new AtomicLong();
+
+    // Last sequence number taken out of the ring by the matching thread
+    private volatile long consumed = -1;
+
+    // true while the matching thread is parked (BLOCK strategy)
+    private volatile boolean sleeping;
+
+    private final Thread matchingThread;
+
+
+    /**
+     * @param ringSize     Number of slots, rounded up to a power of two.
+     * @param idleStrategy How the matching thread waits for commands.
+     * @param threadName   Name of the matching thread.
+     */
+    public CommandSequencer(int ringSize, IdleStrategy idleStrategy, String threadName) {
+
+        int size = Integer.highestOneBit(Math.max(2, ringSize - 1)) << 1;
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.idleStrategy = idleStrategy;
+
+        this.matchingThread = new Thread(this::run, threadName);
+        this.matchingThread.setDaemon(true); // Automatically exit when the main program is closed
+        this.matchingThread.start();
+
+    }
+
+
+
+    /**
+     * Publishes the command and waits for the matching thread to run it.
+     *
+     * @return the command result.
+     * @throws RuntimeException the exception thrown by the command, if any.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Supplier<T> command) {
+
+        if (Thread.currentThread() == matchingThread) {
+            return command.get();
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        publish(command, future);
+
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+
+    }
+
+
+
+    private void publish(Supplier<?> command, CompletableFuture<Object> future) {
+
+        long sequence = claimed.getAndIncrement();
+
+        // Wait until the matching thread has taken the command that used this slot one lap earlier
+        while (sequence - ring.length > consumed) {
+            if (sleeping) LockSupport.unpark(matchingThread);
+            Thread.yield();
+        }
+
+        Slot slot = ring[(int) sequence & mask];
+        slot.command = command;
+        slot.future = future;
+        slot.sequence = sequence; // volatile write: publishes command and future
+
+        if (sleeping) {
+            LockSupport.unpark(matchingThread);
+        }
+
+    }
+
+
+
+    // Matching thread loop: runs the commands in sequence order
+    private void run() {
+
+        long next = 0;
+
+        while (true) {
+
+            Slot slot = ring[(int) next & mask];
+            while (slot.sequence != next) {
+                idle(slot, next);
+            }
+
+            Supplier<?> command = slot.command;
+            CompletableFuture<Object> future = slot.future;
+            slot.command = null;
+            slot.future = null;
+            consumed = next++; // the slot can be reused from now on
+
+            try {
+                future.complete(command.get());
+            } catch (Throwable t) {
+                System.err.println("[Main] Command failed on the matching thread: " + t);
+                future.completeExceptionally(t);
+            }
+        }
+
+    }
+
+
+
+    private void idle(Slot slot, long next) {
+
+        switch (idleStrategy) {
+            case SPIN:
+                Thread.onSpinWait();
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                sleeping = true;
+                // Re-check after announcing: a publisher that missed the flag has already published
+                if (slot.sequence != next) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                break;
+        }
+
+    }
+}
@@ -30,6 +30,23 @@ public class DailyPriceData {
     private long firstTimestamp = Long.MAX_VALUE;
     private long lastTimestamp = Long.MIN_VALUE;
 
+    public DailyPriceData() {
+    }
+
+    // Statistics of a day already computed (e.g. read back from the trade rollups)
+    public DailyPriceData(int open, int close, int high, int low, long firstTimestamp, long lastTimestamp) {
+        this.open = open;
+        this.close = close;
+        this.high = high;
+        this.low = low;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    public DailyPriceData copy() {
+        return new DailyPriceData(open, close, high, low, firstTimestamp, lastTimestamp);
+    }
+
     public void addTrade(int price, long timestamp) {
         if (timestamp < firstTimestamp) {
             firstTimestamp = timestamp;
@@ -53,6 +70,8 @@ public class DailyPriceData {
     public int getClose() { return close; }
     public int getHigh() { return high; }
     public int getLow() { return low; }
+    public long getFirstTimestamp() { return firstTimestamp; }
+    public long getLastTimestamp() { return lastTimestamp; }
     
     @Override
     public String toString() {
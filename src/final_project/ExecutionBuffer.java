@@ -0,0 +1,182 @@
+package final_project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * ExecutionBuffer collects the fills of one order book command, so that matching allocates
+ * nothing per fill.
+ *
+ * 1. Fills are written into preallocated parallel arrays (counter order ID, owner and side,
+ *    size, price), which only grow when a command produces more fills than ever before.
+ *    Only values are recorded, so fills of the heap and of the off-heap order store
+ *    (see OffHeapOrderBook) are collected the same way.
+ * 2. Fills are grouped by the order that took the liquidity: group 0 is the incoming order,
+ *    the following groups are the stop orders triggered by the same command.
+ * 3. The trade results (Map username -> TradeInfo list, the format recorded in TradeHistory and
+ *    sent in UDP notifications) are only built by toTradeMap(), after the command has released
+ *    the order book, so the JSON wire format is unchanged.
+ * 4. All fills of a command share the timestamp read once at the start of the command.
+ *
+ * Each connection thread reuses its own buffer (forCurrentThread()): it is filled under the
+ * order book lock (or on the matching thread) and read back by the same connection thread.
+ */
+
+public class ExecutionBuffer {
+
+    private static final ThreadLocal<ExecutionBuffer> BUFFERS = ThreadLocal.withInitial(ExecutionBuffer::new);
+
+    private String symbol;
+    private long timestamp;
+
+    // Per group: the taking order, how it is reported, and the index of its first fill
+    private int groupCount;
+    private int[] takerIds = new int[4];
+    private String[] takerUsers = new String[4];
+    private String[] takerTypes = new String[4];
+    private OrderKind[] takerKinds = new OrderKind[4];
+    private int[] groupStart = new int[4];
+
+    // Per fill: the resting (counter) order, traded size and price
+    private int fillCount;
+    private int[] counterIds = new int[64];
+    private String[] counterUsers = new String[64];
+    private String[] counterTypes = new String[64];
+    private int[] sizes = new int[64];
+    private int[] prices = new int[64];
+
+
+    // The buffer of the calling thread, reused for each of its commands
+    public static ExecutionBuffer forCurrentThread() {
+        return BUFFERS.get();
+    }
+
+
+
+    /**
+     * Empties the buffer for a new command.
+     *
+     * @param symbol    Symbol of the order book running the command.
+     * @param timestamp Timestamp (seconds) of all the fills of the command.
+     */
+    public void reset(String symbol, long timestamp) {
+
+        Arrays.fill(takerUsers, 0, groupCount, null);
+        Arrays.fill(takerTypes, 0, groupCount, null);
+        Arrays.fill(counterUsers, 0, fillCount, null);
+        Arrays.fill(counterTypes, 0, fillCount, null);
+        this.symbol = symbol;
+        this.timestamp = timestamp;
+        this.groupCount = 0;
+        this.fillCount = 0;
+
+    }
+
+
+
+    // Starts the fills of a new taking order; returns the group index
+    public int beginGroup(Order taker, OrderKind kind) {
+        return beginGroup(taker.getOrderId(), taker.getUsername(), taker.getType(), kind);
+    }
+
+    public int beginGroup(int orderId, String username, String type, OrderKind kind) {
+
+        if (groupCount == takerIds.length) {
+            int n = groupCount * 2;
+            takerIds = Arrays.copyOf(takerIds, n);
+            takerUsers = Arrays.copyOf(takerUsers, n);
+            takerTypes = Arrays.copyOf(takerTypes, n);
+            takerKinds = Arrays.copyOf(takerKinds, n);
+            groupStart = Arrays.copyOf(groupStart, n);
+        }
+        takerIds[groupCount] = orderId;
+        takerUsers[groupCount] = username;
+        takerTypes[groupCount] = type;
+        takerKinds[groupCount] = kind;
+        groupStart[groupCount] = fillCount;
+        return groupCount++;
+
+    }
+
+
+
+    // Records a fill of the current group against a resting order
+    public void addFill(int counterId, String counterUser, String counterType, int size, int price) {
+
+        if (fillCount == counterIds.length) {
+            int n = fillCount * 2;
+            counterIds = Arrays.copyOf(counterIds, n);
+            counterUsers = Arrays.copyOf(counterUsers, n);
+            counterTypes = Arrays.copyOf(counterTypes, n);
+            sizes = Arrays.copyOf(sizes, n);
+            prices = Arrays.copyOf(prices, n);
+        }
+        counterIds[fillCount] = counterId;
+        counterUsers[fillCount] = counterUser;
+        counterTypes[fillCount] = counterType;
+        sizes[fillCount] = size;
+        prices[fillCount] = price;
+        fillCount++;
+
+    }
+
+
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    // Number of fills of the given group
+    public int getFillCount(int group) {
+        int end = group + 1 < groupCount ? groupStart[group + 1] : fillCount;
+        return end - groupStart[group];
+    }
+
+
+
+    /**
+     * Builds the trade results of one group: for each fill, a trade of the taking order and
+     * a trade of the counter order, listed per username in fill order.
+     *
+     * 1. A group without fills gets the shared empty map (nothing is allocated).
+     * 2. The map and the taker's list are sized from the fill count, so they never grow;
+     *    a counter user's list starts with room for one trade (usually all it gets).
+     *
+     * @param group The group index (0 for the incoming order).
+     * @return Trade results grouped by username (an immutable empty map if the group has no fill).
+     */
+    public Map<String, List<TradeInfo>> toTradeMap(int group) {
+
+        if (group >= groupCount) return Collections.emptyMap();
+        int start = groupStart[group];
+        int end = group + 1 < groupCount ? groupStart[group + 1] : fillCount;
+        if (start == end) return Collections.emptyMap();
+
+        String takerOrderType = takerKinds[group].getWireName();
+        Map<String, List<TradeInfo>> tradeMap = new HashMap<>(2 * (end - start + 1)); // taker + counter users
+        List<TradeInfo> takerTrades = new ArrayList<>(end - start);
+        tradeMap.put(takerUsers[group], takerTrades);
+
+        for (int i = start; i < end; i++) {
+            takerTrades.add(new TradeInfo(takerIds[group], takerTypes[group], takerOrderType, sizes[i], prices[i], timestamp, symbol));
+
+            List<TradeInfo> counterTrades = tradeMap.get(counterUsers[i]);
+            if (counterTrades == null) {
+                counterTrades = new ArrayList<>(1);
+                tradeMap.put(counterUsers[i], counterTrades);
+            }
+            counterTrades.add(new TradeInfo(counterIds[i], counterTypes[i], "limit", sizes[i], prices[i], timestamp, symbol));
+        }
+        return tradeMap;
+
+    }
+}
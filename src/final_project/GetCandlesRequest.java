@@ -0,0 +1,67 @@
+package final_project;
+
+/**
+ * GetCandlesRequest
+ *
+ * {
+ *   "operation": "getCandles",
+ *   "values": {
+ *       "symbol": "BTC",
+ *       "resolution": "1m",
+ *       "from": 1744000000,
+ *       "to": 1744086400
+ *   }
+ * }
+ * 
+ * 1. "resolution" is one of 1s, 1m, 5m, 1h, 1d.
+ * 2. "from" and "to" are epoch seconds: the candles starting in [from, to) are returned.
+ * 3. "symbol" is optional: requests without it get the candles of the default symbol.
+ */
+
+public class GetCandlesRequest {
+    private String operation;
+    private Values values;
+
+    public GetCandlesRequest(String operation, Values values) {
+        this.operation = operation;
+        this.values = values;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public Values getValues() {
+        return values;
+    }
+
+    public static class Values {
+        private String symbol;
+        private String resolution;
+        private long from;
+        private long to;
+
+        public Values(String symbol, String resolution, long from, long to) {
+            this.symbol = symbol;
+            this.resolution = resolution;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public String getResolution() {
+            return resolution;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+    }
+}
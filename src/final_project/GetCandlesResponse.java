@@ -0,0 +1,46 @@
+package final_project;
+
+import java.util.List;
+
+/**
+ * GetCandlesResponse
+ *
+ * It contains:
+ * 
+ * 1. response: an integer status code (100 for success, 101 for error).
+ * 2. errorMessage: a string describing the error if the request failed, or "OK" if successful.
+ * 3. candles: the candles of the requested range, oldest first; periods without trades are absent.
+ * 4. truncated: true if the range holds more than "candle_max_results" candles (the oldest
+ *    ones are returned, ask again from the start of the last one plus the resolution).
+ *
+ * Example JSON output:
+ * {
+ *   "response": 100,
+ *   "errorMessage": "OK",
+ *   "candles": [
+ *     { "start": 1744000020, "open": 100, "high": 104, "low": 99, "close": 103, "volume": 12, "trades": 4 },
+ *     { "start": 1744000080, "open": 103, "high": 103, "low": 101, "close": 101, "volume": 3, "trades": 1 }
+ *   ],
+ *   "truncated": false
+ * }
+ */
+
+
+public class GetCandlesResponse {
+    private int response;
+    private String errorMessage;
+    private List<Candle> candles;
+    private boolean truncated;
+
+    public GetCandlesResponse(int response, String errorMessage, List<Candle> candles, boolean truncated) {
+        this.response = response;
+        this.errorMessage = errorMessage;
+        this.candles = candles;
+        this.truncated = truncated;
+    }
+
+    public int getResponse() { return response; }
+    public String getErrorMessage() { return errorMessage; }
+    public List<Candle> getCandles() { return candles; }
+    public boolean isTruncated() { return truncated; }
+}
@@ -6,9 +6,12 @@ package final_project;
  * {
  *   "operation": "getPriceHistory",
  *   "values": {
- *       "month": "MMYYYY"
+ *       "month": "MMYYYY",
+ *       "symbol": "BTC"
  *   }
  * }
+ * 
+ * "symbol" is optional: requests without it get the history of the default symbol.
  */
 
 public class GetPriceHistoryRequest {
@@ -30,13 +33,23 @@ public class GetPriceHistoryRequest {
 
     public static class Values {
         private String month; // format "MMYYYY"
+        private String symbol;
 
         public Values(String month) {
+            this(month, null);
+        }
+
+        public Values(String month, String symbol) {
             this.month = month;
+            this.symbol = symbol;
         }
 
         public String getMonth() {
             return month;
         }
+
+        public String getSymbol() {
+            return symbol;
+        }
     }
 }
@@ -10,9 +10,12 @@ package final_project;
  *   "values": {
  *     "type": "bid",
  *     "size": 100,
- *     "limitPrice": 105
+ *     "limitPrice": 105,
+ *     "symbol": "BTC"
  *   }
  * }
+ * 
+ * "symbol" is optional: requests without it go to the default symbol.
  */
 
 public class InsertLimitOrderRequest {
@@ -36,11 +39,17 @@ public class InsertLimitOrderRequest {
         private String type;
         private int size;
         private int limitPrice;
+        private String symbol;
         
         public Values(String type, int size, int limitPrice) {
+            this(type, size, limitPrice, null);
+        }
+        
+        public Values(String type, int size, int limitPrice, String symbol) {
             this.type = type;
             this.size = size;
             this.limitPrice = limitPrice;
+            this.symbol = symbol;
         }
         
         public String getType() {
@@ -54,5 +63,9 @@ public class InsertLimitOrderRequest {
         public int getlimitPrice() {
             return limitPrice;
         }
+        
+        public String getSymbol() {
+            return symbol;
+        }
     }
 }
\ No newline at end of file
@@ -8,9 +8,12 @@ package final_project;
  *   "operation": "insertMarketOrder",
  *   "values": {
  *     "type": "bid",
- *     "size": 100
+ *     "size": 100,
+ *     "symbol": "BTC"
  *   }
  * }
+ * 
+ * "symbol" is optional: requests without it go to the default symbol.
  */
 public class InsertMarketOrderRequest {
     private String operation;
@@ -32,10 +35,16 @@ public class InsertMarketOrderRequest {
     public static class Values {
         private String type;  // ask or bid
         private int size;     // number
+        private String symbol; // optional
 
         public Values(String type, int size) {
+            this(type, size, null);
+        }
+
+        public Values(String type, int size, String symbol) {
             this.type = type;
             this.size = size;
+            this.symbol = symbol;
         }
 
         public String getType() {
@@ -45,6 +54,10 @@ public class InsertMarketOrderRequest {
         public int getSize() {
             return size;
         }
+
+        public String getSymbol() {
+            return symbol;
+        }
     }
 }
 
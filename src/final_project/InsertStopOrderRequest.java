@@ -10,9 +10,12 @@ package final_project;
  *   "values": {
  *     "type": "bid",
  *     "size": 100,
- *     "stopPrice": 105
+ *     "stopPrice": 105,
+ *     "symbol": "BTC"
  *   }
  * }
+ * 
+ * "symbol" is optional: requests without it go to the default symbol.
  */
 public class InsertStopOrderRequest {
     private String operation;
@@ -35,11 +38,17 @@ public class InsertStopOrderRequest {
         private String type;     
         private int size;         
         private int stopPrice;     
+        private String symbol;
 
         public Values(String type, int size, int stopPrice) {
+            this(type, size, stopPrice, null);
+        }
+
+        public Values(String type, int size, int stopPrice, String symbol) {
             this.type = type;
             this.size = size;
             this.stopPrice = stopPrice;
+            this.symbol = symbol;
         }
 
         public String getType() {
@@ -53,5 +62,9 @@ public class InsertStopOrderRequest {
         public int getStopPrice() {
             return stopPrice;
         }
+
+        public String getSymbol() {
+            return symbol;
+        }
     }
 }
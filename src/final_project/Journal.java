@@ -0,0 +1,380 @@
+package final_project;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Journal is an append-only log of binary records, stored in preallocated memory-mapped
+ * segment files. It is the shared low-latency write path of the persistent stores.
+ *
+ * 1. Segments are fixed-size files "path.NNNNNN" (increasing index), mapped read-write
+ *    when created; appending a record is a copy into the mapping, with no system call.
+ *    When a record does not fit in the rest of a segment, an end marker is written, the
+ *    segment is forced, and the next one is created ("rolling" segments).
+ * 2. Each record is framed as [int length][int CRC32C of the payload][payload], padded to
+ *    8 bytes. The length is written last, with release semantics: a JournalReader tailing
+ *    the segment never sees a frame before its payload, and a length of 0 means "not written yet".
+ * 3. On open, the segments are scanned and the journal is positioned after the last record
+ *    whose CRC matches; a torn record at the tail (crash during an append: last segment,
+ *    only zeroed space after it) is erased. A bad record anywhere else fails the open.
+ * 4. replay() reads the records back in order (zero-copy, see JournalReader); read() reads
+ *    one record at the address append() returned for it.
+ * 5. deleteSegmentsBefore() drops the segments whose records are all covered by a snapshot.
+ *
+ * Appended records are in the OS page cache right away; force() makes them durable
+ * (when it is called is decided by a JournalFlusher).
+ *
+ * Not thread-safe: the owner serializes the calls (e.g. OrderBook.execute()),
+ * except force() and deleteSegmentsBefore(), which other threads may call at any time.
+ */
+
+public class Journal {
+
+    static final int FRAME_HEADER = 8;
+    static final int END_OF_SEGMENT = -1;
+
+    // Atomic (release / acquire) access to the length field of a frame
+    static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final String path;
+    private final int segmentSize;
+    private final CRC32C crc = new CRC32C();
+
+    // Segment being appended to, its index, and the end of its written part
+    private volatile MappedByteBuffer segment;
+    private volatile long segmentIndex;
+    private volatile int position;
+
+
+    /**
+     * Opens the journal, creating its first segment if there is none.
+     *
+     * @param path        Base path of the segment files.
+     * @param segmentSize Size of each new segment in bytes (rounded up to a multiple of 8).
+     */
+    public Journal(String path, int segmentSize) throws IOException {
+
+        this.path = path;
+        this.segmentSize = align(Math.max(4096, segmentSize));
+        recover();
+
+    }
+
+
+
+    /**
+     * Positions the journal after the last valid record, erasing a torn tail.
+     *
+     * A record that fails its CRC check (or an unreadable frame) is a torn tail only if it is
+     * in the last segment and nothing but zeroed space follows it: an append interrupted by a
+     * crash. Anywhere else the journal is corrupt, and valid records may follow the bad one,
+     * so nothing is erased and the open fails.
+     */
+    private void recover() throws IOException {
+
+        long[] segments = listSegments(path);
+        if (segments.length == 0) {
+            openSegment(0);
+            return;
+        }
+
+        JournalReader reader = new JournalReader(path);
+        while (reader.poll(record -> { }, Integer.MAX_VALUE) > 0) {
+            // scan to the end
+        }
+
+        openSegment(reader.getSegment());
+        int end = reader.getPosition();
+        int tail = reader.isCorrupt() ? frameEnd(end) : end;
+        if (tail < 0 || !isZeroed(segment, tail)) {
+            throw new IOException("Corrupt journal " + path + " at offset " + end + " of segment " + segmentIndex);
+        }
+        for (long index : segments) {
+            if (index > segmentIndex && !isZeroed(Paths.get(segmentName(path, index)))) {
+                throw new IOException("Corrupt journal " + path + " at offset " + end + " of segment " + segmentIndex
+                        + ": segment " + index + " follows it");
+            }
+        }
+
+        if (reader.isCorrupt()) {
+            System.err.println("[Main] Journal " + path + ": discarding an incomplete record in segment " + segmentIndex);
+        }
+        erase(end, segment.capacity());
+        position = end;
+
+        // Empty segments created after the last record (crash while rolling)
+        for (long index : segments) {
+            if (index > segmentIndex) {
+                Files.deleteIfExists(Paths.get(segmentName(path, index)));
+            }
+        }
+
+    }
+
+
+    // End of the frame starting at the given offset of the current segment, -1 if its length is invalid
+    private int frameEnd(int start) {
+
+        int length = segment.getInt(start);
+        if (length <= 0 || start + FRAME_HEADER + length > segment.capacity()) {
+            return -1;
+        }
+        return align(start + FRAME_HEADER + length);
+
+    }
+
+
+    // true if the buffer holds only zeros from the given offset (8-byte aligned) to its capacity
+    private static boolean isZeroed(ByteBuffer buffer, int from) {
+
+        int i = from;
+        for (; i + 8 <= buffer.capacity(); i += 8) {
+            if (buffer.getLong(i) != 0) return false;
+        }
+        for (; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) return false;
+        }
+        return true;
+
+    }
+
+
+    private static boolean isZeroed(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() == 0) return true;
+            return isZeroed(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), 0);
+        }
+
+    }
+
+
+
+    /**
+     * Appends one record.
+     *
+     * @param payload The record, from its position to its limit (consumed by the call).
+     * @return The address of the record (see address()).
+     */
+    public long append(ByteBuffer payload) throws IOException {
+
+        int length = payload.remaining();
+        int frame = align(FRAME_HEADER + length);
+        if (frame > segmentSize) {
+            throw new IOException("Record of " + length + " bytes does not fit in a journal segment of " + segmentSize);
+        }
+        if (position + frame > segment.capacity()) {
+            roll();
+        }
+
+        crc.reset();
+        int from = payload.position();
+        crc.update(payload);                // consumes the payload, put back below (no duplicate)
+        payload.position(from);
+
+        MappedByteBuffer buffer = segment;
+        int start = position;
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.put(start + FRAME_HEADER, payload, payload.position(), length);
+        payload.position(payload.limit());
+        INT.setRelease(buffer, start, length); // publishes the frame
+        position = start + frame;
+        return address(segmentIndex, start);
+
+    }
+
+
+
+    // Ends the current segment and continues in a new one
+    private void roll() throws IOException {
+
+        if (position + 4 <= segment.capacity()) {
+            INT.setRelease(segment, position, END_OF_SEGMENT);
+        }
+        segment.force();
+        openSegment(segmentIndex + 1);
+
+    }
+
+
+    // Maps a segment (an existing one keeps its size), creating its file if needed
+    private void openSegment(long index) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(segmentName(path, index)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = Math.max(channel.size(), segmentSize);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            segmentIndex = index;
+            position = 0;
+            segment = buffer;
+        }
+
+    }
+
+
+
+    /**
+     * Reads all records in order.
+     *
+     * @param consumer Receives each payload (little-endian view of the mapping, only valid during the call).
+     * @return The number of records read.
+     * @throws IOException if a record fails its CRC check (the records after it are not read).
+     */
+    public int replay(Consumer<ByteBuffer> consumer) throws IOException {
+
+        JournalReader reader = new JournalReader(path);
+        int count = 0;
+        int n;
+        while ((n = reader.poll(consumer, Integer.MAX_VALUE)) > 0) {
+            count += n;
+        }
+        if (reader.isCorrupt()) {
+            throw new IOException("Corrupt journal " + path + " at offset " + reader.getPosition() + " of segment " + reader.getSegment());
+        }
+        return count;
+
+    }
+
+
+
+    // Forces the written part of the current segment to the storage device (msync)
+    public void force() throws IOException {
+
+        MappedByteBuffer buffer = segment;
+        int end = Math.min(position, buffer.capacity());
+        if (end > 0) {
+            buffer.force(0, end);
+        }
+
+    }
+
+
+
+    /**
+     * Deletes the segments before the given one (their records are covered by a snapshot).
+     * May be called from another thread than the appender: it never touches the current segment.
+     */
+    public void deleteSegmentsBefore(long index) throws IOException {
+
+        for (long old : listSegments(path)) {
+            if (old < index && old < segmentIndex) {
+                Files.deleteIfExists(Paths.get(segmentName(path, old)));
+            }
+        }
+
+    }
+
+
+    private void erase(int from, int to) {
+
+        for (int i = from; i < to; i++) {
+            if (segment.get(i) != 0) {
+                segment.put(i, (byte) 0);
+            }
+        }
+
+    }
+
+
+
+    // Bytes used by the records of the current segment
+    public long size() {
+        return position;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+
+
+    /**
+     * Reads the record at the given address (copied out of the segment file).
+     *
+     * @param path    Base path of the segment files.
+     * @param address Address returned by append(), or built with address().
+     * @return The payload (little-endian).
+     */
+    public static ByteBuffer read(String path, long address) throws IOException {
+
+        long index = address >>> 32;
+        int start = (int) address;
+        try (FileChannel channel = FileChannel.open(Paths.get(segmentName(path, index)), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, start);
+            int length = header.getInt(0);
+            if (length <= 0) {
+                throw new IOException("No record at offset " + start + " of segment " + index);
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, payload, start + FRAME_HEADER);
+            payload.flip();
+
+            CRC32C check = new CRC32C();
+            check.update(payload.duplicate());
+            if ((int) check.getValue() != header.getInt(4)) {
+                throw new IOException("Corrupt record at offset " + start + " of segment " + index);
+            }
+            return payload;
+        }
+
+    }
+
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal segment");
+            }
+        }
+
+    }
+
+
+
+    // Address of a record: segment index in the high 32 bits, offset of its frame in the low 32 bits
+    static long address(long segment, int position) {
+        return segment << 32 | position;
+    }
+
+    static int align(int n) {
+        return (n + 7) & ~7;
+    }
+
+    static String segmentName(String path, long index) {
+        return String.format("%s.%06d", path, index);
+    }
+
+    // Indexes of the existing segment files, in ascending order
+    static long[] listSegments(String path) {
+
+        File base = new File(path).getAbsoluteFile();
+        String prefix = base.getName() + ".";
+        File[] files = base.getParentFile().listFiles((dir, name) -> name.startsWith(prefix)
+                && name.length() > prefix.length() && name.substring(prefix.length()).chars().allMatch(Character::isDigit));
+        if (files == null) return new long[0];
+        long[] indexes = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            indexes[i] = Long.parseLong(files[i].getName().substring(prefix.length()));
+        }
+        Arrays.sort(indexes);
+        return indexes;
+
+    }
+}
@@ -0,0 +1,24 @@
+package final_project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+
+/**
+ * Thrown by an OrderBook command when the book's journal cannot append the command's record
+ * or make it durable (see BookJournal and JournalFlusher).
+ *
+ * The first failure stops the book from accepting commands: every later command is rejected
+ * with this exception before it touches the book, so a state that the journal does not hold
+ * is never acknowledged nor built upon. The book is recovered by a restart (snapshot + journal).
+ */
+
+public class JournalFailedException extends UncheckedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+
+    public JournalFailedException(String message, IOException cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,232 @@
+package final_project;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * JournalFlusher makes the records of a Journal durable (fsync) according to the
+ * "durability" setting of the config.
+ *
+ * 1. SYNC: each record is forced to disk as it is appended, before the command returns,
+ *    so a response is only sent for a durable command (one fsync per command).
+ * 2. GROUP: a flusher thread forces all the records appended so far in one fsync, every
+ *    "journal_flush_interval_us" or as soon as "group_commit_max_records" records are pending.
+ *    Callers wait for their record in awaitDurable() after releasing the order book, so the
+ *    responses of all the commands covered by one fsync are released together.
+ * 3. ASYNC: the flusher thread forces the journal every "journal_flush_interval_us",
+ *    callers never wait (a crash may lose the last interval of commands).
+ * 4. The durable sequence number only moves after a successful fsync. A failed fsync is
+ *    final (the kernel may already have dropped the unwritten pages, so a later fsync
+ *    succeeding proves nothing): nothing becomes durable any more, appended() throws with
+ *    SYNC, the waiters of awaitDurable() are woken up and throw, the flusher thread stops,
+ *    and getFailure() makes the owner reject new commands (see BookJournal.begin()).
+ *
+ * 5. awaitForced() waits for a record to be durable in every mode, for the Snapshotter.
+ *
+ * appended() is called by the journal owner (one thread at a time); awaitDurable() and
+ * awaitForced() by any thread.
+ */
+
+public class JournalFlusher {
+
+    public enum Durability {
+        SYNC, GROUP, ASYNC;
+
+        // Parses the "durability" config value, GROUP if unknown
+        public static Durability fromConfig(String value) {
+            try {
+                return Durability.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                System.err.println("[Config] Unknown durability: " + value + ", using group");
+                return GROUP;
+            }
+        }
+    }
+
+
+    private final Journal journal;
+    private final Durability durability;
+    private final long intervalNanos;
+    private final int maxRecords;
+
+    // Last appended and last durable sequence numbers
+    private volatile long appended;
+    private volatile long durable;
+
+    // First fsync failure (null while healthy)
+    private volatile IOException failure;
+
+    // Waiters of awaitDurable() (GROUP) and awaitForced()
+    private final Object monitor = new Object();
+
+    private final Thread flusher;
+
+
+    /**
+     * @param journal        The journal to force.
+     * @param durability     When records are forced, and whether callers wait for it.
+     * @param intervalMicros Flush period of the flusher thread (GROUP and ASYNC).
+     * @param maxRecords     Pending records that wake the flusher early (GROUP).
+     * @param threadName     Name of the flusher thread.
+     */
+    public JournalFlusher(Journal journal, Durability durability, long intervalMicros, int maxRecords, String threadName) {
+
+        this.journal = journal;
+        this.durability = durability;
+        this.intervalNanos = Math.max(1, intervalMicros) * 1000;
+        this.maxRecords = Math.max(1, maxRecords);
+
+        if (durability == Durability.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::run, threadName);
+            this.flusher.setDaemon(true); // Automatically exit when the main program is closed
+            this.flusher.start();
+        }
+
+    }
+
+
+
+    /**
+     * Reports a record appended to the journal (called by the journal owner).
+     * With SYNC, forces it before returning.
+     *
+     * @throws JournalFailedException with SYNC, if the record could not be forced.
+     */
+    public void appended(long sequence) {
+
+        appended = sequence;
+        if (durability == Durability.SYNC) {
+            if (force()) {
+                durable = sequence;
+            }
+            checkDurable(sequence);
+        } else if (durability == Durability.GROUP && sequence - durable >= maxRecords) {
+            LockSupport.unpark(flusher);
+        }
+
+    }
+
+
+
+    /**
+     * Waits until the record of the given sequence number is durable (GROUP only;
+     * SYNC records are already durable and ASYNC callers do not wait).
+     * Must not be called while holding the order book, or the batch could not grow.
+     * Returns only once the record is durable: an interrupt is kept and restored afterwards.
+     *
+     * @throws JournalFailedException if the journal failed before the record was durable.
+     */
+    public void awaitDurable(long sequence) {
+
+        if (durable >= sequence) return;
+
+        if (durability == Durability.GROUP) {
+            waitForFlush(sequence);
+        }
+        checkDurable(sequence);
+
+    }
+
+
+
+    /**
+     * Waits until the record of the given sequence number is durable, whatever the durability
+     * (ASYNC included). For the Snapshotter: a snapshot must not cover records that a crash
+     * could still take out of the journal.
+     *
+     * @throws JournalFailedException if the journal failed before the record was durable.
+     */
+    public void awaitForced(long sequence) {
+
+        if (durable >= sequence) return;
+
+        if (durability != Durability.SYNC) {
+            waitForFlush(sequence);
+        }
+        checkDurable(sequence);
+
+    }
+
+
+    // Wakes the flusher thread up and waits for its fsync to cover the sequence number (or to fail).
+    // An interrupt does not end the wait (the caller must not go on with a record that is not
+    // durable): it is kept and restored once the wait is over.
+    private void waitForFlush(long sequence) {
+
+        boolean interrupted = false;
+        LockSupport.unpark(flusher);
+        synchronized (monitor) {
+            while (durable < sequence && failure == null) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+
+    // Throws if the journal failed before the record was durable
+    private void checkDurable(long sequence) {
+
+        IOException failed = failure;
+        if (failed != null && durable < sequence) {
+            throw new JournalFailedException("Cannot sync the order book journal", failed);
+        }
+
+    }
+
+
+    // First fsync failure, or null if every fsync succeeded
+    public IOException getFailure() {
+        return failure;
+    }
+
+
+
+    // Flusher thread: one fsync per interval (or per batch of maxRecords) for all pending records,
+    // until an fsync fails
+    private void run() {
+
+        while (failure == null) {
+
+            LockSupport.parkNanos(this, intervalNanos);
+
+            long target = appended;
+            if (target <= durable) continue;
+
+            if (force()) {
+                durable = target;
+            }
+
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+
+    }
+
+
+
+    // false if the fsync failed (recorded in "failure", for good)
+    private boolean force() {
+
+        try {
+            journal.force();
+            return true;
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to sync the journal: " + e.getMessage());
+            failure = e;
+            return false;
+        }
+
+    }
+}
@@ -0,0 +1,163 @@
+package final_project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+
+/**
+ * JournalReader reads the records of a Journal in order, without copying them.
+ *
+ * 1. Segments are mapped read-only; each record is handed to the consumer as a little-endian
+ *    view of the mapping (zero-copy), only valid during the call.
+ * 2. The length of a record is read with acquire semantics, after the writer published it
+ *    with release semantics, so the reader can tail the segment the writer is appending to:
+ *    poll() returns 0 when it has caught up, and the next poll() picks up new records.
+ * 3. At the end of a segment (end marker, or no room for another frame), the reader moves on
+ *    to the next segment once the writer has created it.
+ * 4. A record whose CRC32C does not match its payload (torn write) stops the reader:
+ *    isCorrupt() then reports it, and getSegment() / getPosition() give where it starts.
+ *
+ * Not thread-safe: one reader per consuming thread.
+ */
+
+public class JournalReader {
+
+    private final String path;
+    private final CRC32C crc = new CRC32C();
+
+    private long segment;
+    private MappedByteBuffer buffer;
+    private int position;
+    private int startPosition;
+    private boolean corrupt;
+
+
+    /**
+     * Starts at the first record of the oldest segment.
+     *
+     * @param path Base path of the journal (segments are "path.NNNNNN").
+     */
+    public JournalReader(String path) {
+        this(path, -1, 0);
+    }
+
+
+    /**
+     * Starts at a known record boundary (e.g. where a snapshot ends).
+     *
+     * @param segment  Segment index, -1 (or a deleted segment) for the oldest segment.
+     * @param position Offset of a record in that segment.
+     */
+    public JournalReader(String path, long segment, int position) {
+
+        this.path = path;
+        long[] segments = Journal.listSegments(path);
+        if (segment >= 0 && Arrays.binarySearch(segments, segment) >= 0) {
+            this.segment = segment;
+            this.startPosition = position;
+        } else {
+            this.segment = segments.length == 0 ? 0 : segments[0];
+        }
+
+    }
+
+
+
+    /**
+     * Hands the next available records to the consumer.
+     *
+     * @param consumer   Receives each payload (position 0 to limit, little-endian).
+     * @param maxRecords Maximum number of records to read in this call.
+     * @return The number of records read (0 if none is available yet, or if corrupt).
+     */
+    public int poll(Consumer<ByteBuffer> consumer, int maxRecords) throws IOException {
+
+        int count = 0;
+        while (count < maxRecords && !corrupt) {
+
+            if (buffer == null) {
+                if (!map(segment)) break;
+                position = startPosition;
+            }
+
+            if (position + Journal.FRAME_HEADER > buffer.capacity()) {
+                if (!nextSegment()) break;
+                continue;
+            }
+
+            int length = (int) Journal.INT.getAcquire(buffer, position);
+            if (length == 0) break;                       // not written yet
+            if (length == Journal.END_OF_SEGMENT) {
+                if (!nextSegment()) break;
+                continue;
+            }
+            if (length < 0 || position + Journal.FRAME_HEADER + length > buffer.capacity()) {
+                corrupt = true;
+                break;
+            }
+
+            ByteBuffer payload = buffer.slice(position + Journal.FRAME_HEADER, length).order(ByteOrder.LITTLE_ENDIAN);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                corrupt = true;
+                break;
+            }
+
+            consumer.accept(payload);
+            position = Journal.align(position + Journal.FRAME_HEADER + length);
+            count++;
+        }
+        return count;
+
+    }
+
+
+
+    // Maps the given segment if its file exists and is fully created; false leaves the reader unchanged
+    private boolean map(long index) throws IOException {
+
+        String file = Journal.segmentName(path, index);
+        if (!Paths.get(file).toFile().exists()) return false;
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) return false; // still being created
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        segment = index;
+        position = 0;
+        return true;
+
+    }
+
+
+    // Moves on to the next segment once the writer has created it (keeps the current one otherwise)
+    private boolean nextSegment() throws IOException {
+        return map(segment + 1);
+    }
+
+
+
+    // true if the reader stopped at a record that fails its CRC check
+    public boolean isCorrupt() {
+        return corrupt;
+    }
+
+    // Segment index and byte offset of the next record to read
+    public long getSegment() {
+        return segment;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,126 @@
+package final_project;
+
+
+/**
+ * LevelBitmap is a two-level bitset marking the non-empty price levels of an ArrayPriceLadder.
+ *
+ * 1. "words" has one bit per price level.
+ * 2. "summary" has one bit per word of "words", set when that word is not zero.
+ *
+ * Finding the next set bit in either direction costs one word scan plus, when the word
+ * is empty, a scan of the summary (one summary word covers 4096 levels), each step being
+ * a single Long.numberOfTrailingZeros / numberOfLeadingZeros.
+ *
+ * Not thread-safe: always accessed under the order book lock.
+ */
+
+public class LevelBitmap {
+
+    private final int size;
+    private final long[] words;
+    private final long[] summary;
+
+
+    public LevelBitmap(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+        this.summary = new long[(words.length + 63) >>> 6];
+    }
+
+
+    public void set(int i) {
+
+        int w = i >>> 6;
+        words[w] |= 1L << i;
+        summary[w >>> 6] |= 1L << w;
+
+    }
+
+
+    public void clear(int i) {
+
+        int w = i >>> 6;
+        words[w] &= ~(1L << i);
+        if (words[w] == 0) {
+            summary[w >>> 6] &= ~(1L << w);
+        }
+
+    }
+
+
+    public boolean get(int i) {
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+
+    // Number of set bits
+    public int cardinality() {
+
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+
+    }
+
+
+
+    /**
+     * Lowest set index that is >= from, or -1.
+     */
+    public int nextSetBit(int from) {
+
+        if (from < 0) from = 0;
+        if (from >= size) return -1;
+
+        int w = from >>> 6;
+        long word = words[w] & (-1L << from);
+        if (word != 0) {
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        // Find the next non-empty word through the summary
+        int s = w + 1;
+        if (s >= words.length) return -1;
+        int sw = s >>> 6;
+        long sword = summary[sw] & (-1L << s);
+        while (sword == 0) {
+            if (++sw >= summary.length) return -1;
+            sword = summary[sw];
+        }
+        w = (sw << 6) + Long.numberOfTrailingZeros(sword);
+        return (w << 6) + Long.numberOfTrailingZeros(words[w]);
+
+    }
+
+
+
+    /**
+     * Highest set index that is <= from, or -1.
+     */
+    public int previousSetBit(int from) {
+
+        if (from < 0) return -1;
+        if (from >= size) from = size - 1;
+
+        int w = from >>> 6;
+        long word = words[w] & (-1L >>> (63 - (from & 63)));
+        if (word != 0) {
+            return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+        }
+
+        // Find the previous non-empty word through the summary
+        int s = w - 1;
+        if (s < 0) return -1;
+        int sw = s >>> 6;
+        long sword = summary[sw] & (-1L >>> (63 - (s & 63)));
+        while (sword == 0) {
+            if (--sw < 0) return -1;
+            sword = summary[sw];
+        }
+        w = (sw << 6) + 63 - Long.numberOfLeadingZeros(sword);
+        return (w << 6) + 63 - Long.numberOfLeadingZeros(words[w]);
+
+    }
+}
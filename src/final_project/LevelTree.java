@@ -0,0 +1,195 @@
+package final_project;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+
+/**
+ * LevelTree indexes the price levels of one side of a book by price, for TreePriceLadder
+ * (levels of Order objects) and SlabPriceLadder (levels of OrderSlab slots).
+ *
+ * 1. Levels are kept in a sorted map (TreeMap) of price -> level, in priority order;
+ *    adding a new price level is O(log levels).
+ * 2. The levels of the map are also linked in priority order (Node.before / after), from
+ *    the first one, which is kept: first() and next() follow the links, so walking the
+ *    book costs no map lookup and allocates nothing.
+ * 3. A level emptied by a fill or a cancel is dropped lazily: it stays in the map (and is
+ *    reused by the next order at that price) until first() or next() walks over it.
+ *    A few dropped levels are kept for the next new prices, so a price level appearing
+ *    only costs its map entry.
+ *
+ * Not thread-safe: always accessed under the order book lock (or on the matching thread).
+ *
+ * @param <L> The level type, created by the factory given to the constructor.
+ */
+
+public class LevelTree<L extends LevelTree.Node<L>> {
+
+    private static final int SPARE_LEVELS = 64;
+
+
+    // A level of the tree: its price, its neighbours in priority order, and whether it holds orders
+    public abstract static class Node<L> {
+
+        // Set by LevelTree only
+        int price;
+        L before;
+        L after;
+
+        protected Node(int price) {
+            this.price = price;
+        }
+
+        public int getPrice() {
+            return price;
+        }
+
+        public abstract boolean isEmpty();
+    }
+
+
+    private final TreeMap<Integer, L> levels;
+    private final IntFunction<L> factory;
+
+    // First level of "levels" in priority order, null when the map is empty (may itself be empty)
+    private L first;
+
+    // Dropped levels, reused for new prices
+    private final L[] spare;
+    private int spareCount;
+
+
+    /**
+     * @param descending true for a bid side (highest price first),
+     *                   false for an ask side (lowest price first).
+     * @param factory    Creates the level of a new price.
+     */
+    public LevelTree(boolean descending, IntFunction<L> factory) {
+
+        this.levels = new TreeMap<>(descending ? Comparator.<Integer>reverseOrder() : Comparator.<Integer>naturalOrder());
+        this.factory = factory;
+        @SuppressWarnings("unchecked")
+        L[] array = (L[]) new Node<?>[SPARE_LEVELS];
+        this.spare = array;
+
+    }
+
+
+
+    // Level of the given price, or null if it has none
+    public L get(int price) {
+        return levels.get(price);
+    }
+
+
+
+    // Returns the level of the given price, creating it (linked at its place) if needed
+    public L levelFor(int price) {
+
+        L level = levels.get(price);
+        if (level == null) {
+            if (spareCount > 0) {
+                level = spare[--spareCount];
+                spare[spareCount] = null;
+                level.price = price;
+            } else {
+                level = factory.apply(price);
+            }
+            levels.put(price, level);
+            Map.Entry<Integer, L> before = levels.lowerEntry(price); // map order is priority order
+            link(level, before == null ? null : before.getValue());
+        }
+        return level;
+
+    }
+
+
+    // Links a new level after the given one (first if null)
+    private void link(L level, L before) {
+
+        level.before = before;
+        level.after = before == null ? first : before.after;
+        if (level.after != null) {
+            level.after.before = level;
+        }
+        if (before == null) {
+            first = level;
+        } else {
+            before.after = level;
+        }
+
+    }
+
+
+
+    // Removes an empty level from the map and from the links, keeping it for reuse.
+    // Walks never stand on a dropped level: they only drop the levels ahead of them.
+    private void drop(L level) {
+
+        levels.remove(level.getPrice(), level);
+        if (level.before == null) {
+            first = level.after;
+        } else {
+            level.before.after = level.after;
+        }
+        if (level.after != null) {
+            level.after.before = level.before;
+        }
+        level.before = null;
+        level.after = null;
+        if (spareCount < SPARE_LEVELS) {
+            spare[spareCount++] = level;
+        }
+
+    }
+
+
+
+    // Best non-empty level, or null
+    public L first() {
+
+        while (first != null && first.isEmpty()) {
+            drop(first);
+        }
+        return first;
+
+    }
+
+
+
+    // Next non-empty level after the given one in priority order, or null
+    public L next(L level) {
+
+        L next = level.after;
+        while (next != null && next.isEmpty()) {
+            L after = next.after;
+            drop(next);
+            next = after;
+        }
+        return next;
+
+    }
+
+
+
+    // First non-empty level strictly after the given price (which may have no level), or null
+    public L higher(int price) {
+
+        Map.Entry<Integer, L> next = levels.higherEntry(price);
+        while (next != null && next.getValue().isEmpty()) {
+            drop(next.getValue());
+            next = levels.higherEntry(next.getKey());
+        }
+        return next == null ? null : next.getValue();
+
+    }
+
+
+
+    // Number of levels in the map (may include empty levels not dropped yet)
+    public int size() {
+        return levels.size();
+    }
+}
@@ -0,0 +1,485 @@
+package final_project;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * OffHeapOrderBook holds the orders of one OrderBook off-heap ("order_store=offheap" in the config).
+ *
+ * 1. Every resting limit and stop order is a fixed-width record of an OrderSlab (direct
+ *    ByteBuffers), found by order ID through an off-heap SlabOrderIndex. This replaces both the
+ *    heap ladders and "activeOrders", so the heap does not grow with the depth of the book:
+ *    it only holds one level object per price and the per-level user quantities
+ *    (bounded by prices x users, not by orders).
+ * 2. A limit order is only stored once matched, if some of it rests. An order that leaves
+ *    the book (filled, cancelled or triggered) has its final status moved to the book's
+ *    ColdOrderIndex, as with the heap store, and its slot and index entry freed for reuse.
+ * 3. Price levels (SlabPriceLadder) link slot indices: limit bids / asks, and bid / ask stops
+ *    in trigger order (bid stops ascending, ask stops descending, as in StopTriggerIndex).
+ * 4. Matching and the stop trigger cascade are run by an OrderMatcher, the same code as for
+ *    the heap store, over the slab sides (SlabSide, SlabStops): their cursors read the
+ *    slots in place.
+ * 5. Order objects are only built at the edges: for a cancel request (getOrder()) and
+ *    when the book is loaded. Snapshots are written from the journal (see Snapshotter),
+ *    in the same JSON format as the heap store, so the store is never read to persist it.
+ * 6. Fills, self-trade cancels and triggers are recorded in the owner's BookJournal as they
+ *    happen; replayListener() applies journaled events back on recovery.
+ *
+ * Not thread-safe: always accessed through OrderBook.execute().
+ */
+
+public class OffHeapOrderBook {
+
+    private static final String BID = "bid";
+    private static final String ASK = "ask";
+
+    private final OrderSlab slab;
+    private final SlabOrderIndex index;
+    private final ColdOrderIndex coldOrders;
+    private final UserDirectory users = new UserDirectory();
+
+    private final SlabPriceLadder bidOrders;
+    private final SlabPriceLadder askOrders;
+    private final SlabPriceLadder bidStops;
+    private final SlabPriceLadder askStops;
+
+    // Matching rules shared with the heap store, and the sides it walks
+    private final OrderMatcher matcher;
+    private final SlabSide bids;
+    private final SlabSide asks;
+    private final SlabStops stops = new SlabStops();
+
+
+    /**
+     * @param selfTradePolicy What the matcher does when an order meets the same user's resting orders.
+     * @param chunkSize       Records per slab chunk.
+     * @param journal         Receives the events of the commands (FILL, CANCEL, TRIGGER).
+     * @param coldOrders      Receives the final status of the orders leaving the book.
+     */
+    public OffHeapOrderBook(SelfTradePolicy selfTradePolicy, int chunkSize, BookJournal journal, ColdOrderIndex coldOrders) {
+
+        this.coldOrders = coldOrders;
+        this.slab = new OrderSlab(chunkSize);
+        this.index = new SlabOrderIndex(chunkSize);
+        this.bidOrders = new SlabPriceLadder(slab, users, true);
+        this.askOrders = new SlabPriceLadder(slab, users, false);
+        this.bidStops = new SlabPriceLadder(slab, users, false);
+        this.askStops = new SlabPriceLadder(slab, users, true);
+        this.matcher = new OrderMatcher(selfTradePolicy, journal);
+        this.bids = new SlabSide(bidOrders, BID);
+        this.asks = new SlabSide(askOrders, ASK);
+
+    }
+
+
+
+    // Copies an order into a new slab record
+    private int store(Order order, boolean stop, int price) {
+
+        int slot = slab.allocate(order.getOrderId(), users.idOf(order.getUsername()), order.getSide(),
+                stop, order.getSize(), price, order.getTimestamp());
+        index.put(order.getOrderId(), slot);
+        return slot;
+
+    }
+
+
+    // Frees the slot of an order that left the book (already unlinked), keeping its final status
+    private void release(int slot) {
+
+        int orderId = slab.getOrderId(slot);
+        coldOrders.put(orderId, slab.getSize(slot) == 0 ? ColdOrderIndex.FINALIZED : ColdOrderIndex.CANCELLED);
+        index.remove(orderId);
+        slab.free(slot);
+
+    }
+
+
+    // Ladder a slot rests in
+    private SlabPriceLadder ladderOf(int slot) {
+
+        boolean bid = slab.getSide(slot) == Side.BID;
+        if (slab.isStop(slot)) {
+            return bid ? bidStops : askStops;
+        }
+        return bid ? bidOrders : askOrders;
+
+    }
+
+
+
+    /**
+     * Matches a new limit order and stores what is left of it, if it rests (see OrderBook.addLimitOrder()).
+     * The heap order keeps its remaining size, as in the heap store; an order that does not
+     * rest only gets its final status in the cold tier.
+     *
+     * @return true if the rest of the order is resting in the book.
+     */
+    public boolean addLimitOrder(LimitOrder order, ExecutionBuffer fills) {
+
+        int remaining = matcher.match(counterSide(order.getSide()), order.getUsername(), order.getSide(),
+                OrderKind.LIMIT, order.getSize(), order.getLimitPrice(), fills);
+        order.setSize(remaining);
+        if (remaining > 0 && !matcher.isIncomingCancelled()) {
+            int slot = store(order, false, order.getLimitPrice());
+            ladderOf(slot).add(slot);
+            return true;
+        }
+        coldOrders.put(order.getOrderId(), ColdOrderIndex.statusOf(order));
+        return false;
+
+    }
+
+
+
+    /**
+     * Matches a market order (not stored, as in the heap store).
+     *
+     * @return the number of fills (0 if the order was rejected).
+     */
+    public int addMarketOrder(MarketOrder order, ExecutionBuffer fills) {
+
+        int group = fills.getGroupCount() - 1;
+        int remaining = matcher.match(counterSide(order.getSide()), order.getUsername(), order.getSide(),
+                OrderKind.MARKET, order.getSize(), 0, fills);
+        order.setSize(remaining);
+        return fills.getFillCount(group);
+
+    }
+
+
+
+    public void addStopOrder(StopOrder order) {
+
+        int slot = store(order, true, order.getStopPrice());
+        ladderOf(slot).add(slot);
+
+    }
+
+
+
+    // Unlinks a resting limit or stop order and frees it; false if unknown or not resting any more
+    public boolean cancel(int orderId) {
+
+        int slot = index.get(orderId);
+        if (slot == OrderSlab.NONE || !ladderOf(slot).remove(slot)) return false;
+        release(slot);
+        return true;
+
+    }
+
+
+
+    public int getBestBidPrice() {
+        return bidOrders.getBestPrice();
+    }
+
+    public int getBestAskPrice() {
+        return askOrders.getBestPrice();
+    }
+
+
+
+    /**
+     * Triggers stop orders until the market stops moving (OrderMatcher.triggerStopOrders(),
+     * as in the heap store).
+     *
+     * @return The number of triggered stop orders.
+     */
+    public int triggerStopOrders(ExecutionBuffer fills) {
+        return matcher.triggerStopOrders(bids, asks, stops, fills);
+    }
+
+
+
+    // Limit side an incoming order of the given side matches against
+    private SlabSide counterSide(Side side) {
+        return side == Side.BID ? asks : bids;
+    }
+
+
+
+    // A limit side of the store, as walked by the OrderMatcher (its cursor is a slot)
+    private final class SlabSide implements OrderMatcher.CounterSide<SlabPriceLadder.Level> {
+
+        private final SlabPriceLadder ladder;
+        private final String type;
+
+        private SlabPriceLadder.Level level;
+        private int current = OrderSlab.NONE;
+        private int following = OrderSlab.NONE;
+
+        SlabSide(SlabPriceLadder ladder, String type) {
+            this.ladder = ladder;
+            this.type = type;
+        }
+
+        public long getTotalQuantity() {
+            return ladder.getTotalQuantity();
+        }
+
+        public long getUserQuantity(String username) {
+            return ladder.getUserQuantity(username);
+        }
+
+        public int getBestPrice() {
+            return ladder.getBestPrice();
+        }
+
+        public SlabPriceLadder.Level bestLevel() {
+            return ladder.bestLevel();
+        }
+
+        public SlabPriceLadder.Level nextLevel(SlabPriceLadder.Level level) {
+            return ladder.nextLevel(level);
+        }
+
+        public boolean first(SlabPriceLadder.Level level) {
+            this.level = level;
+            return moveTo(level.peek());
+        }
+
+        public boolean next() {
+            return moveTo(following);
+        }
+
+        // Reads the next slot first, the current one may be unlinked and freed before moving on
+        private boolean moveTo(int slot) {
+            current = slot;
+            following = slot == OrderSlab.NONE ? OrderSlab.NONE : ladder.next(slot);
+            return slot != OrderSlab.NONE;
+        }
+
+        public int getOrderId() {
+            return slab.getOrderId(current);
+        }
+
+        public String getUsername() {
+            return users.nameOf(slab.getUser(current));
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getSize() {
+            return slab.getSize(current);
+        }
+
+        public void fill(int tradedSize) {
+            ladder.fill(level, current, tradedSize);
+            if (slab.getSize(current) == 0) {
+                ladder.removeFromLevel(level, current);
+                release(current);
+            }
+        }
+
+        public void cancel() {
+            ladder.removeFromLevel(level, current);
+            release(current);
+        }
+    }
+
+
+
+    // The stop ladders of the store, as triggered by the OrderMatcher
+    private final class SlabStops implements OrderMatcher.StopSide {
+
+        // Slots drained by the last drainTriggered()
+        private int[] triggered = new int[16];
+        private int triggeredCount;
+
+        public boolean isEmpty() {
+            return bidStops.isEmpty() && askStops.isEmpty();
+        }
+
+        public int drainTriggered(int bestBid, int bestAsk) {
+
+            triggeredCount = 0;
+            if (bestBid != -1) {
+                for (SlabPriceLadder.Level level = askStops.bestLevel();
+                     level != null && bestBid <= level.getPrice();
+                     level = askStops.bestLevel()) {
+                    drainLevel(askStops, level);
+                }
+            }
+            if (bestAsk != -1) {
+                for (SlabPriceLadder.Level level = bidStops.bestLevel();
+                     level != null && bestAsk >= level.getPrice();
+                     level = bidStops.bestLevel()) {
+                    drainLevel(bidStops, level);
+                }
+            }
+            return triggeredCount;
+
+        }
+
+        private void drainLevel(SlabPriceLadder ladder, SlabPriceLadder.Level level) {
+
+            for (int slot = level.peek(); slot != OrderSlab.NONE; slot = level.peek()) {
+                ladder.removeFromLevel(level, slot);
+                if (triggeredCount == triggered.length) {
+                    triggered = Arrays.copyOf(triggered, triggeredCount * 2);
+                }
+                triggered[triggeredCount++] = slot;
+            }
+
+        }
+
+        public int getOrderId(int i) {
+            return slab.getOrderId(triggered[i]);
+        }
+
+        public String getUsername(int i) {
+            return users.nameOf(slab.getUser(triggered[i]));
+        }
+
+        public String getType(int i) {
+            return getSide(i) == Side.BID ? BID : ASK;
+        }
+
+        public Side getSide(int i) {
+            return slab.getSide(triggered[i]);
+        }
+
+        public int getSize(int i) {
+            return slab.getSize(triggered[i]);
+        }
+
+        public void finish(int i) {
+            slab.setSize(triggered[i], 0); // finalized, even if rejected
+            release(triggered[i]);
+        }
+    }
+
+
+
+    // ---- edges: Order objects for cancel requests and persistence ----
+
+    // Builds a copy of the stored order, or null if the order ID is unknown or has left the book
+    public Order getOrder(int orderId) {
+
+        int slot = index.get(orderId);
+        return slot == OrderSlab.NONE ? null : toOrder(slot);
+
+    }
+
+
+    private Order toOrder(int slot) {
+
+        String username = users.nameOf(slab.getUser(slot));
+        String type = slab.getSide(slot) == Side.BID ? BID : ASK;
+        if (slab.isStop(slot)) {
+            return new StopOrder(slab.getOrderId(slot), username, type, slab.getSize(slot), slab.getTimestamp(slot), slab.getPrice(slot));
+        }
+        return new LimitOrder(slab.getOrderId(slot), username, type, slab.getSize(slot), slab.getTimestamp(slot), slab.getPrice(slot));
+
+    }
+
+
+    /**
+     * Rebuilds the store from a loaded order book file.
+     *
+     * @param all      Live limit and stop orders ("activeOrders").
+     * @param bidList  Resting limit bids in priority order, and so on for the other lists.
+     */
+    public void load(Map<Integer, Order> all, List<LimitOrder> bidList, List<LimitOrder> askList,
+                     List<StopOrder> bidStopList, List<StopOrder> askStopList) {
+
+        for (Order order : all.values()) {
+            if (order instanceof LimitOrder) {
+                store(order, false, ((LimitOrder) order).getLimitPrice());
+            } else if (order instanceof StopOrder) {
+                store(order, true, ((StopOrder) order).getStopPrice());
+            }
+        }
+        for (LimitOrder l : bidList) rest(l, false, l.getLimitPrice());
+        for (LimitOrder l : askList) rest(l, false, l.getLimitPrice());
+        for (StopOrder st : bidStopList) rest(st, true, st.getStopPrice());
+        for (StopOrder st : askStopList) rest(st, true, st.getStopPrice());
+
+    }
+
+
+    private void rest(Order order, boolean stop, int price) {
+
+        int slot = index.get(order.getOrderId());
+        if (slot == OrderSlab.NONE) {
+            slot = store(order, stop, price);
+        }
+        if (!slab.isResting(slot)) {
+            ladderOf(slot).add(slot);
+        }
+
+    }
+
+
+
+    /**
+     * Applies journaled events to the store (see OrderBook.replayJournal()).
+     */
+    public BookJournal.Listener replayListener() {
+
+        return new BookJournal.Listener() {
+
+            public void limit(LimitOrder order, boolean resting) {
+                if (resting) {
+                    int slot = store(order, false, order.getLimitPrice());
+                    ladderOf(slot).add(slot);
+                } else {
+                    coldOrders.put(order.getOrderId(), ColdOrderIndex.statusOf(order));
+                }
+            }
+
+            public void stop(StopOrder order) {
+                int slot = store(order, true, order.getStopPrice());
+                ladderOf(slot).add(slot);
+            }
+
+            public void fill(int orderId, int size) {
+                int slot = restingSlot(orderId, "FILL");
+                ladderOf(slot).reduce(slot, size);
+                if (slab.getSize(slot) == 0) release(slot);
+            }
+
+            public void cancel(int orderId) {
+                restingSlot(orderId, "CANCEL");
+                OffHeapOrderBook.this.cancel(orderId);
+            }
+
+            public void trigger(int orderId) {
+                int slot = restingSlot(orderId, "TRIGGER");
+                ladderOf(slot).remove(slot);
+                slab.setSize(slot, 0);
+                release(slot);
+            }
+        };
+
+    }
+
+
+
+    // Slot of a replayed event's order; a missing one means the journal does not match the store
+    private int restingSlot(int orderId, String event) {
+
+        int slot = index.get(orderId);
+        if (slot == OrderSlab.NONE) {
+            throw new IllegalStateException(event + " of order " + orderId + ", which is not in the book");
+        }
+        return slot;
+
+    }
+
+
+
+    // Number of stored (resting) orders, and off-heap bytes reserved for them
+    public int size() {
+        return slab.size();
+    }
+
+    public long getReservedBytes() {
+        return slab.getReservedBytes();
+    }
+}
@@ -9,6 +9,15 @@ public abstract class Order {
  protected int size;      
  protected long timestamp;     
  protected String orderType;
+ 
+ // Handle of a resting order inside its PriceLevel (intrusive doubly-linked list).
+ // Transient: never serialized, rebuilt when the order is added back to the book.
+ transient PriceLevel<?> level;
+ transient Order prev;
+ transient Order next;
+ 
+ // Side parsed from "type" on first use (orders loaded by Gson skip the constructor)
+ private transient Side side;
 
  public Order(int orderId, String username, String type, int size, long timestamp, String orderType) {
      this.orderId = orderId;
@@ -31,6 +40,13 @@ public abstract class Order {
      return type;
  }
  
+ public Side getSide() {
+     if (side == null) {
+         side = Side.of(type);
+     }
+     return side;
+ }
+ 
  public int getSize() {
      return size;
  }
@@ -50,6 +66,12 @@ public abstract class Order {
 	 this.size=i;
  }
  
+ // true while the order is linked into a price level of the book
+ public boolean isResting() {
+	 return level != null;
+ }
+
+ 
  @Override
  public boolean equals(Object obj) {
      if (this == obj) return true;
@@ -2,33 +2,28 @@ package final_project;
 
 import java.util.concurrent.ConcurrentHashMap;
 
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+
 
 /**
  * 
  * OrderBook
  * 
- * 1. A thread-safe singleton of a limit order book that supports:
+ * 1. A thread-safe limit order book of one symbol (one instance per listed symbol) that supports:
  * 
  *        1. Limit orders (bid/ask)
  *        2. Market orders (bid/ask)
@@ -38,28 +33,70 @@ import java.util.Map;
  *   
  *
  * 2. Concurrency model:
- *    All state-changing operations (add/remove orders, trigger stop orders, persist, load)
- *    are protected by a global "ReentrantLock(true)" to ensure:
+ *    All state-changing operations (add/remove orders, trigger stop orders, snapshot, load)
+ *    run through execute(), which ensures:
  *    
  *        1. Full mutual exclusion
  *        2. Fair FIFO ordering between threads (first come, first served). 
  *           Trading systems must ensure that earlier requests are processed first.
  * 
- * 4. Data structures covered by the lock:
+ * 3. Two modes are available ("matching_mode" in the config):
+ * 
+ *        1. "lock" (default): the calling thread runs the operation holding a global
+ *           "ReentrantLock(true)".
+ *        2. "sequencer": the calling thread publishes the operation into the ring buffer of a
+ *           CommandSequencer and waits; one matching thread owns the book and runs the
+ *           operations in arrival order, without any lock handoff between connection threads.
+ * 
+ * 4. Data structures owned by the lock (or by the matching thread):
  * 
- *        1. "bidOrders": PriorityBlockingQueue for limit bid orders
- *        2. "askOrders": PriorityBlockingQueue for limit ask orders
- *        3. "bidStopOrders": PriorityBlockingQueue for stop bid orders
- *        4. "askStopOrders": PriorityBlockingQueue for stop ask orders
- *        5. "activeOrders": ConcurrentHashMap tracking all limit and stop orders
+ *        1. "bidOrders": PriceLadder (price levels with FIFO queues) for limit bid orders
+ *        2. "askOrders": PriceLadder for limit ask orders
+ *        3. "stopOrders": StopTriggerIndex keyed by stop price for bid and ask stop orders
+ *        4. "activeOrders": ConcurrentHashMap tracking the live limit and stop orders
+ *           (resting in the book); an order that is fully filled, triggered or cancelled is
+ *           moved to "coldOrders", a ColdOrderIndex keeping only its final status, so the map
+ *           and the snapshots do not grow with the number of orders ever received
  * 
  * 
  * 5. Design considerations:
  * 
- *        1. Stop orders are checked and triggered after each matching operation.
+ *        1. Stop orders are checked and triggered after each matching operation, in one
+ *           cascade that runs until the market stops moving.
  *        2. Stop and Market orders must fully match or are rejected.
- *        3. Persistent storage (via "persist()") is called immediately after any state changes.
- *        4. The entire order book state can be restored on server startup via "load()".
+ *        3. Each command appends its book events to a write-ahead journal (BookJournal) as one
+ *           record; every "snapshot_interval" commands, a snapshot is written in the background
+ *           (Snapshotter) from the previous one and the journal, without stopping matching.
+ *           Once the book is released, the command waits for its record to be durable as set by
+ *           "durability" (sync, group commit or async, see JournalFlusher) before returning.
+ *        4. Commands start with journal.begin(), before changing the book. If the journal cannot
+ *           append or sync a record, the command throws a JournalFailedException and the book
+ *           rejects every later command the same way (fail-stop), so the state changed by a
+ *           command that was not journaled is never acknowledged nor built upon; a restart
+ *           recovers the book from what the journal holds.
+ *        5. The entire order book state can be restored on server startup via "load()":
+ *           latest snapshot, then the journal records written after it.
+ * 
+ * 6. Multiple symbols ("symbols" in the config):
+ * 
+ *        1. Each listed symbol has its own independent OrderBook, with its own lock
+ *           (or matching thread) and its own file, so books never contend with each other.
+ *        2. getInstance() returns the book of the default symbol, used by the requests
+ *           that do not name a symbol; its file keeps the "order_book" name.
+ *        3. Order IDs are global, so an order ID identifies one book.
+ * 
+ * 7. Order store ("order_store" in the config):
+ * 
+ *        1. "heap" (default): the structures of section 4, one Order object per order.
+ *        2. "offheap": limit and stop orders live in an OffHeapOrderBook instead (fixed-width
+ *           records in direct buffers, price levels linking slot indices), so the heap stays
+ *           flat however deep the book grows. The structures of section 4 stay empty except
+ *           "coldOrders": orders leaving the book get their final status there and their
+ *           slot freed, as with the heap store. Order objects are only built for cancel
+ *           requests and for load().
+ *        3. Both stores are matched by the same OrderMatcher (matching loop, fill-or-kill and
+ *           self-trade rules, stop trigger cascade), over their own sides: HeapSide / HeapStops
+ *           here, the slab sides of OffHeapOrderBook.
  * 
  * 
  */
@@ -69,92 +106,68 @@ public class OrderBook {
 	
 	
 	
-	// Get OrderBook file path
-	 private static final String FILE_PATH = ServerConfig.getOrderBookFile();
+	// Symbol traded in this book, its snapshot file path, its write-ahead journal
+	// and the background thread writing its snapshots
+	private final String symbol;
+	private final String filePath;
+	private final BookJournal journal;
+	private final Snapshotter snapshotter;
+	 
+	 
+	// What the matcher does when an order meets the same user's resting orders
+	private final SelfTradePolicy selfTradePolicy = ServerConfig.getSelfTradePolicy();
 	 
 	 
 	// Global lock to protect the entire order book and ensure strict operation ordering.
+
 	private final ReentrantLock orderBookLock = new ReentrantLock(true);  // fair lock
 	
+	// Single matching thread fed by a ring buffer, used instead of the lock in "sequencer" mode
+	private final CommandSequencer sequencer;
 	
-	// Singleton instance of OrderBook and Gson for JSON serialization.
-    // activeOrders stores all received limit and stop orders, 
-    // using ConcurrentHashMap for thread-safe access.
-	private static final OrderBook INSTANCE = new OrderBook();
-	private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-	private final ConcurrentHashMap<Integer, Order> activeOrders = new ConcurrentHashMap<>();
-	
-	
-	
-	
-	
+	// Off-heap store replacing the ladders, stopOrders and activeOrders in "offheap" mode (null otherwise)
+	private final OffHeapOrderBook offHeap;
 	
+	// Final status of the orders that left the book (cold tier of activeOrders)
+	private final ColdOrderIndex coldOrders;
 	
 	
-	// Bid order queue: sorted by descending price; if prices are equal, sorted by ascending timestamp (earlier orders come first)
-	private PriorityBlockingQueue<LimitOrder> bidOrders = new PriorityBlockingQueue<>(1000, new Comparator<LimitOrder>() {
-	    @Override
-	    public int compare(LimitOrder o1, LimitOrder o2) {
-	        // Compare price first: higher price comes first
-	        int priceCompare = Integer.compare(o2.getLimitPrice(), o1.getLimitPrice());
-	        if (priceCompare != 0) {
-	            return priceCompare;
-	        }
-	        // If prices are equal, compare timestamp: earlier order (smaller timestamp) comes first
-	        return Long.compare(o1.getTimestamp(), o2.getTimestamp());
-	    }
-	});
-
-	
-	
+	// One OrderBook per listed symbol (in config order), the default symbol's book and Gson for JSON serialization.
+    // activeOrders stores the live limit and stop orders,
+    // using ConcurrentHashMap for thread-safe access.
+	private static final Map<String, OrderBook> BOOKS = createBooks();
+	private static final OrderBook INSTANCE = BOOKS.get(ServerConfig.getDefaultSymbol());
+	private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+	private final ConcurrentHashMap<Integer, Order> activeOrders = new ConcurrentHashMap<>();
 	
 	
 	
 	
-	// Ask order queue: sorted by ascending price; if prices are equal, sorted by ascending timestamp
-	private PriorityBlockingQueue<LimitOrder> askOrders = new PriorityBlockingQueue<>(1000, new Comparator<LimitOrder>() {
-	    @Override
-	    public int compare(LimitOrder o1, LimitOrder o2) {
-	        // Compare price first: lower price comes first
-	        int priceCompare = Integer.compare(o1.getLimitPrice(), o2.getLimitPrice());
-	        if (priceCompare != 0) {
-	            return priceCompare;
-	        }
-	        // If prices are equal, earlier order comes first
-	        return Long.compare(o1.getTimestamp(), o2.getTimestamp());
-	    }
-	});
 	
 	
 	
-
-	// Bid stop order queue: sorted by descending price; if prices are equal, sorted by ascending timestamp
-	private PriorityBlockingQueue<StopOrder> bidStopOrders = new PriorityBlockingQueue<>(1000, new Comparator<StopOrder>() {
-	    @Override
-	    public int compare(StopOrder o1, StopOrder o2) {
-	        // Higher stopPrice has higher priority to be triggered
-	        int cmp = Integer.compare(o2.getStopPrice(), o1.getStopPrice());
-	        if (cmp != 0) return cmp;
-	        return Long.compare(o1.getTimestamp(), o2.getTimestamp());
-	    }
-	});
 	
+	// Bid side: price levels sorted by descending price; each level is a FIFO queue,
+	// so orders with the same price are matched by ascending timestamp (earlier orders come first).
+	// The level index (tree or bounded array) is selected by "order_book_ladder" in the config.
+	private final PriceLadder<LimitOrder> bidOrders = PriceLadder.create(true);
 	
+	// Ask side: price levels sorted by ascending price, FIFO inside each level
+	private final PriceLadder<LimitOrder> askOrders = PriceLadder.create(false);
 	
+	// Stop orders of both sides, keyed by stop price in trigger order
+	private final StopTriggerIndex stopOrders = new StopTriggerIndex();
 	
+	// Reused by the trigger cascade to receive the stop orders drained from the index
+	private final List<StopOrder> triggered = new ArrayList<>();
 	
+	// Matching rules shared with the off-heap store, and the heap sides it walks
+	private final OrderMatcher matcher;
+	private final HeapSide bids = new HeapSide(bidOrders);
+	private final HeapSide asks = new HeapSide(askOrders);
+	private final HeapStops stops = new HeapStops();
 	
 	
-	// Ask stop order queue: sorted by ascending price; if prices are equal, sorted by ascending timestamp
-	private PriorityBlockingQueue<StopOrder> askStopOrders = new PriorityBlockingQueue<>(1000, new Comparator<StopOrder>() {
-	    @Override
-	    public int compare(StopOrder o1, StopOrder o2) {
-	        // Lower stopPrice has higher priority to be triggered (sorted by ascending price)
-	        int cmp = Integer.compare(o1.getStopPrice(), o2.getStopPrice());
-	        if (cmp != 0) return cmp;
-	        return Long.compare(o1.getTimestamp(), o2.getTimestamp());
-	    }
-	});
 	
 	
 	
@@ -162,47 +175,182 @@ public class OrderBook {
 	
 
 	/**
-	 * Singleton pattern implementation for OrderBook.
+	 * Registry of OrderBook instances, one per symbol.
 	 * 
-	 * Use getInstance() to access the single shared instance.
+	 * Use getInstance() for the default symbol and getInstance(symbol) for a given symbol.
 	 * Constructor is private to prevent external instantiation.
 	 */
-	private OrderBook() {}
+	private OrderBook(String symbol) {
+		this.symbol = symbol;
+		this.filePath = ServerConfig.getOrderBookFile(symbol);
+		this.journal = openJournal(ServerConfig.getOrderBookJournalFile(symbol), "journal-" + symbol);
+		this.coldOrders = openColdOrders(ServerConfig.getOrderBookColdLog(symbol));
+		this.matcher = new OrderMatcher(selfTradePolicy, journal);
+		this.snapshotter = new Snapshotter(symbol, filePath, journal.getJournal(), journal.getFlusher(), coldOrders,
+				"snapshot-" + symbol);
+		this.sequencer = "sequencer".equalsIgnoreCase(ServerConfig.getMatchingMode())
+				? new CommandSequencer(ServerConfig.getSequencerRingSize(), ServerConfig.getSequencerIdleStrategy(), "matching-" + symbol)
+				: null;
+		this.offHeap = "offheap".equalsIgnoreCase(ServerConfig.getOrderStore())
+				? new OffHeapOrderBook(selfTradePolicy, ServerConfig.getOrderStoreChunkSize(), journal, coldOrders)
+				: null;
+	}
+	
+	private static BookJournal openJournal(String path, String flusherName) {
+		try {
+			Journal file = new Journal(path, ServerConfig.getJournalSegmentSize());
+			JournalFlusher flusher = new JournalFlusher(file, ServerConfig.getDurability(),
+					ServerConfig.getJournalFlushIntervalMicros(), ServerConfig.getGroupCommitMaxRecords(), flusherName);
+			return new BookJournal(file, flusher, ServerConfig.getSnapshotInterval());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot open order book journal " + path, e);
+		}
+	}
+	
+	private static ColdOrderIndex openColdOrders(String path) {
+		try {
+			return new ColdOrderIndex(new Journal(path, ServerConfig.getColdLogSegmentSize()));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot open order book cold log " + path, e);
+		}
+	}
+	
+	private static Map<String, OrderBook> createBooks() {
+		Map<String, OrderBook> books = new LinkedHashMap<>();
+		for (String symbol : ServerConfig.getSymbols()) {
+			books.put(symbol, new OrderBook(symbol));
+		}
+		return Collections.unmodifiableMap(books);
+	}
+	
+	// Order book of the default symbol
     public static OrderBook getInstance() {
     	return INSTANCE;
     }
-	
     
+    // Order book of the given symbol (default symbol if null), or null if the symbol is not listed
+    public static OrderBook getInstance(String symbol) {
+    	if (symbol == null || symbol.trim().isEmpty()) return INSTANCE;
+    	return BOOKS.get(symbol.trim().toUpperCase());
+    }
+    
+    // All order books, default symbol first
+    public static Collection<OrderBook> getInstances() {
+    	return BOOKS.values();
+    }
+    
+    public String getSymbol() {
+    	return symbol;
+    }
     
     
     
     
     /**
-     * Persists the current state of the order book to the JSON file ("orderbook_data.json").
+     * Runs an operation on the order book with exclusive access, in arrival order.
      * 
-     * 1. Saves limit orders, stop orders, and activeOrders.
-     * 2. Ensures data consistency by locking the entire order book during the process.
+     * 1. "lock" mode: runs it on the calling thread, holding orderBookLock.
+     * 2. "sequencer" mode: hands it to the matching thread and waits for its result
+     *    (runs it directly when already called from the matching thread).
      * 
-     * Thread-safe: protected by the global fair lock (orderBookLock).
+     * @param command The operation to run.
+     * @return The result of the operation.
      */
-	public void persist() {
-		orderBookLock.lock();
-	    try {
-	    Map<String, Object> map = new HashMap<>();
-	    map.put("bidOrders", new ArrayList<>(bidOrders));
-	    map.put("askOrders", new ArrayList<>(askOrders));
-	    map.put("bidStopOrders", new ArrayList<>(bidStopOrders));
-	    map.put("askStopOrders", new ArrayList<>(askStopOrders));
-	    map.put("activeOrders", new HashMap<>(activeOrders));
+    private <T> T execute(Supplier<T> command) {
+    	
+    	if (sequencer != null) {
+    		return sequencer.execute(command);
+    	}
+    	
+    	orderBookLock.lock();
+    	try {
+    		return command.get();
+    	} finally {
+    		orderBookLock.unlock();
+    	}
+    	
+    }
 
-	    try (FileWriter writer = new FileWriter(FILE_PATH)) {
-	        gson.toJson(map, writer); 
-	    } catch (IOException e) {
-	        System.err.println("[Main] Failed to persist Order Book:" + e.getMessage());
-	    }
-	    }finally {
-	        orderBookLock.unlock();
-	    }
+    
+    
+    
+    // Body of an order command (see executeOrder()): returns the sequence number of its journal record
+    private interface OrderCommand<O extends Order> {
+    	long run(OrderBook book, O order, ExecutionBuffer fills);
+    }
+    
+    
+    /**
+     * execute() for the commands of an incoming order (addLimitOrder(), addMarketOrder()).
+     * 
+     * The command is a non-capturing method reference and its result stays a long, so in
+     * "lock" mode running it allocates nothing (no lambda, no boxed sequence number).
+     * "sequencer" mode hands it to the matching thread as execute() does.
+     * 
+     * @param command The command, run with this book, the order and the buffer.
+     * @param order The incoming order.
+     * @param fills The calling thread's buffer, receiving the fills.
+     * @return The sequence number returned by the command.
+     */
+    private <O extends Order> long executeOrder(OrderCommand<O> command, O order, ExecutionBuffer fills) {
+    	
+    	if (sequencer != null) {
+    		return sequencer.execute(() -> command.run(this, order, fills));
+    	}
+    	
+    	orderBookLock.lock();
+    	try {
+    		return command.run(this, order, fills);
+    	} finally {
+    		orderBookLock.unlock();
+    	}
+    	
+    }
+	
+    
+    
+    
+    
+    
+    /**
+     * Writes a snapshot of the order book to its JSON file ("orderbook_data.json" for the default symbol)
+     * and waits until it is written.
+     * 
+     * 1. Only reads the sequence number of the last journal record through execute():
+     *    the snapshot itself is built and written by the book's Snapshotter thread, from the
+     *    previous snapshot and the journal, while matching continues.
+     * 2. The snapshot saves limit orders, stop orders, activeOrders, the sequence number of the
+     *    last journal record it covers ("journalSequence") and where the next record starts
+     *    ("journalSegment", "journalPosition"); the journal segments before it are then deleted.
+     * 
+     * Commands request a snapshot every "snapshot_interval" commands without waiting (see commitCommand()).
+     */
+	public void snapshot() {
+		long sequence = execute(journal::getSequence);
+		snapshotter.request(sequence);
+		snapshotter.awaitCompleted(sequence);
+	}
+	
+	
+	
+	
+	/**
+	 * Appends the events of the current command to the journal as one record,
+	 * and requests a background snapshot when "snapshot_interval" commands have been journaled since the last one.
+	 * Must run inside execute(), after journal.begin() and the command.
+	 * 
+	 * @return The record's sequence number: the caller passes it to journal.awaitDurable()
+	 *         after execute() has returned, before answering the client.
+	 */
+	private long commitCommand() {
+		
+		long sequence = journal.commit();
+		if (journal.isSnapshotDue()) {
+			snapshotter.request(journal.getSequence());
+			journal.snapshotTaken();
+		}
+		return sequence;
+		
 	}
 	
 	
@@ -210,76 +358,156 @@ public class OrderBook {
 	
 
 	/**
-	 * Loads the order book from the JSON file ("orderbook_data.json").
+	 * Loads the order book from its snapshot and journal.
 	 * 
-	 * 1. Rebuilds limit orders, stop orders, and activeOrders map from the saved file.
-	 * 2. Protected by the global fair lock (orderBookLock) 
+	 * 1. Reads the final statuses of the orders that left the book (cold tier log).
+	 * 2. Rebuilds limit orders, stop orders, and activeOrders map from the snapshot file
+	 *    ("orderbook_data.json" for the default symbol), if any.
+	 * 3. Replays the journal records written after the snapshot (see replayJournal()).
+	 * 4. Runs through execute() (orderBookLock or the matching thread)
 	 * 	  to prevent concurrent modifications during loading.
 	 * 
 	 * Safe to call on server startup for state recovery.
 	 * 
 	 */
 	public void load() {
-		orderBookLock.lock();
+		execute(() -> {
+			try {
+				coldOrders.load();
+			} catch (IOException e) {
+				System.err.println("[Main] Failed to load the finalized orders of Order Book " + symbol + ":" + e.getMessage());
+			}
+			BookSnapshot snapshot = loadSnapshot();
+			if (snapshot != null) {
+				replayJournal(snapshot.getSequence(), snapshot.getSegment(), snapshot.getPosition());
+			} else {
+				replayJournal(0, -1, 0);
+			}
+			return null;
+		});
+	}
+	
+	
+	
+	
+	// Loads the snapshot file into the book; returns it for its journal position (null if none)
+	private BookSnapshot loadSnapshot() {
+		
+		BookSnapshot snapshot;
 		try {
-	    File file = new File(FILE_PATH);
-	    if (!file.exists()) return;
-
-	    try (FileReader reader = new FileReader(file)) {
-	    	
-	        Type mapType = new TypeToken<Map<String, JsonElement>>() {}.getType();
-	        
-	        Map<String, JsonElement> map = gson.fromJson(reader, mapType);
-
-	        // limit orders
-	        List<LimitOrder> bidList = gson.fromJson(map.get("bidOrders"), new TypeToken<List<LimitOrder>>(){}.getType());
-	        List<LimitOrder> askList = gson.fromJson(map.get("askOrders"), new TypeToken<List<LimitOrder>>(){}.getType());
-	        
-	        bidOrders.addAll(bidList);
-	        askOrders.addAll(askList);
-
-	        // stop orders
-	        List<StopOrder> bidStopList = gson.fromJson(map.get("bidStopOrders"), new TypeToken<List<StopOrder>>(){}.getType());
-	        List<StopOrder> askStopList = gson.fromJson(map.get("askStopOrders"), new TypeToken<List<StopOrder>>(){}.getType());
-	        
-	        bidStopOrders.addAll(bidStopList);
-	        askStopOrders.addAll(askStopList);
-
-	        // active orders
-	        JsonObject activeOrdersObj = map.get("activeOrders").getAsJsonObject();
-	        
-	        for (Map.Entry<String, JsonElement> entry : activeOrdersObj.entrySet()) {
-	        	
-	            int orderId = Integer.parseInt(entry.getKey());
-	            JsonObject obj = entry.getValue().getAsJsonObject();
-	            String orderType = obj.get("orderType").getAsString();
-
-	            Order order;
-	            
-	            if ("limit".equalsIgnoreCase(orderType)) {
-	                order = gson.fromJson(obj, LimitOrder.class);
-	                
-	            } else if ("stop".equalsIgnoreCase(orderType)) {
-	                order = gson.fromJson(obj, StopOrder.class);
-	                
-	            } else {
-	                System.err.println("[Main]️ Order book Unknown orderType: " + orderType + " skipping order ID " + orderId);
-	          
-	                continue;
-	            }
-	            
-	            activeOrders.put(orderId, order);
-	        }
-	        System.out.println("[Main] Order Book data loaded successfully!");
-	        
-	        
-	    } catch (IOException e) {
-	        System.err.println("[Main] Failed to load Order Book:" + e.getMessage());
-	    }
-	    
-		}finally {
-	        orderBookLock.unlock();
-	    }
+			snapshot = BookSnapshot.read(filePath);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("[Main] Failed to load Order Book " + symbol + ":" + e.getMessage());
+			return null;
+		}
+		if (snapshot == null) return null;
+		
+		// Only files of older versions still hold orders that left the book
+		snapshot.getEvicted().forEach(coldOrders::put);
+		
+		if (offHeap != null) {
+			offHeap.load(snapshot.getActiveOrders(), snapshot.getBidOrders(), snapshot.getAskOrders(),
+					snapshot.getBidStops(), snapshot.getAskStops());
+		} else {
+			// The snapshot shares one instance per order between activeOrders and the resting lists
+			activeOrders.putAll(snapshot.getActiveOrders());
+			for (LimitOrder order : snapshot.getBidOrders()) {
+				bidOrders.add(order, order.getLimitPrice());
+			}
+			for (LimitOrder order : snapshot.getAskOrders()) {
+				askOrders.add(order, order.getLimitPrice());
+			}
+			for (StopOrder order : snapshot.getBidStops()) {
+				stopOrders.add(order);
+			}
+			for (StopOrder order : snapshot.getAskStops()) {
+				stopOrders.add(order);
+			}
+		}
+		
+		System.out.println("[Main] Order Book " + symbol + " data loaded successfully!");
+		return snapshot;
+		
+	}
+	
+	
+	
+	
+	/**
+	 * Replays the journal records written after the snapshot, applying their events in order.
+	 * 
+	 * Events carry the outcome of each command (remaining sizes, fills, cancels, triggers),
+	 * so nothing is matched again during replay.
+	 * 
+	 * A journal that cannot be read, or whose events name orders that are not in the book
+	 * (corrupt journal), fails load() and so the startup: going on would give the next
+	 * commands sequence numbers already used by the records left behind.
+	 * 
+	 * @param snapshotSequence Sequence number of the last record already in the snapshot.
+	 * @param segment          Journal segment of the next record (-1 if unknown: from the oldest one).
+	 * @param position         Offset of the next record in that segment.
+	 */
+	private void replayJournal(long snapshotSequence, long segment, int position) {
+		
+		BookJournal.Listener listener = offHeap != null ? offHeap.replayListener() : new BookJournal.Listener() {
+			
+			public void limit(LimitOrder order, boolean resting) {
+				if (resting) {
+					activeOrders.put(order.getOrderId(), order);
+					(order.getSide() == Side.BID ? bidOrders : askOrders).add(order, order.getLimitPrice());
+				} else {
+					evict(order);
+				}
+			}
+			
+			public void stop(StopOrder order) {
+				activeOrders.put(order.getOrderId(), order);
+				stopOrders.add(order);
+			}
+			
+			public void fill(int orderId, int size) {
+				LimitOrder order = activeOrder(orderId, "FILL", LimitOrder.class);
+				(order.getSide() == Side.BID ? bidOrders : askOrders).reduce(order, size);
+				if (order.getSize() == 0) {
+					evict(order);
+				}
+			}
+			
+			public void cancel(int orderId) {
+				Order order = activeOrder(orderId, "CANCEL", Order.class);
+				unlink(order);
+				evict(order);
+			}
+			
+			public void trigger(int orderId) {
+				StopOrder order = activeOrder(orderId, "TRIGGER", StopOrder.class);
+				stopOrders.remove(order);
+				order.setSize(0);
+				evict(order);
+			}
+		};
+		
+		try {
+			int replayed = journal.replay(snapshotSequence, segment, position, listener);
+			if (replayed > 0) {
+				System.out.println("[Main] Order Book " + symbol + ": replayed " + replayed + " journal records");
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot replay the journal of Order Book " + symbol, e);
+		}
+		
+	}
+	
+	
+	// Order a replayed event applies to; a missing one means the journal does not match the book
+	private <T extends Order> T activeOrder(int orderId, String event, Class<T> kind) {
+		
+		Order order = activeOrders.get(orderId);
+		if (!kind.isInstance(order)) {
+			throw new IllegalStateException(event + " of order " + orderId + ", which is not in the book");
+		}
+		return kind.cast(order);
+		
 	}
 
 	
@@ -290,7 +518,7 @@ public class OrderBook {
 	/**
 	 * Adds the given order to the activeOrders map.
 	 * 
-	 * 1. Supports both limit and stop orders.
+	 * 1. Supports both limit and stop orders, once they rest in the book.
 	 * 2. Market orders are not stored in activeOrders.
 	 * 
 	 * @param order The order to be tracked.
@@ -306,14 +534,40 @@ public class OrderBook {
 	
 	
 	
+	/**
+	 * Moves an order that left the book (filled, triggered or cancelled) from activeOrders
+	 * to the cold tier, which only keeps its final status (see ColdOrderIndex.statusOf()).
+	 * 
+	 * The status is recorded before the order is removed, so a concurrent getActiveOrder()
+	 * followed by getFinalStatus() always finds it in one of them.
+	 * Persisted by the next snapshot (see Snapshotter). Must run inside execute().
+	 * 
+	 * @param order The order that left the book.
+	 */
+	private void evict(Order order) {
+		
+		coldOrders.put(order.getOrderId(), ColdOrderIndex.statusOf(order));
+		activeOrders.remove(order.getOrderId());
+		
+	}
+	
+	
+	
+	
 	/**
 	 * Retrieves an active order by its order ID.
 	 * 
+	 * With the off-heap store, returns a copy of the stored order, read through execute().
+	 * In both stores, orders that left the book are only in the cold tier (see getFinalStatus()).
+	 * 
 	 * @param orderId The ID of the order.
 	 * @return The corresponding active order, or null if not found.
 	 */
 	public Order getActiveOrder(int orderId) {
 		
+		if (offHeap != null) {
+			return execute(() -> offHeap.getOrder(orderId));
+		}
 	    return activeOrders.get(orderId);
 	    
 	}
@@ -321,53 +575,107 @@ public class OrderBook {
 	
 	
 	
+	/**
+	 * Retrieves the final status of an order that has left this book.
+	 * 
+	 * Lock-free: the cold tier is read without execute(). Both order stores record the status
+	 * before freeing the order, so an order is always found by getActiveOrder() or here.
+	 * 
+	 * @param orderId The ID of the order.
+	 * @return ColdOrderIndex.FINALIZED (filled or triggered), ColdOrderIndex.CANCELLED,
+	 *         or ColdOrderIndex.UNKNOWN if the order never left this book.
+	 */
+	public byte getFinalStatus(int orderId) {
+		
+		return coldOrders.get(orderId);
+		
+	}
+	
+	
+	
+	
 	/**
 	 * Removes the given order from the order book.
 	 * Supports both limit and stop orders (market orders are not stored).
 	 * 
-	 * Thread-safe: protected by the global fair lock (orderBookLock).
+	 * The order is unlinked from its price level through its handle in O(1);
+	 * an order that is not resting any more (filled, triggered or cancelled) has no handle.
+	 * A successful removal is journaled as a CANCEL event.
+	 * 
+	 * Thread-safe: runs through execute() (orderBookLock or the matching thread).
 	 * 
 	 * @param order The order to be removed.
 	 * @return true if the order was successfully removed, false otherwise.
+	 * @throws JournalFailedException if the journal failed (the order is not removed).
 	 */
 	public boolean removeOrderFromBook(Order order) {
 		
-	    orderBookLock.lock();
-	    
-	    try {
+	    long sequence = execute(() -> {
 	    	
-	        boolean removed = false;
-	        
-	        if (order instanceof LimitOrder) {
-	            removed = "bid".equalsIgnoreCase(order.getType())
-	                    ? bidOrders.remove(order)
-	                    : askOrders.remove(order);
-	            
-	        } else if (order instanceof StopOrder) {
-	            removed = "bid".equalsIgnoreCase(order.getType())
-	                    ? bidStopOrders.remove(order)
-	                    : askStopOrders.remove(order);
-	            
+	        journal.begin();
+	        boolean removed = offHeap != null ? offHeap.cancel(order.getOrderId()) : unlink(order);
+	        if (!removed) return -1L;
+	        if (offHeap == null) {
+	        	evict(order);
 	        }
-	        if (removed) persist();
-	        return removed;
+	        journal.cancel(order.getOrderId());
+	        return commitCommand();
 	        
-	    } finally {
-	        orderBookLock.unlock();
-	    }
+	    });
+	    
+	    journal.awaitDurable(sequence);
+	    return sequence >= 0;
 	    
 	}
+	
+	
+	
+	
+	// Unlinks a resting limit or stop order of the heap store; false if it is not resting
+	private boolean unlink(Order order) {
+		
+		if (order instanceof LimitOrder) {
+			return order.getSide() == Side.BID
+					? bidOrders.remove((LimitOrder) order)
+					: askOrders.remove((LimitOrder) order);
+		}
+		if (order instanceof StopOrder) {
+			return stopOrders.remove((StopOrder) order);
+		}
+		return false;
+		
+	}
 
 
+	/**
+	 * Checks whether a limit order at the given price can rest in the book.
+	 * 
+	 * Always true for the tree ladder and the off-heap store; with the array ladder and
+	 * "price_band_policy=reject", prices outside [price_band_min, price_band_max] are refused.
+	 * 
+	 * @param limitPrice The limit price of the order.
+	 * @return true if the price is accepted by the book.
+	 */
+	public boolean acceptsLimitPrice(int limitPrice) {
+		
+		if (offHeap != null) return true;
+		return bidOrders.accepts(limitPrice) && askOrders.accepts(limitPrice);
+		
+	}
+	
+	
+	
+	
 	/**
 	 * Retrieves the current best bid price (highest bid price).
+
 	 * 
 	 * @return Best bid price, or -1 if there are no bid orders.
 	 */
     public Integer getBestBidPrice() {
     	
-        LimitOrder best = bidOrders.peek();
-        return best == null ? -1 : best.getLimitPrice();
+    	if (offHeap != null) return offHeap.getBestBidPrice();
+        return bidOrders.getBestPrice();
         
     }
 
@@ -381,8 +689,8 @@ public class OrderBook {
 	 */
     public Integer getBestAskPrice() {
     	
-        LimitOrder best = askOrders.peek();
-        return best == null ? -1 : best.getLimitPrice();
+    	if (offHeap != null) return offHeap.getBestAskPrice();
+        return askOrders.getBestPrice();
         
         
     }
@@ -393,33 +701,63 @@ public class OrderBook {
     /**
      * Adds a new limit order to the order book and triggers matching.
      * 
-     * 1. Stores the order in activeOrders.
-     * 2. Matches against the opposite side (askOrders for bid, bidOrders for ask).
-     * 3. Checks and triggers stop orders after matching.
-     * 4. Persists the updated order book state.
+     * 1. Matches against the opposite side (askOrders for bid, bidOrders for ask).
+     * 2. Stores the order in activeOrders if it rests in the book, otherwise (fully filled, or
+     *    cancelled by self-trade prevention) records its final status in the cold tier.
+     * 3. Triggers the stop orders crossed by the new prices (whole cascade, see triggerStopOrders()).
+     * 4. Journals the events of the order and its cascade as one record.
+     * 5. Records and notifies the trades of triggered stop orders after releasing the lock.
      * 
-     * Thread-safe: protected by the global fair lock (orderBookLock).
+     * Fills are collected in the calling thread's ExecutionBuffer; the trade results are
+     * only built from it once the command has released the order book.
+     * The LIMIT event carries the outcome of the matching (remaining size, resting or not), so it
+     * is recorded after it; journal.begin() has already checked that the journal takes commands.
+     * 
+     * Thread-safe: runs through executeOrder() (orderBookLock or the matching thread).
      * 
      * @param order The limit order to be added.
      * @return Trade results grouped by username.
+     * @throws JournalFailedException if the journal failed (the order is rejected).
      */
     public Map<String, List<TradeInfo>> addLimitOrder(LimitOrder order) {
     	
-        orderBookLock.lock();
+    	ExecutionBuffer fills = ExecutionBuffer.forCurrentThread();
+    	long sequence = executeOrder(OrderBook::limitCommand, order, fills);
         
-        try {
-        	
-        	addActiveOrder(order);
-            Map<String, List<TradeInfo>> tradeMap = matchOrder(order, order.getType().equalsIgnoreCase("bid") ? askOrders : bidOrders, "limit");
-            checkTriggeredStopOrders();
-            persist();
-            return tradeMap;
-            
-        } finally {
-            orderBookLock.unlock();
-        }
+        journal.awaitDurable(sequence);
+        publishStopTrades(fills, 1);
+        return fills.toTradeMap(0);
         
     }
+    
+    
+    // Body of addLimitOrder(), run through executeOrder()
+    private long limitCommand(LimitOrder order, ExecutionBuffer fills) {
+    	
+    	fills.reset(symbol, System.currentTimeMillis()/1000);
+    	journal.begin();
+    	fills.beginGroup(order, OrderKind.LIMIT);
+    	boolean resting;
+    	if (offHeap != null) {
+    		resting = offHeap.addLimitOrder(order, fills);
+    	} else {
+    		int remaining = matcher.match(counterSide(order.getSide()), order.getUsername(), order.getSide(),
+    				OrderKind.LIMIT, order.getSize(), order.getLimitPrice(), fills);
+    		order.setSize(remaining);
+    		// Unmatched rest added back to the book, unless self-trade prevention cancelled it
+    		resting = remaining > 0 && !matcher.isIncomingCancelled();
+    		if (resting) {
+    			(order.getSide() == Side.BID ? bidOrders : askOrders).add(order, order.getLimitPrice());
+    			addActiveOrder(order);
+    		} else {
+    			coldOrders.put(order.getOrderId(), ColdOrderIndex.statusOf(order)); // never in activeOrders
+    		}
+    	}
+    	journal.limit(order, resting);
+    	triggerStopOrders(fills);
+    	return commitCommand();
+    	
+    }
 
     
     
@@ -430,27 +768,45 @@ public class OrderBook {
      * 
      * 1. Matches against the opposite side (askOrders for bid, bidOrders for ask).
      * 2. Market orders must fully match or are rejected.
-     * 3. Persists the updated order book state after matching.
+     * 3. Triggers the stop orders crossed by the new prices (whole cascade).
+     * 4. Journals the events of the order and its cascade as one record.
      * 
-     * Thread-safe: protected by the global fair lock (orderBookLock).
+     * Thread-safe: runs through executeOrder() (orderBookLock or the matching thread).
      * 
      * @param order The market order to be added.
-     * @return Trade results grouped by username.
+     * @return Trade results grouped by username (empty if the order was rejected).
+     * @throws JournalFailedException if the journal failed (the order is rejected).
      */
     public Map<String, List<TradeInfo>> addMarketOrder(MarketOrder order) {
     	
-        orderBookLock.lock();
+    	ExecutionBuffer fills = ExecutionBuffer.forCurrentThread();
+    	long sequence = executeOrder(OrderBook::marketCommand, order, fills);
         
-        try {
-        	
-            Map<String, List<TradeInfo>> tradeMap = matchOrder(order, order.getType().equalsIgnoreCase("bid") ? askOrders : bidOrders, "market");
-            persist();
-            return tradeMap;
-        } finally {
-            orderBookLock.unlock();
-        }
+        journal.awaitDurable(sequence);
+        publishStopTrades(fills, 1);
+        return fills.toTradeMap(0);
         
     }
+    
+    
+    // Body of addMarketOrder(), run through executeOrder()
+    private long marketCommand(MarketOrder order, ExecutionBuffer fills) {
+    	
+    	fills.reset(symbol, System.currentTimeMillis()/1000);
+    	journal.begin();
+    	int group = fills.beginGroup(order, OrderKind.MARKET);
+    	if (offHeap != null) {
+    		offHeap.addMarketOrder(order, fills);
+    	} else {
+    		order.setSize(matcher.match(counterSide(order.getSide()), order.getUsername(), order.getSide(),
+    				OrderKind.MARKET, order.getSize(), 0, fills));
+    	}
+    	if (fills.getFillCount(group) > 0) {
+    		triggerStopOrders(fills);
+    	}
+    	return commitCommand();
+    	
+    }
 
     
     
@@ -459,28 +815,31 @@ public class OrderBook {
      * Adds a new stop order to the order book.
      * 
      * 1. Stores the order in activeOrders.
-     * 2. Adds to the corresponding stop order queue (bid or ask).
-     * 3. Persists the updated order book state if the order was successfully added.
+     * 2. Adds it to the stop trigger index, keyed by its stop price.
+     * 3. Journals the new stop order.
      * 
-     * Thread-safe: protected by the global fair lock (orderBookLock).
+     * Thread-safe: runs through execute() (orderBookLock or the matching thread).
      * 
      * @param order The stop order to be added.
      * @return true if the order was successfully added, false otherwise.
+     * @throws JournalFailedException if the journal failed (the order is rejected).
      */
     public boolean addStopOrder(StopOrder order) {
     	
-        orderBookLock.lock();
+        long sequence = execute(() -> {
+        	journal.begin();
+        	if (offHeap != null) {
+        		offHeap.addStopOrder(order);
+        	} else {
+        		addActiveOrder(order);
+        		stopOrders.add(order);
+        	}
+        	journal.stop(order);
+            return commitCommand();
+        });
         
-        try {
-        	addActiveOrder(order);
-            boolean added = order.getType().equalsIgnoreCase("bid")
-                    ? bidStopOrders.offer(order)
-                    : askStopOrders.offer(order);
-            if (added) persist();
-            return added;
-        } finally {
-            orderBookLock.unlock();
-        }
+        journal.awaitDurable(sequence);
+        return true;
         
     }
   
@@ -489,79 +848,24 @@ public class OrderBook {
     /**
      * Checks and triggers stop orders based on the current market prices.
      * 
-     * 1. Triggers ask stop orders when the best bid price ≤ stop price.
-     * 2. Triggers bid stop orders when the best ask price ≥ stop price.
-     * 3. Converts triggered stop orders into market orders for immediate matching
-     *    (using same id but removing the stopPrice field).
-     * 4. Notifies users after each trigger.
+     * Runs the same cascade as addLimitOrder() / addMarketOrder(), journals it as one record if any
+     * stop order was triggered, and then records and notifies the resulting trades.
      * 
-     * Thread-safe: protected by the global fair lock (orderBookLock).
+     * Thread-safe: runs through execute() (orderBookLock or the matching thread).
      */
-
     public void checkTriggeredStopOrders() {
     	
-    	orderBookLock.lock();
-    	
-        try {
+    	ExecutionBuffer fills = ExecutionBuffer.forCurrentThread();
+    	long sequence = execute(() -> {
         	
-        int bestBid = getBestBidPrice(); 
-        int bestAsk = getBestAskPrice(); 
-        
-        
-        while (!askStopOrders.isEmpty()) {
-            StopOrder stopOrder = askStopOrders.peek();
-            if (bestBid == -1 || bestBid > stopOrder.getStopPrice()) break;
-            int size=stopOrder.getSize();
-            stopOrder.setSize(0); // triggerd orders are considered as 
-            // "finalized" although they may be rejected later
-            askStopOrders.poll();
-            
-            MarketOrder marketOrder = new MarketOrder(
-                stopOrder.getOrderId(),
-                stopOrder.getUsername(),
-                stopOrder.getType(),
-                size,
-                System.currentTimeMillis()/1000
-            );
-
-            Map<String, List<TradeInfo>> tradeMap = addMarketOrder(marketOrder);
-            fixOrderTypeToStop(tradeMap);
-            TradeHistory.addTrades(tradeMap);
-            notifyUsers(tradeMap);
-        }
-        
+    		fills.reset(symbol, System.currentTimeMillis()/1000);
+    		journal.begin();
+            return triggerStopOrders(fills) > 0 ? commitCommand() : 0L;
         
+        });
         
-        
-        while (!bidStopOrders.isEmpty()) {
-        	
-            StopOrder stopOrder = bidStopOrders.peek();
-            if (bestAsk == -1 || bestAsk < stopOrder.getStopPrice()) break;
-            int size=stopOrder.getSize();
-            stopOrder.setSize(0); // triggerd orders are considered as 
-            // "finalized" although they may be rejected later
-            bidStopOrders.poll(); 
-            
-            
-            MarketOrder marketOrder = new MarketOrder(
-            	stopOrder.getOrderId(),
-                stopOrder.getUsername(),
-                stopOrder.getType(),
-                size,
-                System.currentTimeMillis()/1000
-            );
-
-            Map<String, List<TradeInfo>> tradeMap = addMarketOrder(marketOrder);
-            fixOrderTypeToStop(tradeMap);
-            TradeHistory.addTrades(tradeMap);
-            notifyUsers(tradeMap);
-        } 
-        
-        
-        }finally {
-            orderBookLock.unlock();
-        }
-        
+        journal.awaitDurable(sequence);
+        publishStopTrades(fills, 0);
         
     }
     
@@ -570,109 +874,190 @@ public class OrderBook {
     
     
     /**
-     * Updates the order type field in the trade results to "stop".
+     * Triggers stop orders until the market stops moving (must run inside execute()).
+     * 
+     * 1. Drains every stop order crossed by the current best prices from the trigger index:
+     *        1. ask stop orders when the best bid price ≤ stop price
+     *        2. bid stop orders when the best ask price ≥ stop price
+     * 2. Matches each triggered stop order immediately as a market order (OrderKind.STOP:
+     *    must be fully matched, its trades are reported with the "stop" order type).
+     * 3. Re-reads the best prices after the batch, since its trades may have moved the market,
+     *    and drains again until no more stop orders are crossed.
      * 
-     * Used to correctly label trades generated by triggered stop orders
-     * (they were converted into a market order to get matching) when sending UDP notifications.
+     * The cascade is run by the OrderMatcher, over the heap store or the off-heap one.
+     * Nothing is written, recorded or notified here: the TRIGGER and FILL events go into the
+     * command's journal record, which the caller commits once, and the caller publishes the collected trades with publishStopTrades() after unlocking.
      * 
-     * @param tradeMap The trade results grouped by username.
+     * @param fills Receives the fills of each triggered stop order, one group per stop order.
+     * @return The number of triggered stop orders.
      */
-    private void fixOrderTypeToStop(Map<String, List<TradeInfo>> tradeMap) {
+    private int triggerStopOrders(ExecutionBuffer fills) {
     	
-        for (List<TradeInfo> tradeList : tradeMap.values()) {
-            for (TradeInfo trade : tradeList) {
-                trade.setOrderType("stop"); 
-            }
-        }
+    	if (offHeap != null) return offHeap.triggerStopOrders(fills);
+    	return matcher.triggerStopOrders(bids, asks, stops, fills);
         
     }
-
+    
+    
+    
+    
     
     /**
-     * Matches the given order against the opposite side of the order book.
+     * Records in TradeHistory and notifies the trades of triggered stop orders,
+     * in trigger order. Called after execute() has returned.
      * 
-     * 1. Supports both limit and market orders.
-     * 2. Market orders must be fully matched; otherwise, they are rejected.
-     * 3. For limit orders, matches only if prices are compatible.
-     * 4. Generates trade information for both sides and updates order sizes.
-     * 5. Persists the order book state after each partial or full match.
-     * 6. Unmatched limit orders (if any remaining) are added back to the book.
-     * 
-     * @param order The incoming order to be matched.
-     * @param counterBook The opposite side of the order book.
-     * @param orderType "limit" or "market".
-     * @return Trade results grouped by username.
+     * @param fills The buffer of the command.
+     * @param firstStopGroup Index of the first triggered stop order's group.
      */
-    private Map<String, List<TradeInfo>> matchOrder(Order order, PriorityBlockingQueue<LimitOrder> counterBook, String orderType) {
+    private void publishStopTrades(ExecutionBuffer fills, int firstStopGroup) {
     	
-        Map<String, List<TradeInfo>> tradeMap = new HashMap<>();
-        int remaining = order.getSize();
-
-        // Check MarketOrder: must be fully traded
-        if ("market".equalsIgnoreCase(orderType)) {
-            int totalAvailable = 0;
-            for (LimitOrder l : counterBook) {
-                if (!l.getUsername().equals(order.getUsername())) { //Only count the opponent's orders
-                    totalAvailable += l.getSize();
-                    if (totalAvailable >= remaining) break;
-                }
-            }
-            if (totalAvailable < remaining) {
-                return tradeMap;
-            }
-        }
-        
-
-        Iterator<LimitOrder> iterator = counterBook.iterator();
-        
-        while (remaining > 0 && iterator.hasNext()) {
-            LimitOrder topCounter = iterator.next();
-
-            // Skip your own orders 
-            if (order.getUsername().equals(topCounter.getUsername())) {
-                continue;
-            }
-
-            // Check if the price matches for limit orders
-            if ("limit".equalsIgnoreCase(orderType)) {
-                boolean priceMatch =
-                    (order.getType().equalsIgnoreCase("bid") && ((LimitOrder) order).getLimitPrice() >= topCounter.getLimitPrice()) ||
-                    (order.getType().equalsIgnoreCase("ask") && ((LimitOrder) order).getLimitPrice() <= topCounter.getLimitPrice());
-                if (!priceMatch) break;
-            }
-
-            int tradedSize = Math.min(remaining, topCounter.getSize());
-            int tradePrice = topCounter.getLimitPrice();
-            long timestamp = System.currentTimeMillis()/1000;
-
-            // Generate trade information
-            TradeInfo myTrade = new TradeInfo(order.getOrderId(), order.getType(), orderType, tradedSize, tradePrice, timestamp);
-            tradeMap.computeIfAbsent(order.getUsername(), k -> new ArrayList<>()).add(myTrade);
-
-            TradeInfo counterTrade = new TradeInfo(topCounter.getOrderId(), topCounter.getType(), "limit", tradedSize, tradePrice, timestamp);
-            tradeMap.computeIfAbsent(topCounter.getUsername(), k -> new ArrayList<>()).add(counterTrade);
-
-            remaining -= tradedSize;
-            order.reduceSize(tradedSize);
-            topCounter.reduceSize(tradedSize);
-            persist();
-
-            if (topCounter.getSize() == 0) {
-                iterator.remove(); // remove completed counterparty orders
-            }
-        }
+    	for (int group = firstStopGroup; group < fills.getGroupCount(); group++) {
+    		if (fills.getFillCount(group) == 0) continue; // rejected
+    		Map<String, List<TradeInfo>> tradeMap = fills.toTradeMap(group);
+    		TradeHistory.addTrades(tradeMap);
+    		notifyUsers(tradeMap);
+    	}
+    	
+    }
 
-        // If it is a limit order, put it back into the order book if there is any left
-        if ("limit".equalsIgnoreCase(orderType) && remaining > 0) {
-            ((LimitOrder) order).setSize(remaining);
-            PriorityBlockingQueue<LimitOrder> myBook = order.getType().equalsIgnoreCase("bid") ? bidOrders : askOrders;
-            myBook.offer((LimitOrder) order);
-        }
 
-        return tradeMap;
-        
+    
+    // Limit side of the heap store an incoming order of the given side matches against
+    private HeapSide counterSide(Side side) {
+    	return side == Side.BID ? asks : bids;
     }
-
+    
+    
+    
+    
+    /**
+     * A limit side of the heap store, as walked by the OrderMatcher (see OrderMatcher.match()):
+     * its cursor is a resting LimitOrder, and the orders leaving the book are moved to the
+     * cold tier (see evict()).
+     */
+    private final class HeapSide implements OrderMatcher.CounterSide<PriceLevel<LimitOrder>> {
+    	
+    	private final PriceLadder<LimitOrder> ladder;
+    	
+    	private PriceLevel<LimitOrder> level;
+    	private LimitOrder current;
+    	private LimitOrder following;
+    	
+    	HeapSide(PriceLadder<LimitOrder> ladder) {
+    		this.ladder = ladder;
+    	}
+    	
+    	public long getTotalQuantity() {
+    		return ladder.getTotalQuantity();
+    	}
+    	
+    	public long getUserQuantity(String username) {
+    		return ladder.getUserQuantity(username);
+    	}
+    	
+    	public int getBestPrice() {
+    		return ladder.getBestPrice();
+    	}
+    	
+    	public PriceLevel<LimitOrder> bestLevel() {
+    		return ladder.bestLevel();
+    	}
+    	
+    	public PriceLevel<LimitOrder> nextLevel(PriceLevel<LimitOrder> level) {
+    		return ladder.nextLevel(level);
+    	}
+    	
+    	public boolean first(PriceLevel<LimitOrder> level) {
+    		this.level = level;
+    		return moveTo(level.peek());
+    	}
+    	
+    	public boolean next() {
+    		return moveTo(following);
+    	}
+    	
+    	// Reads the next handle first, the current order may be unlinked before moving on
+    	private boolean moveTo(LimitOrder order) {
+    		current = order;
+    		following = order == null ? null : level.next(order);
+    		return order != null;
+    	}
+    	
+    	public int getOrderId() {
+    		return current.getOrderId();
+    	}
+    	
+    	public String getUsername() {
+    		return current.getUsername();
+    	}
+    	
+    	public String getType() {
+    		return current.getType();
+    	}
+    	
+    	public int getSize() {
+    		return current.getSize();
+    	}
+    	
+    	public void fill(int tradedSize) {
+    		ladder.fill(level, current, tradedSize);
+    		if (current.getSize() == 0) {
+    			ladder.removeFromLevel(level, current); // remove completed counterparty orders
+    			evict(current);
+    		}
+    	}
+    	
+    	public void cancel() {
+    		ladder.removeFromLevel(level, current);
+    		evict(current);
+    	}
+    }
+    
+    
+    
+    
+    /**
+     * The stop trigger index of the heap store, as triggered by the OrderMatcher
+     * (see OrderMatcher.triggerStopOrders()).
+     */
+    private final class HeapStops implements OrderMatcher.StopSide {
+    	
+    	public boolean isEmpty() {
+    		return stopOrders.isEmpty();
+    	}
+    	
+    	public int drainTriggered(int bestBid, int bestAsk) {
+    		triggered.clear();
+    		return stopOrders.drainTriggered(bestBid, bestAsk, triggered);
+    	}
+    	
+    	public int getOrderId(int i) {
+    		return triggered.get(i).getOrderId();
+    	}
+    	
+    	public String getUsername(int i) {
+    		return triggered.get(i).getUsername();
+    	}
+    	
+    	public String getType(int i) {
+    		return triggered.get(i).getType();
+    	}
+    	
+    	public Side getSide(int i) {
+    		return triggered.get(i).getSide();
+    	}
+    	
+    	public int getSize(int i) {
+    		return triggered.get(i).getSize();
+    	}
+    	
+    	public void finish(int i) {
+    		StopOrder order = triggered.get(i);
+    		order.setSize(0); // triggered orders are considered as "finalized" although they may have been rejected
+    		evict(order);
+    	}
+    }
+    
     
     
     
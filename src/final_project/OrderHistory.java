@@ -1,110 +1,255 @@
 package final_project;
 
 import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 import java.io.*;
-import java.lang.reflect.Type;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * OrderHistory manages all received orders (LimitOrder, MarketOrder, StopOrder),
  * even those market orders been rejected.
- * 
- * 1. Uses a synchronized LinkedHashMap (orderMap) to maintain insert order and ensure thread-safe basic operations.
- * 2. addOrder() is synchronized at the method level to guarantee atomicity between "put" and "persist".
- * 3. Each new order is immediately saved to "order_history.json" after being received.
- * 4. Supports loading the order history from the JSON file at startup.
- * 
+ *
+ * 1. Each new order is appended as one record to an append-only log (a Journal of
+ *    memory-mapped segments): [int orderId][order as UTF-8 JSON]. An insert is one copy into
+ *    the log, whatever the number of orders already received.
+ * 2. The log is split into "order_history_shards" shards (order ID modulo the shard count),
+ *    each with its own lock held only for the copy, so concurrent inserts rarely wait for each other.
+ * 3. An OrderOffsetIndex maps each order ID to the address of its record (shard, segment, offset);
+ *    getOrder() reads the record back through it. The last "order_history_cache_size" orders
+ *    are cached (direct-mapped by order ID), so recent orders are not read from disk.
+ * 4. On startup the index is rebuilt by scanning the logs (only the order ID of each record
+ *    is read), and the IDs are added to the Bloom filter of OrderIdGenerator; the JSON file of older versions ("order_history") is appended to the log once,
+ *    then renamed to "order_history.json.migrated".
+ *
  * Thread Safety:
- * 1. Writing (addOrder + persist) is fully synchronized.
- * 2. Reading (getOrder) is thread-safe due to Collections.synchronizedMap.
- * 
+ * 1. addOrder() only locks the shard of the order while appending.
+ * 2. getOrder() takes no lock (the index and the cache are lock-free). Until isLoaded(),
+ *    it only finds the orders received since the startup.
+ *
  * Note: MarketOrders are recorded here but not added to the activeOrders map in Orderbook.
  */
 
 public class OrderHistory {
-	
-	
+
+
     private static final String FILE_PATH = ServerConfig.getOrderHistoryFile();
-    private static final Map<Integer, Order> orderMap = Collections.synchronizedMap(new LinkedHashMap<>());
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-
-    
-    
-    // Add an order and persist immediately
-    public static synchronized void addOrder(Order order) {
-    	
-            orderMap.put(order.getOrderId(), order);
-            persist();
+    private static final Gson gson = new Gson();
+
+    private static final int SHARD_BITS = 56;
+
+    private static final Shard[] shards = openShards();
+    private static final int shardCount = Math.min(shards.length, ServerConfig.getOrderHistoryShards());
+    private static final OrderOffsetIndex index = new OrderOffsetIndex();
+    private static final AtomicReferenceArray<Order> recent = new AtomicReferenceArray<>(
+            Integer.highestOneBit(Math.max(1, ServerConfig.getOrderHistoryCacheSize() - 1)) << 1);
+
+    // Set once load() has indexed every log: until then, getOrder() only finds this run's orders
+    private static volatile boolean loaded;
+
+
+    // One log and the lock serializing its appends
+    private static final class Shard {
+        final Journal log;
+        final ReentrantLock lock = new ReentrantLock();
+
+        Shard(Journal log) {
+            this.log = log;
+        }
     }
-    
-    
-    
-    
-    public static Order getOrder(int orderId) {
-    	
-            return orderMap.get(orderId);
+
+
+    // Configured shards, plus any shard log left by a run with more shards (still indexed on load)
+    private static Shard[] openShards() {
+
+        int configured = Math.max(1, Math.min(127, ServerConfig.getOrderHistoryShards()));
+        List<Shard> opened = new ArrayList<>();
+        for (int i = 0; i < configured || Journal.listSegments(ServerConfig.getOrderHistoryLog(i)).length > 0; i++) {
+            String path = ServerConfig.getOrderHistoryLog(i);
+            try {
+                opened.add(new Shard(new Journal(path, ServerConfig.getOrderHistorySegmentSize())));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open order history log " + path, e);
+            }
+        }
+        return opened.toArray(new Shard[0]);
+
     }
-    
-    
-    
-
-    private static void persist() {
-    	
-        try (Writer writer = new FileWriter(FILE_PATH)) {
-        	
-                gson.toJson(orderMap, writer);
-                
+
+
+
+    // Append an order to the log of its shard
+    public static void addOrder(Order order) {
+
+        byte[] json = gson.toJson(order).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + json.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(order.getOrderId()).put(json).flip();
+
+        int shard = Math.floorMod(order.getOrderId(), shardCount);
+        Shard target = shards[shard];
+        long address;
+        target.lock.lock();
+        try {
+            address = target.log.append(record);
         } catch (IOException e) {
             System.err.println("[Main] Failed to save order history: " + e.getMessage());
+            return;
+        } finally {
+            target.lock.unlock();
+        }
+
+        if (order.getOrderId() > 0) {
+            index.put(order.getOrderId(), (long) shard << SHARD_BITS | address);
+        }
+        recent.set(order.getOrderId() & (recent.length() - 1), order);
+
+    }
+
+
+
+
+    // true once every order of the logs is indexed (false if the startup failed to read them)
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+
+
+
+    public static Order getOrder(int orderId) {
+
+        Order cached = recent.get(orderId & (recent.length() - 1));
+        if (cached != null && cached.getOrderId() == orderId) return cached;
+
+        long value = index.get(orderId);
+        if (value < 0) return null;
+
+        Shard shard = shards[(int) (value >>> SHARD_BITS)];
+        try {
+            ByteBuffer record = Journal.read(shard.log.getPath(), value & ((1L << SHARD_BITS) - 1));
+            record.getInt(); // order ID
+            Order order = decode(new String(record.array(), record.position(), record.remaining(), StandardCharsets.UTF_8));
+            if (order != null) {
+                recent.set(orderId & (recent.length() - 1), order);
+            }
+            return order;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[Main] Failed to read order history: " + e.getMessage());
+            return null;
         }
-        
+
+    }
+
+
+
+
+    // Order of the right class for its "orderType", or null if unknown
+    private static Order decode(String json) {
+
+        JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
+        return decode(obj);
+
     }
-    
+
+    private static Order decode(JsonObject obj) {
+
+        String classType = obj.get("orderType").getAsString();
+        switch (classType) {
+            case "limit":
+                return gson.fromJson(obj, LimitOrder.class);
+            case "market":
+                return gson.fromJson(obj, MarketOrder.class);
+            case "stop":
+                return gson.fromJson(obj, StopOrder.class);
+            default:
+                System.err.println("[Main]️ Unrecognized order type: " + classType);
+                return null;
+        }
+
+    }
+
+
+
+
+    /**
+     * Rebuilds the index from the logs, after moving the orders of an older JSON file, if any, into the log.
+     *
+     * A crash during the move only appends some orders twice: the index keeps one address per order ID.
+     */
     public static void load() {
-    	
+
         File file = new File(FILE_PATH);
-        if (!file.exists()) return;
-
-        try (Reader reader = new FileReader(FILE_PATH)) {
-        	
-            Type type = new TypeToken<LinkedHashMap<Integer, JsonObject>>() {}.getType();
-            Map<Integer, JsonObject> rawMap = gson.fromJson(reader, type);
-
-            for (Map.Entry<Integer, JsonObject> entry : rawMap.entrySet()) {
-            	
-                JsonObject obj = entry.getValue();
-                String classType = obj.get("orderType").getAsString();
-
-                Order order = null;
-                switch (classType) {
-                    case "limit":
-                        order = gson.fromJson(obj, LimitOrder.class);
-                        break;
-                    case "market":
-                        order = gson.fromJson(obj, MarketOrder.class);
-                        break;
-                    case "stop":
-                        order = gson.fromJson(obj, StopOrder.class);
-                        break;
-                    default:
-                        System.err.println("[Main]️ Unrecognized order type: " + classType);
-                        
+        if (file.exists()) {
+            migrate(file);
+        }
+
+        int indexed = 0;
+        for (int shard = 0; shard < shards.length; shard++) {
+            long shardBits = (long) shard << SHARD_BITS;
+            JournalReader reader = new JournalReader(shards[shard].log.getPath());
+            int[] count = new int[1];
+            try {
+                while (reader.poll(record -> {
+                    int orderId = record.getInt(0);
+                    if (orderId > 0) {
+                        // Inside the call, the reader is still positioned on this record
+                        index.put(orderId, shardBits | Journal.address(reader.getSegment(), reader.getPosition()));
+                        OrderIdGenerator.recordIssued(orderId);
+                        count[0]++;
+                    }
+                }, Integer.MAX_VALUE) > 0) {
+                    // until the end of the log
                 }
+            } catch (IOException e) {
+                System.err.println("[Main] Failed to load order history: " + e.getMessage());
+                return; // the filter stays unused: an unread ID must not be reported as unknown
+            }
+            indexed += count[0];
+        }
+        OrderIdGenerator.issuedLoaded();
+        loaded = true;
+        System.out.println("[Main] Order history: " + indexed + " orders indexed");
+
+    }
+
+
+
 
+    private static void migrate(File file) {
+
+        // Streamed: each order is appended as soon as it is read
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(file)))) {
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName(); // order ID, also inside the order
+                Order order = decode(JsonParser.parseReader(reader).getAsJsonObject());
                 if (order != null) {
-                    orderMap.put(entry.getKey(), order);
+                    addOrder(order);
                 }
             }
-            
-        } catch (IOException e) {
+            reader.endObject();
+
+        } catch (IOException | RuntimeException e) {
             System.err.println("[Main] Failed to load order history: " + e.getMessage());
+            return;
         }
-        
+
+        try {
+            Files.move(file.toPath(), Paths.get(FILE_PATH + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to rename order history file: " + e.getMessage());
+        }
+
     }
 
 }
-
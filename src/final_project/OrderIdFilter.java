@@ -0,0 +1,84 @@
+package final_project;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+
+/**
+ * OrderIdFilter is a Bloom filter over order IDs: it answers "surely not added" or
+ * "probably added" without looking anything up.
+ *
+ * 1. The bits are a primitive long array sized for "order_id_filter_capacity" IDs at
+ *    "order_id_filter_bits_per_id" bits each (rounded up to a power of two).
+ * 2. Each ID sets k = bits per ID x ln 2 bits, found by double hashing of one 64-bit mix
+ *    of the ID, so an add or a lookup is k memory reads, with no allocation.
+ * 3. There are no false negatives; the false positive rate (about 1% at 10 bits per ID)
+ *    grows once more IDs than the capacity have been added, but answers stay correct.
+ *
+ * Thread-safe without locks: bits are set with an atomic OR and read with acquire semantics.
+ */
+
+public class OrderIdFilter {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+    private final long mask;
+    private final int hashes;
+
+
+    /**
+     * @param capacity  Number of IDs the filter is sized for.
+     * @param bitsPerId Bits per ID at that capacity.
+     */
+    public OrderIdFilter(int capacity, int bitsPerId) {
+
+        long bits = Math.max(64L, (long) Math.max(1, capacity) * Math.max(1, bitsPerId));
+        bits = Math.min(Long.highestOneBit(bits - 1) << 1, 1L << 36); // power of two, at most 8 GB
+        this.words = new long[(int) (bits >>> 6)];
+        this.mask = bits - 1;
+        this.hashes = Math.max(1, (int) Math.round(Math.max(1, bitsPerId) * Math.log(2)));
+
+    }
+
+
+    public void add(int orderId) {
+
+        long hash = mix(orderId);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            WORDS.getAndBitwiseOr(words, (int) (bit >>> 6), 1L << bit);
+        }
+
+    }
+
+
+    // false if the ID was surely never added
+    public boolean mightContain(int orderId) {
+
+        long hash = mix(orderId);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if (((long) WORDS.getAcquire(words, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+
+    }
+
+
+    // 64-bit finalizer of SplitMix64: consecutive IDs get unrelated bits
+    private static long mix(int orderId) {
+
+        long z = orderId * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+
+    }
+}
@@ -1,55 +1,185 @@
 package final_project;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
  * OrderIdGenerator generates **unique** order IDs in a thread-safe way.
- * 
- * 1. Uses AtomicInteger to ensure atomic increment operations.
- * 2. The getNextOrderId() method is synchronized to guarantee atomicity between ID generation and persist.
- * 3. Each generated ID is immediately saved to "order_id_counter.txt" for recovery on server restart.
- * 4. Loads the last saved ID value at startup to continue from the previous state.
- * 
- * 
+ *
+ * 1. IDs are leased in blocks of "order_id_block_size": leasing a block moves a high-water mark
+ *    and saves it to "order_id_counter.txt" (fsynced, then renamed over the previous file),
+ *    so the file is written once per block instead of once per ID.
+ * 2. IDs are then served from the block without any lock or file access.
+ * 3. The saved value is the first ID that was never leased: after a crash, the generator
+ *    restarts past every ID of the blocks in use, so no ID is ever handed out twice
+ *    (the unused rest of those blocks is skipped). If the new mark cannot be saved, the lease
+ *    is undone and getNextOrderId() fails: no ID of an unsaved block is handed out.
+ * 4. "order_id_allocation" selects who shares a block:
+ *
+ *        1. "shared" (default): one block for all threads, served by an atomic increment;
+ *           only the thread that exhausts it takes the lease lock.
+ *        2. "thread": one block per connection thread, served by a plain increment, so
+ *           allocation never contends. IDs are then unique but not in arrival order across
+ *           threads, and the blocks of finished threads are left unused.
+ *
+ * 5. Loads the saved high-water mark at startup to continue from the previous state.
+ * 6. Every ID handed out is added to a Bloom filter (OrderIdFilter), which also receives the IDs
+ *    of the order history when it is loaded (see OrderHistory.load()). Once that is done,
+ *    mightBeIssued() tells without any lookup that an ID was never issued; until then it
+ *    answers "maybe" for every positive ID.
  */
 
 public class OrderIdGenerator {
-	
+
     private static final String FILE_PATH = ServerConfig.getOrderIdCounterFile();
-    private static final AtomicInteger counter = new AtomicInteger(1);
+    private static final int BLOCK_SIZE = Math.max(1, ServerConfig.getOrderIdBlockSize());
+    private static final boolean PER_THREAD = "thread".equalsIgnoreCase(ServerConfig.getOrderIdAllocation());
+
+    // First ID not leased yet (guarded by the class lock)
+    private static int leased = 1;
+
+    // Block of "shared" allocation; replaced when exhausted
+    private static volatile SharedBlock shared = new SharedBlock(1, 1);
+
+    // Block of the calling thread in "thread" allocation
+    private static final ThreadLocal<int[]> threadBlock = ThreadLocal.withInitial(() -> new int[] {1, 1});
 
+    // IDs handed out by this run and recorded in the order history
+    private static final OrderIdFilter issued = new OrderIdFilter(
+            ServerConfig.getOrderIdFilterCapacity(), ServerConfig.getOrderIdFilterBitsPerId());
+    // Set once the IDs of the order history are in the filter
+    private static volatile boolean issuedLoaded;
 
-    public static synchronized int getNextOrderId() {
-    	
-        int id = counter.getAndIncrement();
-        persist();
+
+    // IDs [next, end) of a leased block, served by an atomic increment
+    private static final class SharedBlock {
+        final AtomicInteger next;
+        final int end;
+
+        SharedBlock(int start, int end) {
+            this.next = new AtomicInteger(start);
+            this.end = end;
+        }
+    }
+
+
+    /**
+     * Hands out the next order ID.
+     *
+     * @throws UncheckedIOException if a new block was needed and its high-water mark could not
+     *         be saved (a later call tries again).
+     */
+    public static int getNextOrderId() {
+
+        int id = nextId();
+        issued.add(id);
         return id;
+
+    }
+
+
+    private static int nextId() {
+
+        if (PER_THREAD) {
+            int[] block = threadBlock.get(); // {next, end}
+            if (block[0] >= block[1]) {
+                block[0] = lease();
+                block[1] = block[0] + BLOCK_SIZE;
+            }
+            return block[0]++;
+        }
+
+        while (true) {
+            SharedBlock block = shared;
+            int id = block.next.getAndIncrement();
+            if (id < block.end) return id;
+            renew(block);
+        }
+
+    }
+
+
+
+    /**
+     * Tells whether an order ID may have been issued.
+     *
+     * @return false if the ID was surely never issued (no false negatives once the order history
+     *         is loaded); true if it probably was, or if the history is still loading.
+     */
+    public static boolean mightBeIssued(int orderId) {
+
+        if (orderId <= 0) return false;
+        return !issuedLoaded || issued.mightContain(orderId);
+
+    }
+
+
+    // Adds the ID of an order read from the order history
+    public static void recordIssued(int orderId) {
+        issued.add(orderId);
+    }
+
+
+    // Called once every order of the order history has been passed to recordIssued()
+    public static void issuedLoaded() {
+        issuedLoaded = true;
+    }
+
+
+    // Replaces an exhausted shared block (once, whichever thread gets here first)
+    private static synchronized void renew(SharedBlock exhausted) {
+
+        if (shared == exhausted) {
+            int start = lease();
+            shared = new SharedBlock(start, start + BLOCK_SIZE);
+        }
+
     }
-    
-    public static void load() {
-    	
+
+
+    // Leases the next block: saves its end before any of its IDs is handed out
+    private static synchronized int lease() {
+
+        int start = leased;
+        try {
+            persist(start + BLOCK_SIZE);
+        } catch (IOException e) {
+            System.err.println("⚠️ Failed to save order ID counter: " + e.getMessage());
+            throw new UncheckedIOException("Order ID block not leased", e);
+        }
+        leased = start + BLOCK_SIZE;
+        return start;
+
+    }
+
+    public static synchronized void load() {
+
         File file = new File(FILE_PATH);
         if (!file.exists()) return;
 
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String line = reader.readLine();
             if (line != null) {
-                int savedValue = Integer.parseInt(line.trim());
-                counter.set(savedValue);
+                leased = Integer.parseInt(line.trim());
             }
         } catch (IOException | NumberFormatException e) {
             System.err.println("⚠️ Failed to load order ID counter: " + e.getMessage());
         }
     }
 
-    private static void persist() {
-    	
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
-            writer.write(String.valueOf(counter.get()));
-        } catch (IOException e) {
-            System.err.println("⚠️ Failed to save order ID counter: " + e.getMessage());
+    // Saves the high-water mark; the previous file stays in place if this fails
+    private static void persist(int highWaterMark) throws IOException {
+
+        String tmpPath = FILE_PATH + ".tmp";
+        try (FileOutputStream out = new FileOutputStream(tmpPath)) {
+            out.write(String.valueOf(highWaterMark).getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
         }
+        Files.move(Paths.get(tmpPath), Paths.get(FILE_PATH), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 }
@@ -0,0 +1,34 @@
+package final_project;
+
+
+/**
+ * Kind of an order as seen by the matcher, used instead of comparing the "orderType" strings.
+ *
+ * 1. LIMIT: matches up to its limit price, the rest is added to the book.
+ * 2. MARKET: must be fully matched or is rejected.
+ * 3. STOP: a triggered stop order, matched like a MARKET order but reported as "stop".
+ */
+
+public enum OrderKind {
+
+    LIMIT("limit"),
+    MARKET("market"),
+    STOP("stop");
+
+
+    // Value of the "orderType" field in trades and notifications
+    private final String wireName;
+
+    OrderKind(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String getWireName() {
+        return wireName;
+    }
+
+    // true for the kinds that must be fully matched or are rejected
+    public boolean isFillOrKill() {
+        return this != LIMIT;
+    }
+}
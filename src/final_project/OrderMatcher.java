@@ -0,0 +1,303 @@
+package final_project;
+
+
+/**
+ * OrderMatcher matches the incoming orders of one OrderBook and runs its stop trigger cascade,
+ * for both order stores ("order_store" in the config): the rules are only written here.
+ *
+ * 1. Matching rules (see match()):
+ *        1. The counter side is walked level by level from the best price, and inside each
+ *           level in FIFO order, so fills follow strict price-time priority.
+ *        2. Market and triggered stop orders must be fully matched or are rejected; the check
+ *           is O(1), using the aggregated depth kept by the counter side.
+ *        3. Limit orders only match compatible prices.
+ *        4. Self-trade prevention ("self_trade_policy"): levels holding none of the user's
+ *           quantity are matched without any username check, and with SKIP, levels holding
+ *           only the user's quantity are jumped over.
+ *        5. Each fill is recorded in the command's ExecutionBuffer and journaled (FILL), as are
+ *           self-trade cancels (CANCEL) and triggered stop orders (TRIGGER).
+ * 2. The stores are reached through the interfaces below, which read their orders in place
+ *    (no Order object is built for a slab slot, nothing is allocated per order):
+ *        1. Level: a price level and its aggregated depth.
+ *        2. CounterSide: one limit side, its levels, and a cursor over the orders of a level.
+ *        3. StopSide: the stop orders of the book, drained when crossed by the best prices.
+ *    The heap store implements them over PriceLadder (see OrderBook), the off-heap store over
+ *    SlabPriceLadder (see OffHeapOrderBook). The store moves the orders leaving the book
+ *    (filled, cancelled, triggered) to its cold tier.
+ *
+ * Not thread-safe: always accessed through OrderBook.execute().
+ */
+
+public class OrderMatcher {
+
+    // A price level of a counter side
+    public interface Level {
+
+        int getPrice();
+
+        // Sum of the remaining sizes of the orders of the level
+        long getTotalQuantity();
+
+        // Quantity the given user has resting in the level
+        long getUserQuantity(String username);
+    }
+
+
+    /**
+     * One limit side of a book, as walked by match().
+     *
+     * The orders of a level are read through a cursor: first() puts it on the head of a level,
+     * next() on the order that followed the current one when the cursor reached it, so the
+     * current order may leave the level (fill(), cancel()) before moving on.
+     *
+     * @param <L> The level type of the store.
+     */
+    public interface CounterSide<L extends Level> {
+
+        // Total resting quantity of the side, and the part of the given user
+        long getTotalQuantity();
+
+        long getUserQuantity(String username);
+
+        // Best price, or -1 if the side is empty
+        int getBestPrice();
+
+        // Best non-empty level, or null; next non-empty level in priority order, or null
+        L bestLevel();
+
+        L nextLevel(L level);
+
+        // Puts the cursor on the first order of the level; false if it has none
+        boolean first(L level);
+
+        // Moves the cursor to the next order of its level; false at the end of the level
+        boolean next();
+
+        // The order under the cursor
+        int getOrderId();
+
+        String getUsername();
+
+        String getType();
+
+        int getSize();
+
+        // Trades with the order under the cursor; removes it once its size reaches 0
+        void fill(int tradedSize);
+
+        // Removes the order under the cursor (self-trade prevention)
+        void cancel();
+    }
+
+
+    /**
+     * The stop orders of a book, as triggered by triggerStopOrders().
+     */
+    public interface StopSide {
+
+        boolean isEmpty();
+
+        /**
+         * Takes out of the book every stop order crossed by the given prices, in trigger
+         * order (see StopTriggerIndex.drainTriggered()); they are read with the getters below
+         * until the next call.
+         *
+         * @return the number of triggered stop orders.
+         */
+        int drainTriggered(int bestBid, int bestAsk);
+
+        // The i-th triggered stop order
+        int getOrderId(int i);
+
+        String getUsername(int i);
+
+        String getType(int i);
+
+        Side getSide(int i);
+
+        int getSize(int i);
+
+        // Marks the i-th triggered stop order finalized (even if it is rejected) in the cold tier
+        void finish(int i);
+    }
+
+
+    private final SelfTradePolicy selfTradePolicy;
+    private final BookJournal journal;
+
+    // Set by match() when CANCEL_INCOMING stopped the incoming order
+    private boolean incomingCancelled;
+
+
+    /**
+     * @param selfTradePolicy What the matcher does when an order meets the same user's resting orders.
+     * @param journal         Receives the events of the commands (FILL, CANCEL, TRIGGER).
+     */
+    public OrderMatcher(SelfTradePolicy selfTradePolicy, BookJournal journal) {
+
+        this.selfTradePolicy = selfTradePolicy;
+        this.journal = journal;
+
+    }
+
+
+
+    /**
+     * Matches an incoming order against the opposite limit side. The order is passed by value,
+     * so stored and unstored (market, triggered stop) orders of both stores are matched the
+     * same way; the caller rests what is left of a limit order, unless isIncomingCancelled().
+     *
+     * @param counterBook The opposite side of the book.
+     * @param username    The owner of the incoming order.
+     * @param side        The side of the incoming order.
+     * @param kind        How the order is matched and reported.
+     * @param size        The size of the incoming order.
+     * @param limitPrice  The limit price (LIMIT only).
+     * @param fills       Receives the fills, in the group started by the caller for this order.
+     * @return the remaining (unfilled) size of the order.
+     */
+    public <L extends Level> int match(CounterSide<L> counterBook, String username, Side side, OrderKind kind,
+                                       int size, int limitPrice, ExecutionBuffer fills) {
+
+        boolean bid = side == Side.BID;
+        int remaining = size;
+        incomingCancelled = false;
+
+        // Market and stop orders must be fully traded against other users' liquidity
+        // (the whole counter side minus the user's own resting quantity)
+        if (kind.isFillOrKill()) {
+            long ownQuantity = counterBook.getUserQuantity(username);
+            if (counterBook.getTotalQuantity() - ownQuantity < remaining) {
+                return remaining;
+            }
+            if (selfTradePolicy == SelfTradePolicy.CANCEL_INCOMING && ownQuantity > 0
+                    && !fillsBeforeOwnLiquidity(username, remaining, counterBook)) {
+                return remaining;
+            }
+        }
+
+        L level = counterBook.bestLevel();
+        while (remaining > 0 && level != null && !incomingCancelled) {
+
+            // Levels are sorted, so stop at the first price a limit order does not match
+            int price = level.getPrice();
+            if (kind == OrderKind.LIMIT && (bid ? limitPrice < price : limitPrice > price)) {
+                break;
+            }
+
+            // Own quantity in this level: none means no username checks at all,
+            // all of it (with SKIP) means the whole level can be jumped over
+            long ownQuantity = level.getUserQuantity(username);
+            if (ownQuantity > 0 && ownQuantity == level.getTotalQuantity() && selfTradePolicy == SelfTradePolicy.SKIP) {
+                level = counterBook.nextLevel(level);
+                continue;
+            }
+
+            for (boolean more = counterBook.first(level); more && remaining > 0; more = counterBook.next()) {
+
+                // Self-trade prevention on your own orders
+                if (ownQuantity > 0 && username.equals(counterBook.getUsername())) {
+                    if (selfTradePolicy == SelfTradePolicy.CANCEL_INCOMING) {
+                        incomingCancelled = true;
+                        break;
+                    }
+                    if (selfTradePolicy == SelfTradePolicy.CANCEL_RESTING) {
+                        ownQuantity -= counterBook.getSize();
+                        journal.cancel(counterBook.getOrderId());
+                        counterBook.cancel();
+                    }
+                    continue;
+                }
+
+                int tradedSize = Math.min(remaining, counterBook.getSize());
+
+                // Record the fill, trade information is built from it after the command
+                fills.addFill(counterBook.getOrderId(), counterBook.getUsername(), counterBook.getType(), tradedSize, price);
+                journal.fill(counterBook.getOrderId(), tradedSize);
+
+                remaining -= tradedSize;
+                counterBook.fill(tradedSize);
+            }
+
+            // Move to the next price level (a fully consumed level is dropped by the ladder)
+            level = counterBook.nextLevel(level);
+        }
+
+        return remaining;
+
+    }
+
+
+
+    // true if the last match() stopped because CANCEL_INCOMING met the user's own order
+    public boolean isIncomingCancelled() {
+        return incomingCancelled;
+    }
+
+
+
+    /**
+     * Checks whether a market order of the given user can be fully filled before reaching
+     * any of the user's own resting orders (used by the CANCEL_INCOMING policy).
+     *
+     * Levels without the user's quantity are counted in O(1) from their totals;
+     * only levels holding the user's orders are walked.
+     */
+    private <L extends Level> boolean fillsBeforeOwnLiquidity(String username, long size, CounterSide<L> counterBook) {
+
+        for (L level = counterBook.bestLevel(); level != null; level = counterBook.nextLevel(level)) {
+            if (level.getUserQuantity(username) == 0) {
+                size -= level.getTotalQuantity();
+                if (size <= 0) return true;
+                continue;
+            }
+            for (boolean more = counterBook.first(level); more; more = counterBook.next()) {
+                if (username.equals(counterBook.getUsername())) return false;
+                size -= counterBook.getSize();
+                if (size <= 0) return true;
+            }
+        }
+        return false;
+
+    }
+
+
+
+    /**
+     * Triggers stop orders until the market stops moving.
+     *
+     * 1. Drains every stop order crossed by the current best prices:
+     *        1. ask stop orders when the best bid price <= stop price
+     *        2. bid stop orders when the best ask price >= stop price
+     * 2. Matches each triggered stop order at once as a fill-or-kill order (OrderKind.STOP:
+     *    its trades are reported with the "stop" order type), in its own fills group.
+     * 3. Re-reads the best prices after the batch, since its trades may have moved the market,
+     *    and drains again until no more stop orders are crossed.
+     *
+     * @return The number of triggered stop orders.
+     */
+    public <L extends Level> int triggerStopOrders(CounterSide<L> bids, CounterSide<L> asks, StopSide stops, ExecutionBuffer fills) {
+
+        if (stops.isEmpty()) return 0;
+
+        int total = 0;
+        for (int count = stops.drainTriggered(bids.getBestPrice(), asks.getBestPrice());
+             count > 0;
+             count = stops.drainTriggered(bids.getBestPrice(), asks.getBestPrice())) {
+
+            for (int i = 0; i < count; i++) {
+                int orderId = stops.getOrderId(i);
+                String username = stops.getUsername(i);
+                Side side = stops.getSide(i);
+                int size = stops.getSize(i);
+                journal.trigger(orderId);
+                fills.beginGroup(orderId, username, stops.getType(i), OrderKind.STOP);
+                stops.finish(i);
+                match(side == Side.BID ? asks : bids, username, side, OrderKind.STOP, size, 0, fills);
+            }
+            total += count;
+        }
+        return total;
+
+    }
+}
@@ -0,0 +1,55 @@
+package final_project;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * OrderOffsetIndex maps order IDs to a long (the log address of the order in OrderHistory).
+ *
+ * 1. Order IDs are handed out in increasing order, so they are dense: the index is a table
+ *    of chunks of 65536 consecutive IDs, each a primitive long array allocated on first use.
+ *    This costs 8 bytes per order, with no boxed key and no map entry.
+ * 2. Order IDs are positive; a stored 0 marks a missing entry (values are kept shifted by one).
+ *
+ * Thread-safe without locks: chunks are installed with a CAS and entries are written and
+ * read with volatile semantics.
+ */
+
+public class OrderOffsetIndex {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final AtomicReferenceArray<AtomicLongArray> chunks =
+            new AtomicReferenceArray<>((Integer.MAX_VALUE >>> CHUNK_BITS) + 1);
+
+
+    // Stores the value of an order ID (replaces any previous one)
+    public void put(int orderId, long value) {
+
+        if (orderId <= 0) {
+            throw new IllegalArgumentException("Invalid order ID: " + orderId);
+        }
+        int index = orderId >>> CHUNK_BITS;
+        AtomicLongArray chunk = chunks.get(index);
+        if (chunk == null) {
+            chunks.compareAndSet(index, null, new AtomicLongArray(CHUNK_SIZE));
+            chunk = chunks.get(index);
+        }
+        chunk.set(orderId & CHUNK_MASK, value + 1);
+
+    }
+
+
+    // Value of an order ID, or -1 if it is not indexed
+    public long get(int orderId) {
+
+        if (orderId <= 0) return -1;
+        AtomicLongArray chunk = chunks.get(orderId >>> CHUNK_BITS);
+        if (chunk == null) return -1;
+        return chunk.get(orderId & CHUNK_MASK) - 1;
+
+    }
+}
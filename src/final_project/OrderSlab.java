@@ -0,0 +1,217 @@
+package final_project;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * OrderSlab stores limit and stop orders off-heap, one fixed-width record per slot index.
+ *
+ * 1. Records are kept as a struct-of-arrays in direct ByteBuffers: each column (order ID,
+ *    user, size, price, links, timestamp, flags) is a contiguous array of the chunk,
+ *    so the garbage collector never sees the orders.
+ * 2. Slots are allocated in chunks of "chunkSize" records; a new chunk is added when the
+ *    current ones are full, nothing is ever copied.
+ * 3. free() returns the slot of an order that left the book to a free list (linked through
+ *    the "next" column), and allocate() reuses the most recently freed slot first, so the
+ *    slab only grows with the number of orders resting at the same time.
+ * 4. "prev" / "next" link the slots of a price level (see SlabPriceLadder), -1 meaning none,
+ *    so price levels are chains of slot indices instead of object references.
+ * 5. Users are stored as int IDs of a UserDirectory; the price is the limit price of a
+ *    limit order and the stop price of a stop order.
+ *
+ * Not thread-safe: always accessed under the order book lock (or on the matching thread).
+ */
+
+public class OrderSlab {
+
+    public static final int NONE = -1;
+
+    // Bits of the flags column
+    private static final byte ASK = 1;       // side: ask if set, bid otherwise
+    private static final byte STOP = 2;      // stop order if set, limit order otherwise
+    private static final byte RESTING = 4;   // linked into a price level
+
+    // Column offsets inside a chunk, in records (int columns first, then timestamp, then flags)
+    private static final int ORDER_ID = 0;
+    private static final int USER = 1;
+    private static final int SIZE = 2;
+    private static final int PRICE = 3;
+    private static final int PREV = 4;
+    private static final int NEXT = 5;
+    private static final int INT_COLUMNS = 6;
+
+    private final int chunkBits;
+    private final int chunkMask;
+    private final int timestampOffset;
+    private final int flagsOffset;
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private int slotCount;
+
+    // Head of the free list (NONE if empty) and number of slots in it
+    private int freeHead = NONE;
+    private int freeCount;
+
+
+    /**
+     * @param chunkSize Records per chunk, rounded up to a power of two.
+     */
+    public OrderSlab(int chunkSize) {
+
+        int size = Integer.highestOneBit(Math.max(2, chunkSize - 1)) << 1;
+        this.chunkBits = Integer.numberOfTrailingZeros(size);
+        this.chunkMask = size - 1;
+        this.timestampOffset = INT_COLUMNS * 4 * size;
+        this.flagsOffset = timestampOffset + 8 * size;
+
+    }
+
+
+
+    // Writes a record into a free slot (or a new one) and returns its slot index
+    public int allocate(int orderId, int user, Side side, boolean stop, int size, int price, long timestamp) {
+
+        int slot;
+        if (freeHead != NONE) {
+            slot = freeHead;
+            freeHead = getInt(slot, NEXT);
+            freeCount--;
+        } else {
+            slot = slotCount;
+            if ((slot >>> chunkBits) == chunkCount) {
+                addChunk();
+            }
+            slotCount++;
+        }
+
+        setInt(slot, ORDER_ID, orderId);
+        setInt(slot, USER, user);
+        setInt(slot, SIZE, size);
+        setInt(slot, PRICE, price);
+        setInt(slot, PREV, NONE);
+        setInt(slot, NEXT, NONE);
+        chunk(slot).putLong(timestampOffset + ((slot & chunkMask) << 3), timestamp);
+        byte flags = (byte) ((side == Side.ASK ? ASK : 0) | (stop ? STOP : 0));
+        chunk(slot).put(flagsOffset + (slot & chunkMask), flags);
+        return slot;
+
+    }
+
+
+    // Returns the slot of an order that left the book (unlinked from its level) to the free list
+    public void free(int slot) {
+
+        setInt(slot, ORDER_ID, 0);
+        setInt(slot, PREV, NONE);
+        setInt(slot, NEXT, freeHead);
+        chunk(slot).put(flagsOffset + (slot & chunkMask), (byte) 0);
+        freeHead = slot;
+        freeCount++;
+
+    }
+
+
+    private void addChunk() {
+
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        int records = chunkMask + 1;
+        chunks[chunkCount++] = ByteBuffer.allocateDirect(flagsOffset + records).order(ByteOrder.nativeOrder());
+
+    }
+
+
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> chunkBits];
+    }
+
+    private int getInt(int slot, int column) {
+        return chunk(slot).getInt(((column << chunkBits) + (slot & chunkMask)) << 2);
+    }
+
+    private void setInt(int slot, int column, int value) {
+        chunk(slot).putInt(((column << chunkBits) + (slot & chunkMask)) << 2, value);
+    }
+
+    private byte flags(int slot) {
+        return chunk(slot).get(flagsOffset + (slot & chunkMask));
+    }
+
+    private void setFlag(int slot, byte flag, boolean on) {
+        byte flags = flags(slot);
+        chunk(slot).put(flagsOffset + (slot & chunkMask), (byte) (on ? flags | flag : flags & ~flag));
+    }
+
+
+
+    public int getOrderId(int slot) {
+        return getInt(slot, ORDER_ID);
+    }
+
+    public int getUser(int slot) {
+        return getInt(slot, USER);
+    }
+
+    public int getSize(int slot) {
+        return getInt(slot, SIZE);
+    }
+
+    public void setSize(int slot, int size) {
+        setInt(slot, SIZE, size);
+    }
+
+    public int getPrice(int slot) {
+        return getInt(slot, PRICE);
+    }
+
+    public long getTimestamp(int slot) {
+        return chunk(slot).getLong(timestampOffset + ((slot & chunkMask) << 3));
+    }
+
+    public Side getSide(int slot) {
+        return (flags(slot) & ASK) != 0 ? Side.ASK : Side.BID;
+    }
+
+    public boolean isStop(int slot) {
+        return (flags(slot) & STOP) != 0;
+    }
+
+    public boolean isResting(int slot) {
+        return (flags(slot) & RESTING) != 0;
+    }
+
+    public void setResting(int slot, boolean resting) {
+        setFlag(slot, RESTING, resting);
+    }
+
+    public int getPrev(int slot) {
+        return getInt(slot, PREV);
+    }
+
+    public void setPrev(int slot, int prev) {
+        setInt(slot, PREV, prev);
+    }
+
+    public int getNext(int slot) {
+        return getInt(slot, NEXT);
+    }
+
+    public void setNext(int slot, int next) {
+        setInt(slot, NEXT, next);
+    }
+
+    // Number of slots in use
+    public int size() {
+        return slotCount - freeCount;
+    }
+
+    // Off-heap bytes reserved by the chunks
+    public long getReservedBytes() {
+        return (long) chunkCount * (flagsOffset + chunkMask + 1);
+    }
+}
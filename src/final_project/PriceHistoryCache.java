@@ -0,0 +1,70 @@
+package final_project;
+
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * PriceHistoryCache holds the serialized getPriceHistory responses of recently asked months,
+ * so a dashboard polling a month is answered without rebuilding or serializing anything.
+ *
+ * 1. One entry per month and symbol: the JSON of the response, tagged with the version of the
+ *    month in the trade rollups when it was built (see TradeRollups.getVersion()).
+ * 2. An entry is served while the version of its month is unchanged. A month that has ended
+ *    keeps its version, so its entry stays valid until evicted; the current month changes
+ *    with each trade, and its entry is rebuilt (from the rollups, one lookup per day) only
+ *    at the first request after a trade.
+ * 3. The cache is bounded ("price_history_cache_size" in the config): the least recently
+ *    asked entry is evicted first.
+ *
+ * Thread-safe: all methods are synchronized (a lookup is a hash map access).
+ */
+
+public class PriceHistoryCache {
+
+    // "YYYY-MM SYMBOL" -> response, in access order
+    private final Map<String, Entry> entries;
+
+
+    private static final class Entry {
+        final long version;
+        final String json;
+
+        Entry(long version, String json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+
+    /**
+     * @param capacity Most months (per symbol) kept.
+     */
+    public PriceHistoryCache(int capacity) {
+
+        int bound = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > bound;
+            }
+        };
+
+    }
+
+
+
+    // The cached response of a month built at the given version, or null
+    public synchronized String get(YearMonth month, String symbol, long version) {
+
+        Entry entry = entries.get(month + " " + symbol);
+        return entry != null && entry.version == version ? entry.json : null;
+
+    }
+
+
+    public synchronized void put(YearMonth month, String symbol, long version, String json) {
+        entries.put(month + " " + symbol, new Entry(version, json));
+    }
+}
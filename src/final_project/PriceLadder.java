@@ -0,0 +1,279 @@
+package final_project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * PriceLadder is one side of the order book, organized by price level.
+ *
+ * 1. Levels are ordered by priority:
+ *        1. descending prices for the bid side (highest bid first)
+ *        2. ascending prices for the ask side (lowest ask first)
+ * 2. Each PriceLevel is a FIFO queue, so walking the levels from bestLevel() with
+ *    nextLevel() visits resting orders in strict price-time priority.
+ * 3. Cancelling an order unlinks it through its handle in O(1).
+ * 4. Aggregated depth is maintained incrementally on add, fill and remove:
+ *        1. the total quantity of each level (see PriceLevel)
+ *        2. the total quantity of the whole side
+ *        3. the total quantity each user has resting on this side
+ *    so the liquidity available to a user is known in O(1), without scanning orders.
+ *
+ * How levels are indexed by price is left to the subclasses:
+ *
+ *        1. TreePriceLadder: a sorted map, for any price (default)
+ *        2. ArrayPriceLadder: a preallocated array over a bounded price band, with a bitmap
+ *           of non-empty levels (no tree rebalancing on the hot path)
+ *
+ * Use create() to get the implementation selected in "Config_Server.properties".
+ *
+ * Not thread-safe: always accessed under the order book lock.
+ *
+ * @param <T> LimitOrder for the limit book, StopOrder for the stop book.
+ */
+
+public abstract class PriceLadder<T extends Order> {
+
+    protected final boolean descending;
+    private int orderCount;
+    private long totalQuantity;
+
+    // username -> quantity that user has resting on this side
+    private final UserQuantities userQuantity = new UserQuantities();
+
+
+    /**
+     * @param descending true for a bid side (highest price first),
+     *                   false for an ask side (lowest price first).
+     */
+    protected PriceLadder(boolean descending) {
+        this.descending = descending;
+    }
+
+
+
+    /**
+     * Creates a ladder for one side of the limit order book, using the implementation
+     * configured by "order_book_ladder" ("tree" or "array").
+     */
+    public static <T extends Order> PriceLadder<T> create(boolean descending) {
+
+        if ("array".equalsIgnoreCase(ServerConfig.getOrderBookLadder())) {
+            return new ArrayPriceLadder<>(descending,
+                    ServerConfig.getPriceBandMin(),
+                    ServerConfig.getPriceBandMax(),
+                    "overflow".equalsIgnoreCase(ServerConfig.getPriceBandPolicy()));
+        }
+        return new TreePriceLadder<>(descending);
+
+    }
+
+
+
+    // ---- level index, implemented by subclasses ----
+
+    // Returns the level for the given price, creating it if needed
+    protected abstract PriceLevel<T> levelFor(int price);
+
+    // Called when an empty level receives its first order
+    protected abstract void levelActivated(PriceLevel<T> level);
+
+    // Called when the last order of a level has been removed
+    protected abstract void levelEmptied(PriceLevel<T> level);
+
+    // Best non-empty price level, or null if the ladder is empty
+    public abstract PriceLevel<T> bestLevel();
+
+    // First non-empty level strictly after the given price in priority order, or null
+    protected abstract PriceLevel<T> levelAfter(int price);
+
+    // Number of price levels in the index (may include empty levels not dropped yet)
+    public abstract int getLevelCount();
+
+    // false if an order at this price cannot rest in this ladder
+    public boolean accepts(int price) {
+        return true;
+    }
+
+
+
+    /**
+     * Appends the order to the tail of its price level, creating the level if needed.
+     *
+     * @param order The order to rest in the ladder.
+     * @param price The price used to rank the order (limit price or stop price).
+     */
+    public void add(T order, int price) {
+
+        PriceLevel<T> level = levelFor(price);
+        boolean wasEmpty = level.isEmpty();
+        level.add(order);
+        if (wasEmpty) {
+            levelActivated(level);
+        }
+        orderCount++;
+        addQuantity(order.getUsername(), order.getSize());
+
+    }
+
+
+
+    /**
+     * Unlinks the order from its price level in O(1).
+     *
+     * @return true if the order was resting in this ladder.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(T order) {
+
+        PriceLevel<T> level = (PriceLevel<T>) order.level;
+        if (level == null) {
+            return false;
+        }
+        removeFromLevel(level, order);
+        return true;
+
+    }
+
+
+
+    /**
+     * Unlinks an order reached while walking a level (e.g. fully filled by the matcher).
+     */
+    public void removeFromLevel(PriceLevel<T> level, T order) {
+
+        int size = order.getSize();
+        if (level.remove(order)) {
+            orderCount--;
+            addQuantity(order.getUsername(), -size);
+            if (level.isEmpty()) {
+                levelEmptied(level);
+            }
+        }
+
+    }
+
+
+
+    /**
+     * Reduces a resting order after a trade, keeping level, side and user totals in sync.
+     * The order stays linked; remove it with removeFromLevel() once its size reaches 0.
+     */
+    public void fill(PriceLevel<T> level, T order, int tradedSize) {
+
+        level.fill(order, tradedSize);
+        addQuantity(order.getUsername(), -tradedSize);
+
+    }
+
+
+
+    /**
+     * Applies a trade to a resting order reached through its handle (journal replay),
+     * removing it once its size reaches 0.
+     */
+    @SuppressWarnings("unchecked")
+    public void reduce(T order, int tradedSize) {
+
+        PriceLevel<T> level = (PriceLevel<T>) order.level;
+        if (level == null) return;
+        fill(level, order, tradedSize);
+        if (order.getSize() == 0) {
+            removeFromLevel(level, order);
+        }
+
+    }
+
+
+
+    private void addQuantity(String username, long delta) {
+
+        totalQuantity += delta;
+        userQuantity.add(username, delta);
+
+    }
+
+
+
+    // Best price, or -1 if the ladder is empty
+    public int getBestPrice() {
+
+        PriceLevel<T> level = bestLevel();
+        return level == null ? -1 : level.getPrice();
+
+    }
+
+
+
+    // Order with the highest price-time priority, or null
+    public T peekBest() {
+
+        PriceLevel<T> level = bestLevel();
+        return level == null ? null : level.peek();
+
+    }
+
+
+
+    // Removes and returns the order with the highest price-time priority, or null
+    public T pollBest() {
+
+        PriceLevel<T> level = bestLevel();
+        if (level == null) return null;
+        T order = level.peek();
+        removeFromLevel(level, order);
+        return order;
+
+    }
+
+
+
+    // Next non-empty level after the given one in priority order, or null
+    public PriceLevel<T> nextLevel(PriceLevel<T> level) {
+        return levelAfter(level.getPrice());
+    }
+
+
+
+    // true if price "a" has a higher priority than price "b" on this side
+    public boolean isBetter(int a, int b) {
+        return descending ? a > b : a < b;
+    }
+
+
+
+    public boolean isEmpty() {
+        return orderCount == 0;
+    }
+
+    public int size() {
+        return orderCount;
+    }
+
+    // Total resting quantity of this side
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    // Resting quantity of the given user on this side
+    public long getUserQuantity(String username) {
+        return userQuantity.get(username);
+    }
+
+
+
+    /**
+     * Returns all resting orders in price-time priority (used for persistence).
+     */
+    public List<T> toList() {
+
+        List<T> list = new ArrayList<>(orderCount);
+        for (PriceLevel<T> level = bestLevel(); level != null; level = nextLevel(level)) {
+            for (T o = level.peek(); o != null; o = level.next(o)) {
+                list.add(o);
+            }
+        }
+        return list;
+
+    }
+}
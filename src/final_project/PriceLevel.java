@@ -0,0 +1,148 @@
+package final_project;
+
+
+/**
+ * PriceLevel holds all resting orders at a single price of the order book.
+ *
+ * 1. Orders are kept in a FIFO queue: the order that arrived first is matched first
+ *    (time priority inside the same price).
+ * 2. The queue is an intrusive doubly-linked list: every resting order carries its own
+ *    handle (prev / next / level fields in Order), so an order found through activeOrders
+ *    can be unlinked in O(1) without searching the level.
+ * 3. The level keeps the total remaining quantity of its orders, and the quantity of
+ *    each user, updated incrementally on add, fill and remove. The matcher uses the
+ *    per-user quantity to jump past a user's own liquidity without visiting its orders.
+ * 4. A PriceLevel belongs to exactly one PriceLadder, which keeps the levels sorted by price
+ *    (TreePriceLadder through a LevelTree, hence the LevelTree.Node base).
+ *
+ * Not thread-safe: always accessed under the order book lock.
+ *
+ * @param <T> LimitOrder for the limit book, StopOrder for the stop book.
+ */
+
+public class PriceLevel<T extends Order> extends LevelTree.Node<PriceLevel<T>> implements OrderMatcher.Level {
+
+    private T head;
+    private T tail;
+    private int orderCount;
+    private long totalQuantity;
+
+    // Quantity per user in this level, created with the first order
+    private UserQuantities userQuantity;
+
+    public PriceLevel(int price) {
+        super(price);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head == null;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    // Sum of the remaining sizes of all orders in this level
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    // Quantity the given user has resting in this level
+    public long getUserQuantity(String username) {
+        return userQuantity == null ? 0 : userQuantity.get(username);
+    }
+
+
+
+    // Append an order at the tail (lowest time priority)
+    public void add(T order) {
+
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        orderCount++;
+        totalQuantity += order.getSize();
+        if (userQuantity == null) {
+            userQuantity = new UserQuantities();
+        }
+        userQuantity.add(order.getUsername(), order.getSize());
+
+    }
+
+
+
+    /**
+     * Unlinks the order from this level in O(1).
+     *
+     * @return true if the order was resting in this level.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(T order) {
+
+        if (order.level != this) return false;
+
+        if (order.prev == null) {
+            head = (T) order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            tail = (T) order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        order.prev = null;
+        order.next = null;
+        order.level = null;
+        orderCount--;
+        totalQuantity -= order.getSize();
+        userQuantity.add(order.getUsername(), -order.getSize());
+        return true;
+
+    }
+
+
+
+    // Reduces the size of a resting order of this level after a trade
+    public void fill(T order, int tradedSize) {
+
+        order.reduceSize(tradedSize);
+        totalQuantity -= tradedSize;
+        userQuantity.add(order.getUsername(), -tradedSize);
+
+
+    }
+
+
+
+    // Order with the highest time priority, or null
+    public T peek() {
+        return head;
+    }
+
+    public T poll() {
+
+        T order = head;
+        if (order != null) remove(order);
+        return order;
+
+    }
+
+
+
+    /**
+     * Next order after the given one in time priority, or null.
+     * Read it before unlinking the current order when walking the level.
+     */
+    @SuppressWarnings("unchecked")
+    public T next(T order) {
+        return (T) order.next;
+    }
+}
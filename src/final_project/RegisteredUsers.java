@@ -1,92 +1,188 @@
 package final_project;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.*;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
  * RegisteredUsers manages the list of registered users and handles user data persistence.
- * 
- * 
+ *
+ *
  * 1. Uses ConcurrentHashMap to safely access user data in multi-threaded environment.
- * 2. Supports loading user data from "registered_users.json" on server startup.
- * 3. Persists user data to the JSON file whenever the user list changes.
- * 
+ * 2. Only credentials are persisted: session state (logged in or not) lives in memory only,
+ *    so login, logout and disconnection never write to disk.
+ * 3. A registration or password change appends one JSON line to the user log
+ *    ("registered_users.log"), whatever the number of registered users.
+ * 4. The log is compacted into the user file ("registered_users.json") on startup and once it
+ *    holds "user_log_compaction_records" lines: the file is rewritten (fsynced, then renamed
+ *    over the previous one), then the log is emptied.
+ * 5. On startup, users are loaded from the user file, then the log is replayed on top of it.
+ *
  * Thread Safety:
  * 1. The user data map (registeredUsers) is thread-safe due to ConcurrentHashMap.
- * 2. The persistUsers() method is synchronized to avoid concurrent file write issues.
+ * 2. Appends and compactions are synchronized to avoid concurrent file write issues.
  * 3. add() uses putIfAbsent() for atomic registration, ensuring no duplicate usernames.
- * 
+ *
  */
 
 public class RegisteredUsers {
-	
+
     private static final String USERS_FILE = ServerConfig.getUsersFile();
+    private static final String USERS_LOG = ServerConfig.getUsersLogFile();
+    private static final int COMPACTION_RECORDS = Math.max(1, ServerConfig.getUserLogCompactionRecords());
     private static final ConcurrentHashMap<String, User> registeredUsers = new ConcurrentHashMap<>();
     private static final Gson gson = new Gson();
 
-    
+    // Lines in the user log since the last compaction (guarded by the class lock)
+    private static int logRecords;
+
+
     public static void load() {
-    	
+
         File file = new File(USERS_FILE);
-        
+
         if (file.exists()) {
-            try (Reader reader = new FileReader(file)) {
-                List<User> users = gson.fromJson(reader, new TypeToken<List<User>>(){}.getType());
-                if (users != null) {
-                    for (User user : users) {
-                        user.setLoggedIn(false);
+            // Streamed: one user at a time
+            try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(file)))) {
+                if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        User user = gson.fromJson(reader, User.class);
                         registeredUsers.put(user.getUsername(), user);
                     }
+                    reader.endArray();
                     System.out.println("[Main] Loaded " + registeredUsers.size() + " users from " + USERS_FILE);
                 } else {
                     System.out.println("[Main] No users loaded from " + USERS_FILE);
                 }
-            } catch (IOException e) {
+            } catch (IOException | IllegalStateException | JsonParseException e) {
                 System.err.println("[Main] Error loading users: " + e.getMessage());
             }
         } else {
             System.out.println("[Main] User file not found. Starting with an empty user set.");
         }
-        
+
+        replayLog();
+        // Also drops a line torn by a crash, before anything is appended after it
+        compact();
+
     }
 
-    
-    public static synchronized void persistUsers() {
-    	
-        try (Writer writer = new FileWriter(USERS_FILE)) {
-        	
-            gson.toJson(registeredUsers.values(), writer);
+
+    // Applies the registrations and password changes of the log, in order
+    private static void replayLog() {
+
+        File log = new File(USERS_LOG);
+        if (!log.exists()) return;
+
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(log.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                User user;
+                try {
+                    user = gson.fromJson(line, User.class);
+                } catch (JsonParseException e) {
+                    continue; // torn by a crash
+                }
+                if (user == null || user.getUsername() == null) continue;
+                User known = registeredUsers.putIfAbsent(user.getUsername(), user);
+                if (known != null) {
+                    known.setPassword(user.getPassword());
+                }
+                replayed++;
+            }
+        } catch (IOException e) {
+            System.err.println("[Main] Error loading users: " + e.getMessage());
+        }
+        if (replayed > 0) {
+            System.out.println("[Main] Replayed " + replayed + " user changes from " + USERS_LOG);
+        }
+
+    }
+
+
+
+    // Appends the credentials of a user to the log, compacting it when it is long enough
+    private static synchronized void append(String username, String password) {
+
+        String line = gson.toJson(new User(username, password)) + "\n";
+        try (FileOutputStream out = new FileOutputStream(USERS_LOG, true)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
         } catch (IOException e) {
             System.err.println("[Main] Failed to persist registered user information: " + e.getMessage());
+            return;
+        }
+        if (++logRecords >= COMPACTION_RECORDS) {
+            compact();
         }
-        
+
+    }
+
+
+    // Rewrites the user file with every user, then empties the log
+    private static synchronized void compact() {
+
+        String tmpPath = USERS_FILE + ".tmp";
+        try (FileOutputStream out = new FileOutputStream(tmpPath);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            gson.toJson(new ArrayList<>(registeredUsers.values()), writer);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to persist registered user information: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(Paths.get(tmpPath), Paths.get(USERS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // Replaying the log again over the new file would change nothing, so a crash here is harmless
+            new FileOutputStream(USERS_LOG).close();
+            logRecords = 0;
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to persist registered user information: " + e.getMessage());
+        }
+
     }
 
-    
+
     public static boolean contains(String username) {
-    	
+
         return registeredUsers.containsKey(username);
     }
 
-    
+
     public static User get(String username) {
-    	
+
         return registeredUsers.get(username);
     }
 
-    
+
     public static boolean add(String username, String password) {
-    	
+
         User res = registeredUsers.putIfAbsent(username, new User(username, password));
-        if (res == null) { 
-            persistUsers();
+        if (res == null) {
+            append(username, password);
             return true;
         }
         return false;
     }
+
+
+    // Changes the password of a registered user and records it in the log
+    public static void updatePassword(User user, String newPassword) {
+
+        user.setPassword(newPassword);
+        append(user.getUsername(), newPassword);
+    }
 }
@@ -0,0 +1,34 @@
+package final_project;
+
+
+/**
+ * SelfTradePolicy decides what the matcher does when an incoming order meets
+ * a resting order of the same user (configured by "self_trade_prevention"):
+ *
+ * 1. SKIP: leave the resting order in the book and keep matching the orders behind it.
+ *    Price levels that hold only the user's own quantity are jumped over in O(1).
+ * 2. CANCEL_RESTING: cancel the user's resting order and keep matching.
+ * 3. CANCEL_INCOMING: stop matching and cancel what is left of the incoming order
+ *    (a market order that would reach its own liquidity before being fully filled is rejected).
+ */
+
+public enum SelfTradePolicy {
+
+    SKIP,
+    CANCEL_RESTING,
+    CANCEL_INCOMING;
+
+
+    // Parses the configuration value ("skip", "cancel_resting", "cancel_incoming"), SKIP if unknown
+    public static SelfTradePolicy fromConfig(String value) {
+
+        for (SelfTradePolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(value.trim())) {
+                return policy;
+            }
+        }
+        System.err.println("[Config] Unknown self_trade_prevention: " + value + ", using skip");
+        return SKIP;
+
+    }
+}
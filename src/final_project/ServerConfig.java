@@ -2,6 +2,8 @@ package final_project;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -50,30 +52,240 @@ public class ServerConfig {
         return properties.getProperty("order_id_counter", "order_id_counter.txt");
     }
     
-    // Order history 
+    // Number of order IDs leased at once (one counter file write per block)
+    public static int getOrderIdBlockSize() {
+        return getIntProperty("order_id_block_size", "10000");
+    }
+    
+    // Number of order IDs the Bloom filter of issued IDs is sized for, and its bits per ID
+    public static int getOrderIdFilterCapacity() {
+        return getIntProperty("order_id_filter_capacity", "1000000");
+    }
+    
+    public static int getOrderIdFilterBitsPerId() {
+        return getIntProperty("order_id_filter_bits_per_id", "10");
+    }
+    
+    // Who shares a leased block of order IDs: "shared" (all threads) or "thread" (one per connection thread)
+    public static String getOrderIdAllocation() {
+        return properties.getProperty("order_id_allocation", "shared").trim();
+    }
+    
+    // Order history file of older versions (moved into the order history log on startup)
     public static String getOrderHistoryFile() {
         return properties.getProperty("order_history", "order_history.json");
     }
     
+    // Order history log of a shard: "_<shard>" before the extension (e.g. order_history_0.log)
+    public static String getOrderHistoryLog(int shard) {
+        String file = properties.getProperty("order_history_log", "order_history.log").trim();
+        int dot = file.lastIndexOf('.');
+        return dot < 0 ? file + "_" + shard : file.substring(0, dot) + "_" + shard + file.substring(dot);
+    }
+    
+    // Number of order history logs that inserts are spread over (by order ID)
+    public static int getOrderHistoryShards() {
+        return getIntProperty("order_history_shards", "4");
+    }
+    
+    // Size of each order history log segment file, in bytes
+    public static int getOrderHistorySegmentSize() {
+        return getIntProperty("order_history_segment_size", "16777216");
+    }
+    
+    // Number of recent orders kept in memory by the order history (rounded up to a power of two)
+    public static int getOrderHistoryCacheSize() {
+        return getIntProperty("order_history_cache_size", "4096");
+    }
+    
     // Order book 
     public static String getOrderBookFile() {
         return properties.getProperty("order_book", "orderbook_data.json");
     }
     
+    // Order book file of a symbol: the default symbol keeps "order_book",
+    // other symbols get "_<SYMBOL>" before the extension (e.g. orderbook_data_ETH.json)
+    public static String getOrderBookFile(String symbol) {
+        return withSymbol(getOrderBookFile(), symbol);
+    }
+    
+    // Order book write-ahead journal of a symbol, named like the order book file
+    public static String getOrderBookJournalFile(String symbol) {
+        return withSymbol(properties.getProperty("order_book_journal", "orderbook_data.journal"), symbol);
+    }
+    
+    // Log of the final statuses of the orders that left a book (cold tier), named like the order book file
+    public static String getOrderBookColdLog(String symbol) {
+        return withSymbol(properties.getProperty("order_book_cold_log", "orderbook_data.cold"), symbol);
+    }
+    
+    // Size of each segment file of the cold tier log, in bytes
+    public static int getColdLogSegmentSize() {
+        return getIntProperty("cold_log_segment_size", "4194304");
+    }
+    
+    // Number of journaled commands between two order book snapshots
+    public static int getSnapshotInterval() {
+        return getIntProperty("snapshot_interval", "10000");
+    }
+    
+    // Size of each memory-mapped journal segment file, in bytes
+    public static int getJournalSegmentSize() {
+        return getIntProperty("journal_segment_size", "67108864");
+    }
+    
+    // When journal records are fsynced: "sync", "group" or "async"
+    public static JournalFlusher.Durability getDurability() {
+        return JournalFlusher.Durability.fromConfig(properties.getProperty("durability", "group"));
+    }
+    
+    // Flush period of the journal flusher thread (group: longest wait for a batch, async: fsync period)
+    public static long getJournalFlushIntervalMicros() {
+        return getIntProperty("journal_flush_interval_us", "500");
+    }
+    
+    // Pending records that trigger a group commit before the interval ends
+    public static int getGroupCommitMaxRecords() {
+        return getIntProperty("group_commit_max_records", "64");
+    }
+    
+    private static String withSymbol(String file, String symbol) {
+        if (symbol.equals(getDefaultSymbol())) return file;
+        int dot = file.lastIndexOf('.');
+        return dot < 0 ? file + "_" + symbol : file.substring(0, dot) + "_" + symbol + file.substring(dot);
+    }
+    
+    // Symbol of the requests that do not name one (single-symbol clients)
+    public static String getDefaultSymbol() {
+        return properties.getProperty("default_symbol", "BTC").trim().toUpperCase();
+    }
+    
+    // Listed symbols, comma separated; the default symbol is always listed
+    public static List<String> getSymbols() {
+        List<String> symbols = new ArrayList<>();
+        symbols.add(getDefaultSymbol());
+        for (String symbol : properties.getProperty("symbols", "").split(",")) {
+            symbol = symbol.trim().toUpperCase();
+            if (!symbol.isEmpty() && !symbols.contains(symbol)) symbols.add(symbol);
+        }
+        return symbols;
+    }
+    
     // Registerd users 
     public static String getUsersFile() {
         return properties.getProperty("user_file", "registered_users.json");
     }
     
-    // Trade history 
+    // Log of registrations and password changes, compacted into the user file
+    public static String getUsersLogFile() {
+        return properties.getProperty("user_log", "registered_users.log");
+    }
+    
+    // Number of user log lines that trigger a compaction
+    public static int getUserLogCompactionRecords() {
+        return getIntProperty("user_log_compaction_records", "1000");
+    }
+    
+    // Trade history file of older versions (moved into the trade log on startup)
     public static String getTradeHistoryFile() {
         return properties.getProperty("trade_history", "trade_history.json");
     }
     
+    // Directory of the trade log, one segment per day
+    public static String getTradeLogDir() {
+        return properties.getProperty("trade_log_dir", "trade_history");
+    }
+
+    // Bytes of a trade log segment per entry of its time index
+    public static int getTradeIndexBlockSize() {
+        return getIntProperty("trade_index_block_size", "65536");
+    }
+    
+    // Daily price statistics of the trade log, and how many trades may be folded between two saves
+    public static String getTradeRollupFile() {
+        return properties.getProperty("trade_rollups", "trade_rollups.dat");
+    }
+    
+    public static int getTradeRollupSaveRecords() {
+        return getIntProperty("trade_rollup_save_records", "10000");
+    }
+
+    // Most months (per symbol) whose getPriceHistory response is kept serialized
+    public static int getPriceHistoryCacheSize() {
+        return getIntProperty("price_history_cache_size", "256");
+    }
+
+    // Directory of the candle files (one per symbol and resolution)
+    public static String getCandleDir() {
+        return properties.getProperty("candle_dir", "candles");
+    }
+
+    // Recent candles of each symbol and resolution kept in memory
+    public static int getCandleRingSize() {
+        return getIntProperty("candle_ring_size", "4096");
+    }
+
+    // Most candles returned by one getCandles request
+    public static int getCandleMaxResults() {
+        return getIntProperty("candle_max_results", "10000");
+    }
+    
     // Buffer size for UDP
     public static int getBufSize() {
         return getIntProperty("BUFFER_SIZE", "2048");
     }
+    
+    // Order book price level index: "tree" (any price) or "array" (bounded price band)
+    public static String getOrderBookLadder() {
+        return properties.getProperty("order_book_ladder", "tree").trim();
+    }
+    
+    // Price band of the array ladder, inclusive bounds
+    public static int getPriceBandMin() {
+        return getIntProperty("price_band_min", "1");
+    }
+    
+    public static int getPriceBandMax() {
+        return getIntProperty("price_band_max", "100000");
+    }
+    
+    // Prices outside the band: "reject" the order or keep it in an "overflow" tree
+    public static String getPriceBandPolicy() {
+        return properties.getProperty("price_band_policy", "overflow").trim();
+    }
+    
+    // Self-trade prevention: "skip", "cancel_resting" or "cancel_incoming"
+    public static SelfTradePolicy getSelfTradePolicy() {
+        return SelfTradePolicy.fromConfig(properties.getProperty("self_trade_prevention", "skip"));
+    }
+    
+    // Order book concurrency: "lock" (fair lock) or "sequencer" (single matching thread)
+    public static String getMatchingMode() {
+        return properties.getProperty("matching_mode", "lock").trim();
+    }
+    
+    // Number of slots of the sequencer ring buffer (rounded up to a power of two)
+    public static int getSequencerRingSize() {
+        return getIntProperty("sequencer_ring_size", "1024");
+    }
+    
+    // How the matching thread waits for commands: "block", "yield" or "spin"
+    public static CommandSequencer.IdleStrategy getSequencerIdleStrategy() {
+        return CommandSequencer.IdleStrategy.fromConfig(properties.getProperty("sequencer_idle_strategy", "block"));
+    }
+    
+    // Where resting orders are kept: "heap" (Order objects) or "offheap" (slab records)
+    public static String getOrderStore() {
+        return properties.getProperty("order_store", "heap").trim();
+    }
+    
+    // Records per off-heap slab chunk
+    public static int getOrderStoreChunkSize() {
+        return getIntProperty("order_store_chunk_size", "65536");
+    }
+
+
+
    
     
     
@@ -4,10 +4,16 @@ import java.io.*;
 import java.net.*;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import com.google.gson.Gson;
@@ -25,13 +31,18 @@ public class ServerMain {
     private static final int INACTIVITY_THRESHOLD = ServerConfig.getINACTIVITY_THRESHOLD(); 
     // Use the GSON library for JSON serialization and deserialization
     private static final Gson gson = new Gson();
+    // Serialized getPriceHistory responses of recently asked months
+    private static final PriceHistoryCache priceHistoryCache = new PriceHistoryCache(ServerConfig.getPriceHistoryCacheSize());
     
     
     /**
      * Main entry point for the trading server.
      * 
-     * 1. Loads user data, order history, trade history, order book and 
-     *    the order ID generator from JSON files.
+     * 1. Loads user data, order history, trade history, order books and the order ID generator
+     *    concurrently, one startup thread each, and logs how long each phase took.
+     *    Connections are accepted as soon as the users, the order books and the order ID generator
+     *    are loaded; order and trade history keep loading in the background meanwhile
+     *    (until then, cancelling an old market order may answer "Order does not exist").
      * 2. Starts a UDP listener thread for handling user UDP registrations.
      * 3. Uses a cached thread pool to manage TCP client connections.
      * 4. Listens for incoming TCP connections and handles each client in a separate thread.
@@ -41,16 +52,36 @@ public class ServerMain {
      */
     public static void main(String[] args) {
     	
+    	long startup = System.nanoTime();
+    	
     	// Load registered user data
-    	RegisteredUsers.load();
-        // Load order history
-        OrderHistory.load();
-        // Loading persistent trade history
-        TradeHistory.load();
-        // Load the order book 
-        OrderBook.getInstance().load();
+    	CompletableFuture<Void> users = loadPhase("registered users", RegisteredUsers::load, startup);
+        // Load the order book of each listed symbol
+        List<CompletableFuture<Void>> books = new ArrayList<>();
+        for (OrderBook book : OrderBook.getInstances()) {
+        	books.add(loadPhase("order book " + book.getSymbol(), book::load, startup));
+        }
         // Load order ID generator
-        OrderIdGenerator.load();
+        CompletableFuture<Void> orderIds = loadPhase("order ID generator", OrderIdGenerator::load, startup);
+        // Load order history and trade history: not needed to log in or trade, so not waited for
+        CompletableFuture<Void> history = CompletableFuture.allOf(
+        		loadPhase("order history", OrderHistory::load, startup),
+        		loadPhase("trade history", TradeHistory::load, startup));
+        
+        users.join();
+        books.forEach(CompletableFuture::join);
+        orderIds.join();
+        System.out.println("[Main] Startup: ready for logins and orders after " + elapsedMillis(startup) + " ms"
+        		+ (history.isDone() ? "" : ", history still loading"));
+        history.whenComplete((done, e) -> {
+        	if (e != null) {
+        		// The failed phase has logged its error; cancels of finalized orders stay refused
+        		System.err.println("[Main] Startup: history not loaded after " + elapsedMillis(startup) + " ms: "
+        				+ (e.getCause() != null ? e.getCause() : e));
+        	} else {
+        		System.out.println("[Main] Startup: fully loaded after " + elapsedMillis(startup) + " ms");
+        	}
+        });
 
         // Use a cached thread pool to handle client threads.
         // This executor reuses previously constructed threads when available,
@@ -72,6 +103,7 @@ public class ServerMain {
         	System.out.println("[Main] Shutdown hook triggered. Cleaning up...");
         	executor.shutdown();
         	UdpNotifier.shutdown();
+        	TradeHistory.shutdown();
         }));
 
 
@@ -94,6 +126,40 @@ public class ServerMain {
     }//end main
     
     
+    
+    /**
+     * Runs one loading phase of the startup on its own thread and logs its duration.
+     * 
+     * @param name    Name of the phase in the startup report.
+     * @param loader  Loads one store.
+     * @param startup Start time of the startup (System.nanoTime()).
+     * @return Completes when the phase is done (exceptionally if the loader failed).
+     */
+    private static CompletableFuture<Void> loadPhase(String name, Runnable loader, long startup) {
+    	
+    	CompletableFuture<Void> phase = new CompletableFuture<>();
+    	new Thread(() -> {
+    		long start = System.nanoTime();
+    		try {
+    			loader.run();
+    			System.out.println("[Main] Startup: " + name + " loaded in " + elapsedMillis(start)
+    					+ " ms (at " + elapsedMillis(startup) + " ms)");
+    			phase.complete(null);
+    		} catch (RuntimeException | Error e) {
+    			System.err.println("[Main] Startup: failed to load " + name + ": " + e);
+    			phase.completeExceptionally(e);
+    		}
+    	}, "startup-" + name).start();
+    	return phase;
+    	
+    }
+    
+    
+    private static long elapsedMillis(long since) {
+    	return (System.nanoTime() - since) / 1_000_000;
+    }
+    
+    
 
     /**
      * Handles a single TCP client connection.
@@ -207,7 +273,8 @@ public class ServerMain {
             		// Process 6 operations in the logged-in state
                     Object respObj = processOperation(operation, jsonRequest, currentUser, threadName);
                     try {
-                        out.write(gson.toJson(respObj));
+                        // Responses served from a cache are already serialized
+                        out.write(respObj instanceof String ? (String) respObj : gson.toJson(respObj));
                         out.newLine();
                         out.flush();
                     } catch (IOException e) {
@@ -244,7 +311,6 @@ public class ServerMain {
                     User user = RegisteredUsers.get(currentUser.getValue());
                     if (user != null && user.isLoggedIn()) {
                         user.setLoggedIn(false);
-                        RegisteredUsers.persistUsers();
                         System.out.println(threadName+"Logout completed: user " + currentUser.getValue() + " set to not logged in.");
                     }
                 }
@@ -285,7 +351,7 @@ public class ServerMain {
      * 1. Verifies that the user exists and is not currently logged in.
      * 2. Checks that the current password matches.
      * 3. Rejects invalid or unchanged new passwords.
-     * 4. Updates the password and persists the user data on success.
+     * 4. Updates the password and records it in the user log on success.
      * 
      * @param username The username of the account.
      * @param currentPassword The current password.
@@ -309,8 +375,7 @@ public class ServerMain {
         else if(currentPassword.equals(newPassword))
         	 return new OperationResponse1(103, "New password equal to old one");
         
-        user.setPassword(newPassword);
-        RegisteredUsers.persistUsers();
+        RegisteredUsers.updatePassword(user, newPassword);
         return new OperationResponse1(100, "OK");
         
     }
@@ -321,7 +386,7 @@ public class ServerMain {
      * 
      * 1. Verifies that the user exists and the password matches.
      * 2. Prevents multiple concurrent logins by the same user.
-     * 3. Sets the user's login status to true and persists the change.
+     * 3. Sets the user's login status to true (in memory only, nothing is written).
      * 
      * @param username The username of the account.
      * @param password The password provided for login.
@@ -344,7 +409,6 @@ public class ServerMain {
         }
         
         user.setLoggedIn(true);
-        RegisteredUsers.persistUsers();
         return new OperationResponse1(100, "OK");
     }
     
@@ -353,7 +417,7 @@ public class ServerMain {
     /**
      * Dispatches the requested operation to the corresponding handler based on the operation name.
      * 
-     * 1. Supports logout, insert limit/market/stop order, cancel order, and get price history.
+     * 1. Supports logout, insert limit/market/stop order, cancel order, get price history and get candles.
      * 2. Deserializes the incoming JSON request into the appropriate request object.
      * 3. Ensures that the correct handler is called for each operation type.
      * 
@@ -389,6 +453,10 @@ public class ServerMain {
                 GetPriceHistoryRequest price = gson.fromJson(jsonRequest, GetPriceHistoryRequest.class);
                 return processGetPriceHistory(price);
                 
+            case "getcandles":
+                GetCandlesRequest candles = gson.fromJson(jsonRequest, GetCandlesRequest.class);
+                return processGetCandles(candles);
+                
             default:
                 return new OperationResponse1(101, "Unsupported operation in interactive mode");
         }
@@ -403,7 +471,7 @@ public class ServerMain {
      * Handles the user logout process.
      * 
      * 1. Verifies that the user is currently logged in.
-     * 2. Sets the user's login status to false and persists the change.
+     * 2. Sets the user's login status to false (in memory only).
      * 
      * @param currentUser The currently logged-in user (thread-local).
      * @param threadName The name of the current thread (for logging purposes).
@@ -416,7 +484,6 @@ public class ServerMain {
             return new OperationResponse1(101, "User not logged in");
         }
         user.setLoggedIn(false);
-        RegisteredUsers.persistUsers();
         System.out.println(threadName+"Logout completed: user " + currentUser.getValue() + " set to not logged in.");
         return new OperationResponse1(100, "OK");
         
@@ -426,17 +493,32 @@ public class ServerMain {
     
     
     
+    // Next order ID, or -1 if no block of IDs could be leased (see OrderIdGenerator)
+    private static int nextOrderId() {
+
+        try {
+            return OrderIdGenerator.getNextOrderId();
+        } catch (UncheckedIOException e) {
+            System.err.println("[Main] Order rejected: " + e.getMessage());
+            return -1;
+        }
+
+    }
+
+
+
     /**
      * Processes the insertion of a new limit order from the logged-in user.
      * 
      * 1. Constructs a LimitOrder object using the provided request parameters.
      * 2. Records a copy of the order in OrderHistory.
-     * 3. Adds the order to the order book and performs matching.
+     * 3. Adds the order to the order book of the requested symbol and performs matching.
      * 4. Updates trade history and notifies involved users of any trades.
      * 
      * @param currentUser The currently logged-in user (thread-local).
      * @param req The limit order request containing order details.
-     * @return OperationResponse2 containing the generated order ID.
+     * @return OperationResponse2 containing the generated order ID, or -1 if the symbol is unknown,
+     *         no order ID could be issued or the order book journal failed.
      */
     private static OperationResponse2 processInsertLimitOrder(MutableString currentUser, InsertLimitOrderRequest req) {
         
@@ -445,19 +527,40 @@ public class ServerMain {
         int limitPrice = req.getValues().getlimitPrice();
         long timestamp = System.currentTimeMillis()/1000;
         
+        // Reject unknown symbols (no symbol means the default one)
+        OrderBook book = OrderBook.getInstance(req.getValues().getSymbol());
+        if (book == null) {
+            return new OperationResponse2(-1);
+        }
+        
+        // Reject prices outside the configured band (array ladder with "price_band_policy=reject")
+        if (!book.acceptsLimitPrice(limitPrice)) {
+            return new OperationResponse2(-1);
+        }
+
+        
         //Construct a limit order object
-        int orderId = OrderIdGenerator.getNextOrderId();
+        int orderId = nextOrderId();
+        if (orderId < 0) {
+            return new OperationResponse2(-1);
+        }
         LimitOrder order = new LimitOrder(orderId, currentUser.getValue(), type, size, timestamp, limitPrice);
         
         // Write a copy to OrderHistory
         OrderHistory.addOrder(OrderUtils.copyOrder(order));
         
         // Add limit order to order book, match orders and obtain each user's trades record Map
-        Map<String, List<TradeInfo>> tradeMap = OrderBook.getInstance().addLimitOrder(order);
+        Map<String, List<TradeInfo>> tradeMap;
+        try {
+        	tradeMap = book.addLimitOrder(order);
+        } catch (JournalFailedException e) {
+        	System.err.println("[Main] Order " + orderId + " rejected: " + e.getMessage());
+        	return new OperationResponse2(-1);
+        }
 
         // Add to trade history and send notification
         TradeHistory.addTrades(tradeMap);
-        OrderBook.getInstance().notifyUsers(tradeMap);
+        book.notifyUsers(tradeMap);
         
         return new OperationResponse2(orderId);
         
@@ -470,19 +573,30 @@ public class ServerMain {
      * 
      * 1. Constructs a MarketOrder object using the request parameters.
      * 2. Records a copy of the order in OrderHistory.
-     * 3. Adds the order to the order book and performs immediate matching.
+     * 3. Adds the order to the order book of the requested symbol and performs immediate matching.
      * 4. Rejects the order if it cannot be fully matched (market orders must fully execute).
      * 5. Updates trade history and notifies involved users of any trades.
      * 
      * @param currentUser The currently logged-in user (thread-local).
      * @param req The market order request containing order details.
-     * @return OperationResponse2 with the generated order ID, or -1 if matching failed.
+     * @return OperationResponse2 with the generated order ID, or -1 if matching failed, the symbol is unknown,
+     *         no order ID could be issued or the order book journal failed.
      */
     private static OperationResponse2 processInsertMarketOrder(MutableString currentUser, InsertMarketOrderRequest req) {
       
         String type = req.getValues().getType();
         int size = req.getValues().getSize();
-        int orderId = OrderIdGenerator.getNextOrderId();
+        
+        // Reject unknown symbols (no symbol means the default one)
+        OrderBook book = OrderBook.getInstance(req.getValues().getSymbol());
+        if (book == null) {
+            return new OperationResponse2(-1);
+        }
+        
+        int orderId = nextOrderId();
+        if (orderId < 0) {
+            return new OperationResponse2(-1);
+        }
         long timestamp = System.currentTimeMillis()/1000;
         
         // Construct order
@@ -491,7 +605,13 @@ public class ServerMain {
         OrderHistory.addOrder(OrderUtils.copyOrder(order));
 
         // Add market order to order book and match orders, and obtain each user's trades record Map
-        Map<String, List<TradeInfo>> tradeMap = OrderBook.getInstance().addMarketOrder(order);
+        Map<String, List<TradeInfo>> tradeMap;
+        try {
+        	tradeMap = book.addMarketOrder(order);
+        } catch (JournalFailedException e) {
+        	System.err.println("[Main] Order " + orderId + " rejected: " + e.getMessage());
+        	return new OperationResponse2(-1);
+        }
         
         // Matching failed (unable to trade market order completely), so reject order
         if (tradeMap.isEmpty()) {
@@ -500,7 +620,7 @@ public class ServerMain {
 
         // Add to trade history and send notification
         TradeHistory.addTrades(tradeMap);
-        OrderBook.getInstance().notifyUsers(tradeMap);
+        book.notifyUsers(tradeMap);
 
         return new OperationResponse2(orderId);
         
@@ -513,22 +633,32 @@ public class ServerMain {
      * 
      * 1. Constructs a StopOrder object using the request parameters.
      * 2. Records a copy of the order in OrderHistory.
-     * 3. Adds the stop order to the order book for future triggering.
+     * 3. Adds the stop order to the order book of the requested symbol for future triggering.
      * 4. Returns failure if the order could not be added.
      * 
      * @param currentUser The currently logged-in user (thread-local).
      * @param req The stop order request containing order details.
-     * @return OperationResponse2 with the generated order ID, or -1 if adding failed.
+     * @return OperationResponse2 with the generated order ID, or -1 if adding failed, the symbol is unknown
+     *         or no order ID could be issued.
      */
     private static OperationResponse2 processInsertStopOrder(MutableString currentUser, InsertStopOrderRequest req) {
         
         String type = req.getValues().getType(); 
         int size = req.getValues().getSize();
         int stopPrice = req.getValues().getStopPrice();
+        
+        // Reject unknown symbols (no symbol means the default one)
+        OrderBook book = OrderBook.getInstance(req.getValues().getSymbol());
+        if (book == null) {
+            return new OperationResponse2(-1);
+        }
 
 
         // Construct StopOrder
-        int orderId = OrderIdGenerator.getNextOrderId();
+        int orderId = nextOrderId();
+        if (orderId < 0) {
+            return new OperationResponse2(-1);
+        }
         long timestamp = System.currentTimeMillis()/1000;
         StopOrder order = new StopOrder(orderId, currentUser.getValue(), type, size, timestamp, stopPrice);
 
@@ -536,7 +666,13 @@ public class ServerMain {
         OrderHistory.addOrder(OrderUtils.copyOrder(order));
 
         // Try to add into the order book
-        boolean success = OrderBook.getInstance().addStopOrder(order);
+        boolean success;
+        try {
+        	success = book.addStopOrder(order);
+        } catch (JournalFailedException e) {
+        	System.err.println("[Main] Order " + orderId + " rejected: " + e.getMessage());
+        	success = false;
+        }
         if (!success) {
             return new OperationResponse2(-1); // failed
         }
@@ -551,35 +687,69 @@ public class ServerMain {
      *
      * The cancellation logic follows these steps:
      *
+     * 0. An ID that was never issued (Bloom filter of OrderIdGenerator, no false negatives) is
+     *    answered "Order does not exist" at once; only probable IDs go through the steps below.
+     *
      * 1. The method first looks for the order in activeOrders (a map in OrderBook 
-     *    which contains all LimitOrder and StopOrder, regardless traded or not).
+     *    which contains the LimitOrder and StopOrder resting in the book):
+     *    in the book of the requested symbol, or in every book when no symbol is given
+     *    (order IDs are global, so at most one book has it).
      *
      * 2. If the order is found:
      *      1. It checks whether the order belongs to the requesting user;
      *      2. If the order has already been fully executed (size = 0), it cannot be canceled;
      *      3. If the order is not traded fully, it attempts to remove it from the order book;
-     *      4. If the removal fails, the order has likely already been canceled.
+     *      4. If the removal fails, the order has just left the book: its final status tells
+     *         whether it was executed or canceled;
+     *      5. If the journal of the book failed, the cancel is rejected ("Order book unavailable").
+     *
+     * 3. If the order is not found in activeOrders, the method looks for its final status in
+     *    the cold tier of the books (OrderBook.getFinalStatus()): orders that were fully executed,
+     *    triggered or canceled are moved there. The owner is checked against OrderHistory,
+     *    then the answer is the same as for step 2 ("finalized" or "cancelled already").
+     *    While the order history is still loading at startup, an order it does not hold yet
+     *    is answered "Order history still loading": its owner cannot be checked.
      *
-     * 3. If the order is not found in activeOrders:
-     *      1. The method looks for it in OrderHistory:
-     *        According to the current design, an order present in OrderHistory 
-     *        but missing from activeOrders is **necessarily a MarketOrder**, because:
-     *          1. All LimitOrder and StopOrder are added to activeOrders at creation time;
-     *          2. The system **never removes** orders from activeOrders, even after full execution;
-     *          3. MarketOrders are **never added** to activeOrders, but only recorded in OrderHistory;
+     * 4. Otherwise, the method looks for it in OrderHistory:
+     *        an order present in OrderHistory but in no book is **necessarily a MarketOrder**,
+     *        because MarketOrders are **never added** to the books, but only recorded in OrderHistory;
      *
      *        => Therefore, if the order is found only in OrderHistory, the system directly returns a message
      *           indicating that MarketOrders cannot be canceled.
      *
-     * 4. If the order is not found in either activeOrders or OrderHistory, 
-     *    the method concludes that the order does not exist.
+     * 5. If the order is not found anywhere, the method concludes that the order does not exist.
      */
     private static OperationResponse1 processCancelOrder(MutableString currentUser, CancelOrderRequest req) {
     	
         int orderId = req.getValues().getOrderId();
+        String symbol = req.getValues().getSymbol();
+
+        OrderBook book = null;
+        if (symbol != null) {
+        	book = OrderBook.getInstance(symbol);
+        	if (book == null) {
+        		return new OperationResponse1(101, "Unknown symbol");
+        	}
+        }
+        
+        // IDs that were never issued are answered by the Bloom filter, without touching any book or file
+        if (!OrderIdGenerator.mightBeIssued(orderId)) {
+        	return new OperationResponse1(101, "Order does not exist");
+        }
 
         // Check if the order exists in activeOrders
-        Order order = OrderBook.getInstance().getActiveOrder(orderId);
+        Order order = null;
+        if (book != null) {
+        	order = book.getActiveOrder(orderId);
+        } else {
+        	for (OrderBook b : OrderBook.getInstances()) {
+        		order = b.getActiveOrder(orderId);
+        		if (order != null) {
+        			book = b;
+        			break;
+        		}
+        	}
+        }
         
         if (order != null) {
         	// Check if order belongs to the current user
@@ -594,19 +764,46 @@ public class ServerMain {
             }
 
             // Remove from order book
-            boolean removed = OrderBook.getInstance().removeOrderFromBook(order);
+            boolean removed;
+            try {
+            	removed = book.removeOrderFromBook(order);
+            } catch (JournalFailedException e) {
+            	System.err.println("[Main] Cancel of order " + orderId + " rejected: " + e.getMessage());
+            	return new OperationResponse1(101, "Order book unavailable");
+            }
             if (removed) {
                 return new OperationResponse1(100, "OK");
             } else {
-                return new OperationResponse1(101, "Order has been cancelled already");
+                return finalStatusResponse(book.getFinalStatus(orderId));
             }
         }
 
-        // Not found in activeOrders, check the order history 
+        // Not in any book any more: look for its final status in the cold tier
+        byte status = ColdOrderIndex.UNKNOWN;
+        for (OrderBook b : symbol != null ? Collections.singletonList(book) : OrderBook.getInstances()) {
+        	status = b.getFinalStatus(orderId);
+        	if (status != ColdOrderIndex.UNKNOWN) break;
+        }
+        if (status != ColdOrderIndex.UNKNOWN) {
+        	// The owner is in the order history; the status is only told to the owner
+        	Order historyOrder = OrderHistory.getOrder(orderId);
+        	if (historyOrder == null && !OrderHistory.isLoaded()) {
+        		return new OperationResponse1(101, "Order history still loading, try again later");
+        	}
+        	if (historyOrder == null || !historyOrder.getUsername().equals(currentUser.getValue())) {
+        		return new OperationResponse1(101, "Order belongs to a different user");
+        	}
+        	return finalStatusResponse(status);
+        }
+
+        // Not found in the books, check the order history 
         Order historyOrder = OrderHistory.getOrder(orderId);
         if (historyOrder != null) {
             return new OperationResponse1(101, "Order is a Market Order cannot be cancelled");
         }
+        if (!OrderHistory.isLoaded()) {
+        	return new OperationResponse1(101, "Order history still loading, try again later");
+        }
 
         // This order does not exist at all
         return new OperationResponse1(101, "Order does not exist");
@@ -614,23 +811,69 @@ public class ServerMain {
     }
 
 
+    // Answer to the cancel of an order that has left its book
+    private static OperationResponse1 finalStatusResponse(byte status) {
+    	
+    	if (status == ColdOrderIndex.FINALIZED) {
+    		return new OperationResponse1(101, "Order has already been finalized");
+    	}
+    	return new OperationResponse1(101, "Order has been cancelled already");
+    	
+    }
+
+
     /**
      * Processes the request to retrieve price history for a given month.
      * 
-     * 1. Attempts to read trade data from our trade history file.
+     * 1. Reads the daily price data of the requested symbol and month (format: "MMYYYY") from the
+     *    rollups of the trade log, kept up to date as trades are recorded (one lookup per day).
      * 2. If no data is found, falls back to reading "storicoOrdini.json".
-     * 3. Filters trades by the requested month (format: "MMYYYY") and aggregates daily price data.
+     * 3. The serialized response is cached (PriceHistoryCache) until a trade changes the month,
+     *    which never happens once the month has ended: repeated requests are answered as is.
      * 
-     * @param req The request containing the target month.
-     * @return GetPriceHistoryResponse with the aggregated data or an error message.
+     * @param req The request containing the target month and optional symbol.
+     * @return The JSON of the GetPriceHistoryResponse, or the response itself if it is not cached.
      */
-    private static GetPriceHistoryResponse processGetPriceHistory(GetPriceHistoryRequest req) {
+    private static Object processGetPriceHistory(GetPriceHistoryRequest req) {
     	
         String month = req.getValues().getMonth(); // e.g. "042025"
-        Map<String, DailyPriceData> resultMap = extractTradesFromFile(ServerConfig.getTradeHistoryFile(), month);
+        OrderBook book = OrderBook.getInstance(req.getValues().getSymbol());
+        if (book == null) {
+            return new GetPriceHistoryResponse(101, "Unknown symbol", null);
+        }
+        String symbol = book.getSymbol();
+        
+        YearMonth yearMonth;
+        try {
+            yearMonth = month == null ? null : YearMonth.parse(month, DateTimeFormatter.ofPattern("MMyyyy"));
+        } catch (DateTimeParseException e) {
+            yearMonth = null;
+        }
+        if (yearMonth == null) {
+            return new GetPriceHistoryResponse(101, "We don't have data related to the month you have indicated", null);
+        }
+        
+        // The version is read first: a response built from newer data is only rebuilt sooner
+        long version = TradeHistory.getMonthVersion(yearMonth);
+        String cached = priceHistoryCache.get(yearMonth, symbol, version);
+        if (cached != null) {
+            return cached;
+        }
+        String json = gson.toJson(buildPriceHistoryResponse(yearMonth, symbol));
+        priceHistoryCache.put(yearMonth, symbol, version, json);
+        return json;
+        
+    }
+    
+    
+    // Price history response of a month, from the rollups or else from "storicoOrdini.json"
+    private static GetPriceHistoryResponse buildPriceHistoryResponse(YearMonth yearMonth, String symbol) {
+    	
+        String month = yearMonth.format(DateTimeFormatter.ofPattern("MMyyyy"));
+        Map<String, DailyPriceData> resultMap = TradeHistory.getDailyPrices(yearMonth, symbol);
         
         if (resultMap.isEmpty()) {
-            resultMap = extractTradesFromFile("storicoOrdini.json", month);
+            resultMap = extractTradesFromFile("storicoOrdini.json", month, symbol);
         }
 
         if (resultMap.isEmpty()) {
@@ -643,16 +886,69 @@ public class ServerMain {
     
     
     
+    /**
+     * Processes the request to retrieve the candles of a symbol at one resolution.
+     * 
+     * 1. Validates the symbol, the resolution (1s, 1m, 5m, 1h, 1d) and the range [from, to)
+     *    (epoch seconds).
+     * 2. Reads the candles kept by the trade history (recent ones in memory, older ones from
+     *    their file), never the trade log itself.
+     * 3. Returns at most "candle_max_results" candles, the oldest first, and flags the rest.
+     * 
+     * @param req The request containing the symbol, resolution and range.
+     * @return GetCandlesResponse with the candles or an error message.
+     */
+    private static GetCandlesResponse processGetCandles(GetCandlesRequest req) {
+    	
+        GetCandlesRequest.Values values = req.getValues();
+        if (values == null) {
+            return new GetCandlesResponse(101, "Missing values", null, false);
+        }
+        OrderBook book = OrderBook.getInstance(values.getSymbol());
+        if (book == null) {
+            return new GetCandlesResponse(101, "Unknown symbol", null, false);
+        }
+        int resolution = CandleEngine.resolutionOf(values.getResolution());
+        if (resolution < 0) {
+            return new GetCandlesResponse(101, "Unknown resolution (1s, 1m, 5m, 1h or 1d)", null, false);
+        }
+        if (values.getFrom() < 0 || values.getTo() <= values.getFrom()) {
+            return new GetCandlesResponse(101, "Invalid time range", null, false);
+        }
+
+        int max = Math.max(1, ServerConfig.getCandleMaxResults());
+        List<Candle> candles;
+        try {
+            // One more than the limit tells whether the range holds more
+            candles = TradeHistory.getCandles(book.getSymbol(), resolution, values.getFrom(), values.getTo(), max + 1);
+        } catch (IOException e) {
+            System.err.println("[Main] Error reading candles:" + e.getMessage());
+            return new GetCandlesResponse(101, "Candles unavailable", null, false);
+        }
+        boolean truncated = candles.size() > max;
+        if (truncated) {
+            candles = candles.subList(0, max);
+        }
+        return new GetCandlesResponse(100, "OK", candles, truncated);
+        
+    }
+    
+    
+    
     /**
      * Extracts trade data from a JSON file and groups it by day for a specific month.
-     * Only trades whose timestamp falls within the specified month (format MMYYYY) are included.
+     * Only trades of the given symbol whose timestamp falls within the specified month (format MMYYYY) are included.
+     * Trades without a symbol (recorded before multi-symbol support) belong to the default symbol.
      *
      * @param filename the path to the JSON file containing trade data
      * @param month    the target month in MMYYYY format (e.g., "042025" for April 2025)
+     * @param symbol   the traded symbol
      * @return a map where each key is a day of the month (two-digit string),
      *         and the value is a DailyPriceData object containing trades for that day
      */
-    private static Map<String, DailyPriceData> extractTradesFromFile(String filename, String month) {
+    private static Map<String, DailyPriceData> extractTradesFromFile(String filename, String month, String symbol) {
+        
+        String defaultSymbol = ServerConfig.getDefaultSymbol();
     	
         Map<String, DailyPriceData> resultMap = new TreeMap<>();
         
@@ -669,6 +965,7 @@ public class ServerMain {
                     while (reader.hasNext()) {
                         long ts = 0;
                         int price = 0;
+                        String tradeSymbol = defaultSymbol;
                         reader.beginObject();
                         while (reader.hasNext()) {
                             String field = reader.nextName();
@@ -676,12 +973,18 @@ public class ServerMain {
                                 ts = reader.nextLong();// timestamp in seconds
                             } else if ("price".equals(field)) {
                                 price = reader.nextInt();// trade price
+                            } else if ("symbol".equals(field)) {
+                                tradeSymbol = reader.nextString();// traded symbol
                             } else {
                                 reader.skipValue();// ignore other fields
                             }
                         }
                         reader.endObject();
                         
+                        // Only include trades of the requested symbol
+                        if (!symbol.equals(tradeSymbol)) continue;
+                        
+
                         // Convert timestamp to LocalDateTime	
                         LocalDateTime time = Instant.ofEpochSecond(ts)
                                 .atZone(ZoneId.systemDefault())
@@ -0,0 +1,21 @@
+package final_project;
+
+
+/**
+ * Side of an order, used by the matcher instead of comparing the "type" strings.
+ *
+ * Orders keep their "type" string ("bid" / "ask") for persistence and the JSON wire format;
+ * the Side is derived from it once and cached in the order (see Order.getSide()).
+ */
+
+public enum Side {
+
+    BID,
+    ASK;
+
+
+    // "bid" (any case) is BID, anything else is ASK, as the order book has always treated it
+    public static Side of(String type) {
+        return "bid".equalsIgnoreCase(type) ? BID : ASK;
+    }
+}
@@ -0,0 +1,143 @@
+package final_project;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * SlabOrderIndex maps order IDs to their OrderSlab slot, off-heap.
+ *
+ * 1. Open addressing with linear probing over a direct ByteBuffer of (orderId, slot) int pairs,
+ *    so the index adds no heap object per order (no boxed keys, no map entries).
+ * 2. Order IDs are positive; 0 marks an empty bucket.
+ * 3. The table doubles when it is more than half full.
+ * 4. remove() uses backward-shift deletion: the entries following the removed one in its
+ *    probe run are moved back into the hole when their home bucket allows it, so there are
+ *    no tombstones and lookups never scan the entries of orders that left the book.
+ *
+ * Not thread-safe: always accessed under the order book lock (or on the matching thread).
+ */
+
+public class SlabOrderIndex {
+
+    private ByteBuffer table;
+    private int mask;
+    private int count;
+
+
+    public SlabOrderIndex(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity - 1)) << 1);
+    }
+
+
+    private void allocate(int buckets) {
+        table = ByteBuffer.allocateDirect(buckets * 8).order(ByteOrder.nativeOrder());
+        mask = buckets - 1;
+    }
+
+
+    // Multiplying by an odd constant spreads the (mostly sequential) order IDs over the table
+    private static int bucket(int orderId, int mask) {
+        return (orderId * 0x9E3779B9) & mask;
+    }
+
+
+
+    public void put(int orderId, int slot) {
+
+        if (orderId <= 0) {
+            throw new IllegalArgumentException("Invalid order ID: " + orderId);
+        }
+        if (count * 2 >= mask + 1) {
+            resize();
+        }
+        if (insert(table, mask, orderId, slot)) {
+            count++;
+        }
+
+    }
+
+
+    // true if a new key was added
+    private static boolean insert(ByteBuffer table, int mask, int orderId, int slot) {
+
+        int i = bucket(orderId, mask);
+        while (true) {
+            int key = table.getInt(i << 3);
+            if (key == 0 || key == orderId) {
+                table.putInt(i << 3, orderId);
+                table.putInt((i << 3) + 4, slot);
+                return key == 0;
+            }
+            i = (i + 1) & mask;
+        }
+
+    }
+
+
+    private void resize() {
+
+        ByteBuffer old = table;
+        int oldBuckets = mask + 1;
+        allocate(oldBuckets * 2);
+        for (int i = 0; i < oldBuckets; i++) {
+            int key = old.getInt(i << 3);
+            if (key != 0) {
+                insert(table, mask, key, old.getInt((i << 3) + 4));
+            }
+        }
+
+    }
+
+
+
+    // Removes the order; false if unknown
+    public boolean remove(int orderId) {
+
+        if (orderId <= 0) return false;
+        int hole = bucket(orderId, mask);
+        while (true) {
+            int key = table.getInt(hole << 3);
+            if (key == orderId) break;
+            if (key == 0) return false;
+            hole = (hole + 1) & mask;
+        }
+
+        // An entry can fill the hole if its home bucket is not between the hole and itself
+        for (int i = (hole + 1) & mask; ; i = (i + 1) & mask) {
+            int key = table.getInt(i << 3);
+            if (key == 0) break;
+            int home = bucket(key, mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table.putInt(hole << 3, key);
+                table.putInt((hole << 3) + 4, table.getInt((i << 3) + 4));
+                hole = i;
+            }
+        }
+        table.putInt(hole << 3, 0);
+        count--;
+        return true;
+
+    }
+
+
+
+    // Slot of the order, or OrderSlab.NONE if unknown
+    public int get(int orderId) {
+
+        if (orderId <= 0) return OrderSlab.NONE;
+        int i = bucket(orderId, mask);
+        while (true) {
+            int key = table.getInt(i << 3);
+            if (key == orderId) return table.getInt((i << 3) + 4);
+            if (key == 0) return OrderSlab.NONE;
+            i = (i + 1) & mask;
+        }
+
+    }
+
+
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,230 @@
+package final_project;
+
+
+/**
+ * SlabPriceLadder is one side of an off-heap order book: price levels whose FIFO queues
+ * link OrderSlab slot indices instead of Order objects.
+ *
+ * 1. Levels are indexed by the same LevelTree as TreePriceLadder (sorted map, levels linked
+ *    in priority order, emptied levels dropped lazily and a few kept for new prices), so
+ *    bestLevel() and nextLevel() allocate nothing. The heap holds one Level per price,
+ *    not per order.
+ * 2. Each Level keeps head / tail slots, its total quantity and the quantity of each user,
+ *    and the ladder keeps the totals of the whole side, all updated on add, fill and remove
+ *    (the same aggregated depth as PriceLadder).
+ * 3. Resting slots are unlinked in O(1) through their prev / next columns.
+ *
+ * Not thread-safe: always accessed under the order book lock (or on the matching thread).
+ */
+
+public class SlabPriceLadder {
+
+    // One price of the ladder
+    public static final class Level extends LevelTree.Node<Level> implements OrderMatcher.Level {
+
+        private int head = OrderSlab.NONE;
+        private int tail = OrderSlab.NONE;
+        private long totalQuantity;
+        private final UserQuantities userQuantity = new UserQuantities();
+
+        private Level(int price) {
+            super(price);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return head == OrderSlab.NONE;
+        }
+
+        // Slot with the highest time priority, or OrderSlab.NONE
+        public int peek() {
+            return head;
+        }
+
+        public long getTotalQuantity() {
+            return totalQuantity;
+        }
+
+        public long getUserQuantity(String username) {
+            return userQuantity.get(username);
+        }
+    }
+
+
+    private final OrderSlab slab;
+    private final UserDirectory users;
+    private final boolean descending;
+    private final LevelTree<Level> levels;
+
+    private int orderCount;
+    private long totalQuantity;
+    private final UserQuantities userQuantity = new UserQuantities();
+
+
+    /**
+     * @param descending true for a bid side (highest price first),
+     *                   false for an ask side (lowest price first).
+     */
+    public SlabPriceLadder(OrderSlab slab, UserDirectory users, boolean descending) {
+
+        this.slab = slab;
+        this.users = users;
+        this.descending = descending;
+        this.levels = new LevelTree<>(descending, Level::new);
+
+    }
+
+
+
+    // Appends the slot to the tail of the level of its price
+    public void add(int slot) {
+
+        Level level = levels.levelFor(slab.getPrice(slot));
+        slab.setPrev(slot, level.tail);
+        slab.setNext(slot, OrderSlab.NONE);
+        if (level.tail == OrderSlab.NONE) {
+            level.head = slot;
+        } else {
+            slab.setNext(level.tail, slot);
+        }
+        level.tail = slot;
+        slab.setResting(slot, true);
+
+        orderCount++;
+        addQuantity(level, slot, slab.getSize(slot));
+
+    }
+
+
+
+    /**
+     * Unlinks a resting slot in O(1) (plus the lookup of its level).
+     *
+     * @return true if the slot was resting in this ladder.
+     */
+    public boolean remove(int slot) {
+
+        if (!slab.isResting(slot)) return false;
+        Level level = levels.get(slab.getPrice(slot));
+        if (level == null) return false;
+        removeFromLevel(level, slot);
+        return true;
+
+    }
+
+
+
+    // Unlinks a slot reached while walking a level
+    public void removeFromLevel(Level level, int slot) {
+
+        int prev = slab.getPrev(slot);
+        int next = slab.getNext(slot);
+        if (prev == OrderSlab.NONE) {
+            level.head = next;
+        } else {
+            slab.setNext(prev, next);
+        }
+        if (next == OrderSlab.NONE) {
+            level.tail = prev;
+        } else {
+            slab.setPrev(next, prev);
+        }
+        slab.setPrev(slot, OrderSlab.NONE);
+        slab.setNext(slot, OrderSlab.NONE);
+        slab.setResting(slot, false);
+
+        orderCount--;
+        addQuantity(level, slot, -slab.getSize(slot));
+
+    }
+
+
+
+    // Reduces a resting slot after a trade; remove it with removeFromLevel() once its size reaches 0
+    public void fill(Level level, int slot, int tradedSize) {
+
+        slab.setSize(slot, slab.getSize(slot) - tradedSize);
+        addQuantity(level, slot, -tradedSize);
+
+    }
+
+
+
+    // Applies a trade to a resting slot found by its price (journal replay), removing it at size 0
+    public void reduce(int slot, int tradedSize) {
+
+        if (!slab.isResting(slot)) return;
+        Level level = levels.get(slab.getPrice(slot));
+        fill(level, slot, tradedSize);
+        if (slab.getSize(slot) == 0) {
+            removeFromLevel(level, slot);
+        }
+
+    }
+
+
+
+    private void addQuantity(Level level, int slot, long delta) {
+
+        String username = users.nameOf(slab.getUser(slot));
+        level.totalQuantity += delta;
+        level.userQuantity.add(username, delta);
+        totalQuantity += delta;
+        userQuantity.add(username, delta);
+
+    }
+
+
+
+    // Next slot after the given one in time priority, or OrderSlab.NONE
+    public int next(int slot) {
+        return slab.getNext(slot);
+    }
+
+
+
+    // Best non-empty level, or null
+    public Level bestLevel() {
+        return levels.first();
+    }
+
+
+
+    // Next non-empty level after the given one in priority order, or null
+    public Level nextLevel(Level level) {
+        return levels.next(level);
+    }
+
+
+
+    // Best price, or -1 if the ladder is empty
+    public int getBestPrice() {
+
+        Level level = bestLevel();
+        return level == null ? -1 : level.getPrice();
+
+    }
+
+
+
+    // true if price "a" has a higher priority than price "b" on this side
+    public boolean isBetter(int a, int b) {
+        return descending ? a > b : a < b;
+    }
+
+    public boolean isEmpty() {
+        return orderCount == 0;
+    }
+
+    public int size() {
+        return orderCount;
+    }
+
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public long getUserQuantity(String username) {
+        return userQuantity.get(username);
+    }
+}
@@ -0,0 +1,158 @@
+package final_project;
+
+import java.io.IOException;
+
+
+/**
+ * Snapshotter writes the snapshots of one OrderBook on a background thread, so matching
+ * never stops while the book is serialized.
+ *
+ * 1. The book only requests a snapshot up to a journal sequence number (request()), which
+ *    costs nothing under the book lock; requests arriving while a snapshot is being written
+ *    are merged into the next one.
+ * 2. The snapshot thread waits until the journal is durable up to the requested sequence
+ *    number (whatever the "durability" setting), reads the previous snapshot, then tails the
+ *    journal from where it ended, applying each record up to that number (see BookSnapshot).
+ *    The journal already holds every change of the book, so this view is consistent at that
+ *    sequence number without copying or freezing the live book.
+ * 3. The orders that left the book meanwhile are not in the new snapshot: their final status
+ *    is appended to the book's ColdOrderIndex log (forced) before the snapshot is written.
+ * 4. The new snapshot records the sequence number and the journal position it ends at,
+ *    then the segments before that position are deleted: they are all in the snapshot.
+ * 5. awaitCompleted() waits until a requested snapshot has been written (or has failed).
+ *
+ * Thread-safe: request() and awaitCompleted() may be called from any thread.
+ */
+
+public class Snapshotter {
+
+    private final String symbol;
+    private final String filePath;
+    private final Journal journal;
+    private final JournalFlusher flusher;
+    private final ColdOrderIndex coldOrders;
+
+    // Highest requested and highest completed sequence numbers, guarded by monitor
+    private final Object monitor = new Object();
+    private long requested;
+    private long completed;
+
+    private final Thread thread;
+
+
+    /**
+     * @param symbol     Symbol of the book (for the log).
+     * @param filePath   Snapshot file of the book.
+     * @param journal    Journal of the book.
+     * @param flusher    Makes the journal durable; only durable records go into a snapshot.
+     * @param coldOrders Cold tier of the book, receiving the orders dropped from the snapshot.
+     * @param threadName Name of the snapshot thread.
+     */
+    public Snapshotter(String symbol, String filePath, Journal journal, JournalFlusher flusher, ColdOrderIndex coldOrders,
+            String threadName) {
+
+        this.symbol = symbol;
+        this.filePath = filePath;
+        this.journal = journal;
+        this.flusher = flusher;
+        this.coldOrders = coldOrders;
+
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true); // Automatically exit when the main program is closed
+        this.thread.start();
+
+    }
+
+
+
+    // Asks for a snapshot covering the journal up to the given sequence number (does not wait)
+    public void request(long sequence) {
+
+        synchronized (monitor) {
+            if (sequence > requested) {
+                requested = sequence;
+                monitor.notifyAll();
+            }
+        }
+
+    }
+
+
+
+    // Waits until a snapshot up to the given sequence number has been attempted
+    public void awaitCompleted(long sequence) {
+
+        synchronized (monitor) {
+            while (completed < sequence) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+    }
+
+
+
+    // Snapshot thread: one snapshot per batch of requests
+    private void run() {
+
+        while (true) {
+
+            long target;
+            synchronized (monitor) {
+                while (requested <= completed) {
+                    try {
+                        monitor.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                target = requested;
+            }
+
+            try {
+                write(target);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[Main] Failed to persist Order Book " + symbol + ":" + e.getMessage());
+            }
+
+            synchronized (monitor) {
+                completed = target;
+                monitor.notifyAll();
+            }
+        }
+
+    }
+
+
+
+    // Previous snapshot + journal records up to target, written to the snapshot file
+    private void write(long target) throws IOException {
+
+        BookSnapshot snapshot = BookSnapshot.read(filePath);
+        if (snapshot == null) snapshot = new BookSnapshot();
+        if (snapshot.getSequence() >= target) return;
+
+        // A crash may still erase non-durable records, and new ones would then be appended
+        // before the position this snapshot records
+        flusher.awaitForced(target);
+
+        JournalReader reader = new JournalReader(journal.getPath(), snapshot.getSegment(), snapshot.getPosition());
+        while (snapshot.getSequence() < target) {
+            if (reader.poll(snapshot::apply, 1) == 0) {
+                throw new IOException("journal ends before record " + target
+                        + (reader.isCorrupt() ? " (corrupt record)" : ""));
+            }
+        }
+        snapshot.setJournalPosition(reader.getSegment(), reader.getPosition());
+        coldOrders.append(snapshot.getEvicted());
+        snapshot.write(filePath);
+
+        journal.deleteSegmentsBefore(snapshot.getSegment());
+
+    }
+}
@@ -0,0 +1,115 @@
+package final_project;
+
+import java.util.List;
+
+
+/**
+ * StopTriggerIndex keeps the resting stop orders of the order book, keyed by stop (trigger) price.
+ *
+ * 1. Bid stops trigger when the best ask price >= stop price. They are kept in ascending
+ *    stop price, so the stops crossed first by a rising market come first.
+ * 2. Ask stops trigger when the best bid price <= stop price. They are kept in descending
+ *    stop price, so the stops crossed first by a falling market come first.
+ * 3. drainTriggered() removes every stop crossed by the current prices in one pass over the
+ *    crossed levels only: it stops at the first level that is not crossed, so untriggered
+ *    stops are never visited.
+ * 4. Stops sharing a stop price trigger in arrival (FIFO) order, and can be cancelled in O(1)
+ *    through their level handle (see PriceLadder).
+ *
+ * Not thread-safe: always accessed under the order book lock.
+ */
+
+public class StopTriggerIndex {
+
+    private final PriceLadder<StopOrder> bidStops = new TreePriceLadder<>(false);
+    private final PriceLadder<StopOrder> askStops = new TreePriceLadder<>(true);
+
+
+    public void add(StopOrder order) {
+
+        if (order.getSide() == Side.BID) {
+            bidStops.add(order, order.getStopPrice());
+        } else {
+            askStops.add(order, order.getStopPrice());
+        }
+
+    }
+
+
+    // Unlinks a resting stop order in O(1); false if it is not resting any more
+    public boolean remove(StopOrder order) {
+
+        return order.getSide() == Side.BID
+                ? bidStops.remove(order)
+                : askStops.remove(order);
+
+    }
+
+
+
+    /**
+     * Removes all stop orders triggered by the given prices and appends them to "out",
+     * ask stops first, each side in trigger order.
+     *
+     * @param bestBid Current best bid price, or -1 if there are no bids.
+     * @param bestAsk Current best ask price, or -1 if there are no asks.
+     * @param out     Receives the triggered stop orders (still holding their size).
+     * @return the number of triggered stop orders.
+     */
+    public int drainTriggered(int bestBid, int bestAsk, List<StopOrder> out) {
+
+        int count = 0;
+
+        if (bestBid != -1) {
+            for (PriceLevel<StopOrder> level = askStops.bestLevel();
+                 level != null && bestBid <= level.getPrice();
+                 level = askStops.bestLevel()) {
+                count += drainLevel(askStops, level, out);
+            }
+        }
+
+        if (bestAsk != -1) {
+            for (PriceLevel<StopOrder> level = bidStops.bestLevel();
+                 level != null && bestAsk >= level.getPrice();
+                 level = bidStops.bestLevel()) {
+                count += drainLevel(bidStops, level, out);
+            }
+        }
+
+        return count;
+
+    }
+
+
+    private int drainLevel(PriceLadder<StopOrder> ladder, PriceLevel<StopOrder> level, List<StopOrder> out) {
+
+        int count = 0;
+        for (StopOrder order = level.peek(); order != null; order = level.peek()) {
+            ladder.removeFromLevel(level, order);
+            out.add(order);
+            count++;
+        }
+        return count;
+
+    }
+
+
+
+    public boolean isEmpty() {
+        return bidStops.isEmpty() && askStops.isEmpty();
+    }
+
+    public int size() {
+        return bidStops.size() + askStops.size();
+    }
+
+    // Resting bid stops in trigger order (used for persistence)
+    public List<StopOrder> getBidStops() {
+        return bidStops.toList();
+    }
+
+    // Resting ask stops in trigger order (used for persistence)
+    public List<StopOrder> getAskStops() {
+        return askStops.toList();
+    }
+}
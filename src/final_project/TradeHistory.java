@@ -1,98 +1,745 @@
 package final_project;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 
 /**
- * TradeHistory uses a LinkedBlockingQueue to hold trades in memory and 
- * saves them to a JSON file after each update.
- * 
- * Thread safety is ensured via synchronization on the 'trades' queue.
+ * TradeHistory records every execution in an append-only log, rolled by day.
+ *
+ * 1. The log is a directory ("trade_log_dir" in the config) of day segments "YYYY-MM-DD.jsonl",
+ *    one JSON line per TradeInfo. The day is the local date of the trade timestamp, the same
+ *    one getPriceHistory groups trades by.
+ * 2. addTrades() appends one line per execution to the segment of its day, so the cost of
+ *    a trade does not depend on the size of the history. The segment of the current day
+ *    stays open; a trade of another day closes it and opens the next one.
+ * 3. Readers ask for a time range (see forEachTrade()) and only open the segments of its
+ *    days, nothing is kept in memory. Each segment has a time index of its blocks of lines
+ *    (TradeSegmentIndex, "YYYY-MM-DD.idx"): only the blocks that overlap the range are read.
+ *    The blocks a crash left unindexed are indexed again on startup.
+ * 4. A line torn by a crash is cut off when its segment is opened again for appending,
+ *    and skipped by readers.
+ * 5. The JSON file of older versions ("trade_history" in the config) is moved into
+ *    day segments once on startup, then renamed to "trade_history.json.migrated". The log
+ *    holds a marker file ("legacy.migrated") once the migration is complete; a legacy file
+ *    found while the marker is missing is migrated, even if the log already has segments.
+ * 6. Each appended trade is also folded into the daily price statistics (TradeRollups) that
+ *    getDailyPrices() answers from. The rollups are saved every "trade_rollup_save_records"
+ *    trades, when the day changes and on shutdown; on startup, each day segment is read again
+ *    only from the offset the saved rollups cover.
+ * 7. Each appended trade also updates the candles of its symbol (CandleEngine), checkpointed
+ *    with the rollups. On startup, the log is replayed into them from the oldest candle
+ *    their files do not hold.
+ * 8. load() builds the rollups, indexes and candles without the lock. Until it swaps them in,
+ *    addTrades() only queues the trades in memory (nothing writes to the log meanwhile),
+ *    and the readers of the rollups and candles wait; the queued trades are then appended.
+ *
+ * Thread safety: appends, rollups and candles are guarded by a private lock; forEachTrade() needs no lock.
  */
 
 public class TradeHistory {
-	
-    private static final LinkedBlockingQueue<TradeInfo> trades = new LinkedBlockingQueue<>();
-    private static final String FILE_NAME = ServerConfig.getTradeHistoryFile();
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private static final String LEGACY_FILE = ServerConfig.getTradeHistoryFile();
+    private static final Path LOG_DIR = Paths.get(ServerConfig.getTradeLogDir());
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String MIGRATED_MARKER = "legacy.migrated";
+    private static final int INDEX_BLOCK_SIZE = Math.max(1, ServerConfig.getTradeIndexBlockSize());
+    private static final String ROLLUP_FILE = ServerConfig.getTradeRollupFile();
+    private static final int ROLLUP_SAVE_RECORDS = Math.max(1, ServerConfig.getTradeRollupSaveRecords());
+    private static final Gson gson = new Gson();
+
+    // Segment being appended to, its day, its size and its index, guarded by lock
+    private static final Object lock = new Object();
+    private static OutputStream out;
+    private static LocalDate openDay;
+    private static long openBytes;
+    private static TradeSegmentIndex openIndex;
+
+    // Daily statistics and trades folded since they were last saved, guarded by lock
+    private static TradeRollups rollups = new TradeRollups();
+    private static int unsavedRecords;
+
+    // Candles of every symbol, fed once load() has replayed the log into them, guarded by lock
+    private static CandleEngine candles = new CandleEngine(ServerConfig.getCandleDir(), ServerConfig.getCandleRingSize());
+    private static boolean candlesLoaded;
+
+    // Set when load() has swapped its structures in; the trades added before, guarded by lock
+    private static boolean loaded;
+    private static final List<TradeInfo> pendingTrades = new ArrayList<>();
+    private static final List<byte[]> pendingLines = new ArrayList<>();
 
 
     /**
-     * Adds new trades from the tradeMap to the trade history and immediately persists to file.
-     * 
-     * Thread-safe: synchronized on the trades queue to ensure atomic "add and persist" operation.
+     * Appends the trades of the tradeMap to the log, one line per execution.
+     * Until load() is done, the lines are queued and appended by load().
+     *
+     * Thread-safe: the lines are serialized first, then appended holding the log lock.
      *
      * @param tradeMap Map of username to list of TradeInfo objects (trades to be recorded).
      */
     public static void addTrades(Map<String, List<TradeInfo>> tradeMap) {
-    	
-        	if (tradeMap.isEmpty()) return;
-        	synchronized (trades) {
-        	for (Map.Entry<String, List<TradeInfo>> entry : tradeMap.entrySet()) {
-                List<TradeInfo> tradeList = entry.getValue();
-                trades.addAll(tradeList);
-        	}
-        	 persist();
-        	}
-        
+
+        if (tradeMap.isEmpty()) return;
+
+        List<TradeInfo> trades = new ArrayList<>();
+        List<byte[]> lines = new ArrayList<>();
+        for (List<TradeInfo> tradeList : tradeMap.values()) {
+            for (TradeInfo trade : tradeList) {
+                trades.add(trade);
+                lines.add((gson.toJson(trade) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        synchronized (lock) {
+            if (!loaded) {
+                pendingTrades.addAll(trades);
+                pendingLines.addAll(lines);
+                return;
+            }
+            append(trades, lines);
+        }
+
+    }
+
+
+    // Appends serialized trades to their day segments, rollups and candles (must hold the lock)
+    private static void append(List<TradeInfo> trades, List<byte[]> lines) {
+
+        try {
+            for (int i = 0; i < trades.size(); i++) {
+                LocalDate day = dayOf(trades.get(i).getTimestamp());
+                if (out == null || !day.equals(openDay)) {
+                    openSegment(day);
+                }
+                out.write(lines.get(i));
+                openBytes += lines.get(i).length;
+                openIndex.add(trades.get(i).getTimestamp());
+                if (openBytes - openIndex.getIndexedEnd() >= INDEX_BLOCK_SIZE) {
+                    out.flush(); // the index never points past the segment
+                    openIndex.endBlock(openBytes);
+                }
+                rollups.add(day, trades.get(i));
+                rollups.setCovered(day, openBytes);
+                if (candlesLoaded) {
+                    candles.add(trades.get(i));
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to save trade history:" + e.getMessage());
+            // Reopened by the next append: its torn line is cut off and the day is folded again
+            closeSegment();
+        }
+        unsavedRecords += trades.size();
+        if (unsavedRecords >= ROLLUP_SAVE_RECORDS) {
+            saveRollups();
+        }
+
+    }
+
+
+
+    // Opens the segment of the given day for appending, closing the previous one
+    private static void openSegment(LocalDate day) throws IOException {
+
+        if (openDay != null) {
+            saveRollups(); // a new day: the previous one is complete
+        }
+        closeSegment();
+        Files.createDirectories(LOG_DIR);
+        File file = segmentPath(day).toFile();
+        cutTornLine(file);
+        if (syncDay(rollups, day, file)) {
+            unsavedRecords++;
+        }
+        openIndex = TradeSegmentIndex.open(indexPath(day), file.length());
+        indexTail(openIndex, file);
+        out = new BufferedOutputStream(new FileOutputStream(file, true));
+        openDay = day;
+        openBytes = file.length();
+
+    }
+
+
+    private static void closeSegment() {
+
+        if (out == null) return;
+        try {
+            out.close();
+            openIndex.endBlock(openBytes);
+        } catch (IOException e) {
+            System.err.println("[Main] Failed to close trade history segment:" + e.getMessage());
+        }
+        out = null;
+        openDay = null;
+        openIndex = null;
+
+    }
+
+
+
+    /**
+     * Brings the rollups of a day in line with its segment (holding the lock, or in load()
+     * on rollups not swapped in yet).
+     *
+     * 1. Folds the complete lines after the covered offset (trades of a previous run).
+     * 2. Starts the day over if the rollups cover more than the segment holds
+     *    (lines lost by a failed write or cut off as torn).
+     *
+     * @return true if the rollups of the day changed.
+     */
+    private static boolean syncDay(TradeRollups into, LocalDate day, File file) throws IOException {
+
+        long length = file.exists() ? file.length() : 0;
+        long covered = into.getCovered(day);
+        boolean reset = covered > length;
+        if (reset) {
+            into.reset(day);
+            covered = 0;
+        }
+        if (covered == length) return reset;
+
+        long[] synced = {covered};
+        try (FileChannel segment = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            readLines(segment, covered, length, (trade, end) -> {
+                if (trade != null) {
+                    into.add(day, trade);
+                }
+                synced[0] = end;
+            });
+        }
+        into.setCovered(day, synced[0]);
+        return true;
+
+    }
+
+
+
+    /**
+     * Indexes the complete lines of a segment after the last indexed block: ends a block each
+     * "trade_index_block_size" bytes, and leaves the rest in the block being built.
+     *
+     * @return Offset after the last complete line.
+     */
+    private static long indexTail(TradeSegmentIndex index, File file) throws IOException {
+
+        long[] indexed = {index.getIndexedEnd()};
+        if (!file.exists()) return indexed[0];
+        try (FileChannel segment = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            readLines(segment, indexed[0], segment.size(), (trade, end) -> {
+                if (trade != null) {
+                    index.add(trade.getTimestamp());
+                }
+                if (end - index.getIndexedEnd() >= INDEX_BLOCK_SIZE) {
+                    index.endBlock(end);
+                }
+                indexed[0] = end;
+            });
+        }
+        return indexed[0];
+
+    }
+
+
+
+    // Receives the trades read by readLines(), with the segment offset after their line
+    private interface LineConsumer {
+        void accept(TradeInfo trade, long end) throws IOException;
     }
 
 
     /**
-     * Persists the current trade history to a JSON file.
-     * 
-     * Only called from synchronized contexts, so no extra synchronization needed inside this method.
+     * Reads the complete lines of a segment between two offsets (a line torn by a crash is left
+     * for cutTornLine()). Lines that are not a valid trade are passed as null.
      */
-    private static void persist() {
-    	
-        Map<String, Object> wrapper = new HashMap<>();
-        wrapper.put("trades", new ArrayList<>(trades));
-        try (Writer writer = new FileWriter(FILE_NAME)) {
-            gson.toJson(wrapper, writer);
+    private static void readLines(FileChannel segment, long from, long to, LineConsumer consumer) throws IOException {
+
+        ByteBuffer chunk = ByteBuffer.allocate(65536);
+        byte[] bytes = chunk.array();
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        long position = from;
+        while (position < to) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), to - position));
+            int n = segment.read(chunk, position);
+            if (n <= 0) break;
+            int lineStart = 0;
+            for (int i = 0; i < n; i++) {
+                if (bytes[i] != '\n') continue;
+                line.write(bytes, lineStart, i - lineStart);
+                consumer.accept(parseTrade(line), position + i + 1);
+                line.reset();
+                lineStart = i + 1;
+            }
+            line.write(bytes, lineStart, n - lineStart);
+            position += n;
+        }
+
+    }
+
+
+    private static TradeInfo parseTrade(ByteArrayOutputStream line) {
+
+        if (line.size() == 0) return null;
+        try {
+            return gson.fromJson(line.toString(StandardCharsets.UTF_8), TradeInfo.class);
+        } catch (JsonParseException e) {
+            return null; // skipped, as by readers
+        }
+
+    }
+
+
+
+    // Saves the rollups and candles (must hold the lock); a failure only means more catching up on the next startup
+    private static void saveRollups() {
+
+        if (candlesLoaded) {
+            candles.checkpoint();
+        }
+        try {
+            rollups.write(ROLLUP_FILE);
+            unsavedRecords = 0;
         } catch (IOException e) {
-            System.err.println("[Main] Failed to save trade history:" + e.getMessage());
+            System.err.println("[Main] Failed to save trade rollups:" + e.getMessage());
         }
-        
+
     }
 
 
 
     /**
-     * Loads existing trade history from the JSON file on startup.
-     * 
+     * Daily price statistics of a symbol for the days of a month, from the rollups.
+     *
+     * Waits for load() to have caught the rollups up with the log.
+     *
+     * @param month  The month.
+     * @param symbol The traded symbol (trades without a symbol belong to the default symbol).
+     * @return Day of the month ("01" ... "31") -> statistics of that day; days without trades are absent.
      */
-    public static void load() {
-    	
-        File file = new File(FILE_NAME);
-        if (!file.exists()) return;
+    public static TreeMap<String, DailyPriceData> getDailyPrices(YearMonth month, String symbol) {
+
+        synchronized (lock) {
+            awaitLoaded();
+            return rollups.getMonth(month, symbol);
+        }
+
+    }
+
+
+
+    /**
+     * Version of the daily price statistics of a month: answers built from getDailyPrices() stay
+     * valid while it is unchanged. Read it before getDailyPrices().
+     */
+    public static long getMonthVersion(YearMonth month) {
+
+        synchronized (lock) {
+            awaitLoaded();
+            return rollups.getVersion(month);
+        }
+
+    }
+
+
+
+    /**
+     * Candles of a symbol starting in [from, to), oldest first.
+     *
+     * Waits for load() to have replayed the log into the candles.
+     *
+     * @param symbol     The traded symbol.
+     * @param resolution Resolution in seconds (see CandleEngine.resolutionOf()).
+     * @param from       Epoch seconds (inclusive).
+     * @param to         Epoch seconds (exclusive).
+     * @param max        At most this many candles.
+     */
+    public static List<Candle> getCandles(String symbol, int resolution, long from, long to, int max) throws IOException {
+
+        synchronized (lock) {
+            awaitLoaded();
+            return candles.getCandles(symbol, resolution, from, to, max);
+        }
+
+    }
+
+
+
+    // Waits until load() has swapped its structures in (must hold the lock)
+    private static void awaitLoaded() {
+
+        while (!loaded) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+    }
 
-        try (Reader reader = new FileReader(FILE_NAME)) {
-            JsonObject root = JsonParser.parseReader(reader).getAsJsonObject();
-            JsonArray tradesArray = root.getAsJsonArray("trades");
 
-            List<TradeInfo> loadedTrades = gson.fromJson(tradesArray, new TypeToken<List<TradeInfo>>(){}.getType());
 
-            synchronized (trades) {
-                trades.addAll(loadedTrades);
+    // Saves the rollups and candles, and closes the open segment (shutdown hook); waits for load()
+    public static void shutdown() {
+
+        synchronized (lock) {
+            awaitLoaded();
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    System.err.println("[Main] Failed to save trade history:" + e.getMessage());
+                }
             }
+            saveRollups();
+            closeSegment();
+        }
+
+    }
+
+
+    // Truncates a segment after its last complete line (a crash may leave half a line)
+    private static void cutTornLine(File file) throws IOException {
+
+        if (!file.exists()) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') break;
+                end--;
+            }
+            if (end < raf.length()) {
+                System.err.println("[Main] Trade history " + file.getName() + ": discarding an incomplete record");
+                raf.setLength(end);
+            }
+        }
 
+    }
+
+
+
+    /**
+     * Reads the trades with a timestamp in [from, to). Only the segments of the days of the range
+     * are opened, and in each one only the blocks of its index that overlap the range, then the
+     * lines appended after the last indexed block.
+     *
+     * @param from     Epoch seconds (inclusive).
+     * @param to       Epoch seconds (exclusive).
+     * @param consumer Receives each trade, in the order they were recorded.
+     */
+    public static void forEachTrade(long from, long to, Consumer<TradeInfo> consumer) {
+
+        TreeSet<LocalDate> days;
+        try {
+            days = segmentDays();
         } catch (IOException e) {
+            System.err.println("[Main] Error reading trade history:" + e.getMessage());
+            return;
+        }
+
+        LineConsumer inRange = (trade, end) -> {
+            if (trade != null && trade.getTimestamp() >= from && trade.getTimestamp() < to) {
+                consumer.accept(trade);
+            }
+        };
+        for (LocalDate day : days) {
+            if (day.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toEpochSecond() <= from
+                    || day.atStartOfDay(ZoneId.systemDefault()).toEpochSecond() >= to) {
+                continue;
+            }
+            Path segment = segmentPath(day);
+            try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+                long length = file.size();
+                TradeSegmentIndex index = TradeSegmentIndex.read(indexPath(day), length);
+                long[] ranges = index.rangesOverlapping(from, to);
+                for (int i = 0; i < ranges.length; i += 2) {
+                    readLines(file, ranges[i], ranges[i + 1], inRange);
+                }
+                readLines(file, index.getIndexedEnd(), length, inRange);
+            } catch (IOException e) {
+                System.err.println("[Main] Error reading trade history " + segment + ":" + e.getMessage());
+            }
+        }
+
+    }
+
+
+
+    /**
+     * Prepares the log on startup: moves the trades of an older JSON history file, if any,
+     * into day segments (see migrate()), then catches the saved rollups, the segment indexes
+     * and the candles up with the segments.
+     *
+     * The legacy file is only renamed once the log holds the migration marker, and the log
+     * directory is only created here once the migration has succeeded.
+     *
+     * Trades executed meanwhile (startup does not wait for the history) are only queued by
+     * addTrades(), so the log is read and migrated without the lock: the rollups and candles
+     * are built apart, then swapped in holding the lock, and the queued trades appended.
+     */
+    public static void load() {
+
+        File legacy = new File(LEGACY_FILE);
+        TradeRollups loadedRollups = null;
+        CandleEngine loadedCandles = null;
+        try {
+            recoverMigration();
+            if (legacy.exists()) {
+                if (!Files.exists(LOG_DIR.resolve(MIGRATED_MARKER))) {
+                    migrate(legacy);
+                    // Rebuilt from the whole log, older trades included
+                    deleteDirectory(Paths.get(ServerConfig.getCandleDir()));
+                }
+                Files.move(legacy.toPath(), Paths.get(LEGACY_FILE + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.createDirectories(LOG_DIR);
+            loadedRollups = loadRollups();
+            loadIndexes();
+            loadedCandles = loadCandles();
+        } catch (IOException | RuntimeException e) {
             System.err.println("[Main] Error loading trade history:" + e.getMessage());
+        } finally {
+            swapIn(loadedRollups, loadedCandles);
         }
+
     }
 
-}
 
+    // Installs what load() built (null if it failed), then appends the trades queued meanwhile
+    private static void swapIn(TradeRollups loadedRollups, CandleEngine loadedCandles) {
+
+        synchronized (lock) {
+            if (loadedRollups != null) {
+                rollups = loadedRollups;
+                saveRollups();
+            }
+            if (loadedCandles != null) {
+                candles = loadedCandles;
+                candlesLoaded = true;
+            }
+            loaded = true;
+            lock.notifyAll();
+            if (!pendingTrades.isEmpty()) {
+                append(new ArrayList<>(pendingTrades), new ArrayList<>(pendingLines));
+                pendingTrades.clear();
+                pendingLines.clear();
+            }
+        }
+
+    }
+
+
+    // Reads the saved rollups, then folds what each day segment holds beyond them
+    private static TradeRollups loadRollups() throws IOException {
+
+        TradeRollups loadedRollups;
+        try {
+            loadedRollups = TradeRollups.read(ROLLUP_FILE);
+        } catch (IOException e) {
+            System.err.println("[Main] Trade rollups unreadable, rebuilding them: " + e.getMessage());
+            loadedRollups = new TradeRollups();
+        }
+
+        int synced = 0;
+        for (LocalDate day : segmentDays()) {
+            if (syncDay(loadedRollups, day, segmentPath(day).toFile())) synced++;
+        }
+        System.out.println("[Main] Trade history: rollups of " + synced + " days brought up to date");
+        return loadedRollups;
+
+    }
+
+
+    // Indexes the lines of each segment after its last indexed block
+    private static void loadIndexes() throws IOException {
+
+        int indexed = 0;
+        for (LocalDate day : segmentDays()) {
+            File file = segmentPath(day).toFile();
+            TradeSegmentIndex index = TradeSegmentIndex.open(indexPath(day), file.length());
+            long before = index.getIndexedEnd();
+            index.endBlock(indexTail(index, file));
+            if (index.getIndexedEnd() != before) indexed++;
+        }
+        System.out.println("[Main] Trade history: indexes of " + indexed + " days brought up to date");
+
+    }
+
+
+    // Opens the candles of the listed symbols, then replays the trades their files do not hold
+    private static CandleEngine loadCandles() throws IOException {
+
+        CandleEngine loadedCandles = new CandleEngine(ServerConfig.getCandleDir(), ServerConfig.getCandleRingSize());
+        loadedCandles.open(ServerConfig.getSymbols());
+        int[] replayed = new int[1];
+        forEachTrade(loadedCandles.getReplayStart(), Long.MAX_VALUE, trade -> {
+            loadedCandles.add(trade);
+            replayed[0]++;
+        });
+        loadedCandles.checkpoint();
+        System.out.println("[Main] Trade history: " + replayed[0] + " trades replayed into the candles");
+        return loadedCandles;
+
+    }
+
+
+    // Days of the segments of the log, in order
+    private static TreeSet<LocalDate> segmentDays() throws IOException {
+
+        TreeSet<LocalDate> days = new TreeSet<>();
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(LOG_DIR, "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                String name = segment.getFileName().toString();
+                try {
+                    days.add(LocalDate.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (DateTimeParseException e) {
+                    // not a day segment
+                }
+            }
+        }
+        return days;
+
+    }
+
+
+    /**
+     * Moves the trades of the legacy JSON file into day segments (from load(), before any append).
+     *
+     * 1. The new log is built in a temporary directory: first a copy of the segments the log
+     *    already holds, if any (left by a run that did not finish the migration), then the legacy
+     *    trades appended to the segments of their days, then the marker file.
+     * 2. The temporary directory replaces the log: the log is renamed to "<log>.old", the new
+     *    one renamed into place, and the old one deleted (see recoverMigration()).
+     *
+     * A crash at any point leaves the legacy file and a log without the marker, so the
+     * migration is redone from the start on the next startup. The saved rollups stay valid:
+     * the copied segments keep their content as a prefix, the legacy trades are folded after it.
+     */
+    private static void migrate(File legacy) throws IOException {
+
+        Path tmp = Paths.get(LOG_DIR + ".tmp");
+        deleteDirectory(tmp);
+        Files.createDirectories(tmp);
+
+        int kept = 0;
+        if (Files.exists(LOG_DIR)) {
+            for (LocalDate segmentDay : segmentDays()) {
+                Files.copy(segmentPath(segmentDay), tmp.resolve(segmentDay + SEGMENT_SUFFIX));
+                kept++;
+            }
+        }
 
+        // Streamed: each trade is written to its day segment as soon as it is read
+        int moved = 0;
+        LocalDate day = null;
+        Writer out = null;
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(legacy)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"trades".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    TradeInfo trade = gson.fromJson(reader, TradeInfo.class);
+                    LocalDate tradeDay = dayOf(trade.getTimestamp());
+                    if (!tradeDay.equals(day)) {
+                        if (out != null) out.close();
+                        day = tradeDay;
+                        out = new BufferedWriter(new OutputStreamWriter(
+                                new FileOutputStream(tmp.resolve(day + SEGMENT_SUFFIX).toFile(), true), StandardCharsets.UTF_8));
+                    }
+                    out.write(gson.toJson(trade));
+                    out.write('\n');
+                    moved++;
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } finally {
+            if (out != null) out.close();
+        }
+
+        Files.createFile(tmp.resolve(MIGRATED_MARKER));
+        if (Files.exists(LOG_DIR)) {
+            Files.move(LOG_DIR, Paths.get(LOG_DIR + ".old"), StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tmp, LOG_DIR, StandardCopyOption.ATOMIC_MOVE);
+        deleteDirectory(Paths.get(LOG_DIR + ".old"));
+        System.out.println("[Main] Trade history: moved " + moved + " trades to " + LOG_DIR
+                + (kept > 0 ? " (merged with " + kept + " days already logged)" : ""));
+
+    }
+
+
+    // Finishes or undoes the directory swap of a migration interrupted by a crash
+    private static void recoverMigration() throws IOException {
+
+        Path old = Paths.get(LOG_DIR + ".old");
+        if (!Files.exists(old)) return;
+        if (Files.exists(LOG_DIR)) {
+            deleteDirectory(old); // the new log was in place
+        } else {
+            Files.move(old, LOG_DIR, StandardCopyOption.ATOMIC_MOVE); // migrated again from it
+        }
+
+    }
+
+
+    private static void deleteDirectory(Path dir) throws IOException {
+
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+
+    }
+
+
+
+    // Local date of a trade timestamp (seconds), as used by getPriceHistory
+    public static LocalDate dayOf(long timestamp) {
+        return Instant.ofEpochSecond(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static Path segmentPath(LocalDate day) {
+        return LOG_DIR.resolve(day + SEGMENT_SUFFIX);
+    }
+
+    private static Path indexPath(LocalDate day) {
+        return LOG_DIR.resolve(day + INDEX_SUFFIX);
+    }
+
+}
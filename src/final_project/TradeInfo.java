@@ -5,7 +5,7 @@ package final_project;
 /**
  * TradeInfo represents a executed trade result.
  * It stores details of the trade, including the order ID, order side ("ask" or "bid"),
- * order type ("limit", "market", or "stop"), size, price, and timestamp.
+ * order type ("limit", "market", or "stop"), size, price, timestamp and the traded symbol.
  *
  * This class is used for recording, persisting, and notifying users about trade results.
  */
@@ -18,15 +18,22 @@ public class TradeInfo {
     private int size;
     private int price;
     private long timestamp;
+    private String symbol;      // null in trades recorded before multi-symbol support (default symbol)
 
     public TradeInfo(int orderId, String type, String orderType, int size, int price, long timestamp) {
     	
+        this(orderId, type, orderType, size, price, timestamp, null);
+    }
+
+    public TradeInfo(int orderId, String type, String orderType, int size, int price, long timestamp, String symbol) {
+    	
         this.orderId = orderId;
         this.type = type;
         this.orderType = orderType;
         this.size = size;
         this.price = price;
         this.timestamp = timestamp;
+        this.symbol = symbol;
     }
 
     public int getOrderId() {
@@ -55,6 +62,10 @@ public class TradeInfo {
     public long getTimestamp() {
         return timestamp;
     }
+
+    public String getSymbol() {
+        return symbol;
+    }
 }
 
 
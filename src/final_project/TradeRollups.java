@@ -0,0 +1,185 @@
+package final_project;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * TradeRollups holds the daily price statistics (open, close, high, low) of every symbol,
+ * kept up to date as trades are recorded, so getPriceHistory never reads the trade log.
+ *
+ * 1. One entry per day of the trade log: a DailyPriceData per traded symbol, plus the number
+ *    of bytes of the day segment already folded into it ("covered").
+ * 2. TradeHistory folds each trade into its day as it appends it, and catches a day up
+ *    from its segment when the covered bytes fall behind (see TradeHistory.syncDay()).
+ * 3. The rollups are saved to a small binary file ("trade_rollups" in the config), written
+ *    to a temporary file, fsynced, then renamed over the previous one. On startup, only the
+ *    segment bytes after the saved "covered" offset of each day are read again.
+ * 4. A month query costs one lookup per day of the month, whatever the number of trades.
+ * 5. Each month has a version, changed whenever one of its days is, so that answers built
+ *    from a month can be cached until it changes (see PriceHistoryCache). Versions are not saved.
+ *
+ * File format (big-endian, DataOutputStream): int magic, int version, int day count, then per day:
+ * long epoch day, long covered bytes, int symbol count, and per symbol: UTF symbol,
+ * int open, close, high, low, long first and last trade timestamps.
+ *
+ * Not thread-safe: guarded by the TradeHistory lock.
+ */
+
+public class TradeRollups {
+
+    private static final int MAGIC = 0x54524f4c; // "TROL"
+    private static final int VERSION = 1;
+
+    private final TreeMap<LocalDate, Day> days = new TreeMap<>();
+    private final Map<YearMonth, Long> versions = new HashMap<>();
+
+
+    // Statistics of one day, per symbol, and how much of its segment they cover
+    private static final class Day {
+        final Map<String, DailyPriceData> symbols = new HashMap<>();
+        long covered;
+    }
+
+
+
+    // Folds one trade of the given day (trades without a symbol belong to the default symbol)
+    public void add(LocalDate day, TradeInfo trade) {
+
+        String symbol = trade.getSymbol() != null ? trade.getSymbol() : ServerConfig.getDefaultSymbol();
+        days.computeIfAbsent(day, d -> new Day()).symbols
+                .computeIfAbsent(symbol, s -> new DailyPriceData())
+                .addTrade(trade.getPrice(), trade.getTimestamp());
+        changed(day);
+
+    }
+
+
+    // Bytes of the day segment folded so far (0 for a day never seen)
+    public long getCovered(LocalDate day) {
+
+        Day entry = days.get(day);
+        return entry == null ? 0 : entry.covered;
+
+    }
+
+    public void setCovered(LocalDate day, long covered) {
+        days.computeIfAbsent(day, d -> new Day()).covered = covered;
+    }
+
+
+    // Forgets a day, so that it is folded again from the start of its segment
+    public void reset(LocalDate day) {
+        days.remove(day);
+        changed(day);
+    }
+
+
+    private void changed(LocalDate day) {
+        versions.merge(YearMonth.from(day), 1L, Long::sum);
+    }
+
+
+    // Version of a month: changes whenever the statistics of one of its days do
+    public long getVersion(YearMonth month) {
+        return versions.getOrDefault(month, 0L);
+    }
+
+
+
+    /**
+     * Daily statistics of one symbol for the days of a month.
+     *
+     * @return Day of the month ("01" ... "31") -> copy of its statistics, in day order;
+     *         days without trades of the symbol are absent.
+     */
+    public TreeMap<String, DailyPriceData> getMonth(YearMonth month, String symbol) {
+
+        TreeMap<String, DailyPriceData> result = new TreeMap<>();
+        for (Map.Entry<LocalDate, Day> entry : days.subMap(month.atDay(1), true, month.atEndOfMonth(), true).entrySet()) {
+            DailyPriceData data = entry.getValue().symbols.get(symbol);
+            if (data != null) {
+                result.put(String.format("%02d", entry.getKey().getDayOfMonth()), data.copy());
+            }
+        }
+        return result;
+
+    }
+
+
+
+    // Writes the rollups to the file, replacing it atomically
+    public void write(String filePath) throws IOException {
+
+        String tmpPath = filePath + ".tmp";
+        try (FileOutputStream file = new FileOutputStream(tmpPath);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(days.size());
+            for (Map.Entry<LocalDate, Day> entry : days.entrySet()) {
+                Day day = entry.getValue();
+                out.writeLong(entry.getKey().toEpochDay());
+                out.writeLong(day.covered);
+                out.writeInt(day.symbols.size());
+                for (Map.Entry<String, DailyPriceData> symbol : day.symbols.entrySet()) {
+                    DailyPriceData data = symbol.getValue();
+                    out.writeUTF(symbol.getKey());
+                    out.writeInt(data.getOpen());
+                    out.writeInt(data.getClose());
+                    out.writeInt(data.getHigh());
+                    out.writeInt(data.getLow());
+                    out.writeLong(data.getFirstTimestamp());
+                    out.writeLong(data.getLastTimestamp());
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(Paths.get(tmpPath), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    }
+
+
+
+    /**
+     * Reads a rollup file.
+     *
+     * @return The rollups, empty if the file does not exist.
+     */
+    public static TradeRollups read(String filePath) throws IOException {
+
+        TradeRollups rollups = new TradeRollups();
+        Path path = Paths.get(filePath);
+        if (!Files.exists(path)) return rollups;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown trade rollup file format: " + filePath);
+            }
+            int dayCount = in.readInt();
+            for (int i = 0; i < dayCount; i++) {
+                Day day = new Day();
+                LocalDate date = LocalDate.ofEpochDay(in.readLong());
+                day.covered = in.readLong();
+                int symbolCount = in.readInt();
+                for (int j = 0; j < symbolCount; j++) {
+                    String symbol = in.readUTF();
+                    day.symbols.put(symbol, new DailyPriceData(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                            in.readLong(), in.readLong()));
+                }
+                rollups.days.put(date, day);
+            }
+        }
+        return rollups;
+
+    }
+}
@@ -0,0 +1,173 @@
+package final_project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * TradeSegmentIndex is the time index of one day segment of the trade log: the segment is cut
+ * into blocks of whole lines, and the index holds the end offset and the timestamp range of each.
+ *
+ * 1. TradeHistory adds each appended trade to the block being built, and ends the block once it
+ *    holds "trade_index_block_size" bytes or when the segment is closed; ending a block appends
+ *    one entry to the index file "YYYY-MM-DD.idx" next to the segment.
+ * 2. A range query reads only the blocks whose timestamp range overlaps it, then the part of the
+ *    segment after the last block (the block being built), so its cost follows the size of the
+ *    result. Trades are not assumed to be in timestamp order within a segment.
+ * 3. Entries are only trusted up to the segment length: a crash may leave entries for lines
+ *    that never reached the segment, which are dropped (or ignored by readers); the lines after
+ *    the last entry are indexed again by TradeHistory.
+ *
+ * Entry format (big-endian, 24 bytes): long block end offset, long first and last timestamp.
+ * A block starts where the previous one ends (0 for the first).
+ *
+ * Not thread-safe: the index of the open segment is guarded by the TradeHistory lock;
+ * readers use the static read().
+ */
+
+public class TradeSegmentIndex {
+
+    private static final int ENTRY_SIZE = 24;
+
+    private final Path path;
+    private long[] entries = new long[3 * 16]; // end, first, last timestamp of each block
+    private int size;
+
+    // Timestamps of the block being built, which starts at getIndexedEnd()
+    private long blockFirst = Long.MAX_VALUE;
+    private long blockLast = Long.MIN_VALUE;
+
+
+    private TradeSegmentIndex(Path path) {
+        this.path = path;
+    }
+
+
+
+    /**
+     * Opens the index of a segment for appending, dropping the entries past the segment length.
+     *
+     * @param path          Index file.
+     * @param segmentLength Length of the segment (complete lines only).
+     */
+    public static TradeSegmentIndex open(Path path, long segmentLength) throws IOException {
+
+        TradeSegmentIndex index = read(path, segmentLength);
+        long valid = (long) index.size * ENTRY_SIZE;
+        if (Files.exists(path) && Files.size(path) != valid) {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                file.truncate(valid);
+            }
+        }
+        return index;
+
+    }
+
+
+    /**
+     * Reads the index of a segment.
+     *
+     * @param path          Index file (may not exist).
+     * @param segmentLength Length of the segment as seen by the caller: later entries are left out.
+     */
+    public static TradeSegmentIndex read(Path path, long segmentLength) throws IOException {
+
+        TradeSegmentIndex index = new TradeSegmentIndex(path);
+        if (!Files.exists(path)) return index;
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        long previousEnd = 0;
+        while (buffer.remaining() >= ENTRY_SIZE) {
+            long end = buffer.getLong();
+            long first = buffer.getLong();
+            long last = buffer.getLong();
+            if (end <= previousEnd || end > segmentLength) break;
+            index.addEntry(end, first, last);
+            previousEnd = end;
+        }
+        return index;
+
+    }
+
+
+
+    // Adds a trade to the block being built
+    public void add(long timestamp) {
+
+        blockFirst = Math.min(blockFirst, timestamp);
+        blockLast = Math.max(blockLast, timestamp);
+
+    }
+
+
+    // Ends the block being built at the given segment offset (the segment must hold it already)
+    public void endBlock(long end) throws IOException {
+
+        if (blockFirst == Long.MAX_VALUE || end <= getIndexedEnd()) return;
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(end).putLong(blockFirst).putLong(blockLast).flip();
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (entry.hasRemaining()) {
+                file.write(entry);
+            }
+        }
+        addEntry(end, blockFirst, blockLast);
+        blockFirst = Long.MAX_VALUE;
+        blockLast = Long.MIN_VALUE;
+
+    }
+
+
+    private void addEntry(long end, long first, long last) {
+
+        if (3 * size == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[3 * size] = end;
+        entries[3 * size + 1] = first;
+        entries[3 * size + 2] = last;
+        size++;
+
+    }
+
+
+
+    // Segment offset up to which the lines are in indexed blocks
+    public long getIndexedEnd() {
+        return size == 0 ? 0 : entries[3 * (size - 1)];
+    }
+
+
+    /**
+     * Byte ranges of the indexed blocks holding trades in [from, to), in segment order,
+     * with adjacent ranges merged.
+     *
+     * @return Pairs of start and end offsets.
+     */
+    public long[] rangesOverlapping(long from, long to) {
+
+        long[] ranges = new long[2 * size];
+        int count = 0;
+        long start = 0;
+        for (int i = 0; i < size; i++) {
+            long end = entries[3 * i];
+            if (entries[3 * i + 2] >= from && entries[3 * i + 1] < to) {
+                if (count > 0 && ranges[count - 1] == start) {
+                    ranges[count - 1] = end;
+                } else {
+                    ranges[count++] = start;
+                    ranges[count++] = end;
+                }
+            }
+            start = end;
+        }
+        return Arrays.copyOf(ranges, count);
+
+    }
+}
@@ -0,0 +1,79 @@
+package final_project;
+
+
+/**
+ * TreePriceLadder indexes price levels with a LevelTree: a sorted map of price -> PriceLevel
+ * whose levels are also linked in priority order.
+ *
+ * 1. Accepts any price; adding a new price level is O(log levels).
+ * 2. bestLevel() and nextLevel() follow the links, so walking the book costs no map lookup
+ *    and allocates nothing.
+ * 3. A level emptied by a fill or a cancel is dropped lazily: it stays in the map
+ *    (and is reused by the next order at that price) until bestLevel() or nextLevel()
+ *    walks over it; a few dropped levels are kept for the next new prices.
+ *
+ * Also used as the overflow index of ArrayPriceLadder for prices outside its band.
+ */
+
+public class TreePriceLadder<T extends Order> extends PriceLadder<T> {
+
+    private final LevelTree<PriceLevel<T>> levels;
+
+
+    public TreePriceLadder(boolean descending) {
+
+        super(descending);
+        this.levels = new LevelTree<>(descending, PriceLevel::new);
+
+    }
+
+
+
+    @Override
+    protected PriceLevel<T> levelFor(int price) {
+        return levels.levelFor(price);
+    }
+
+
+
+    @Override
+    protected void levelActivated(PriceLevel<T> level) {
+        // already linked at its place by levelFor()
+    }
+
+
+
+    @Override
+    protected void levelEmptied(PriceLevel<T> level) {
+        // dropped lazily by bestLevel() / nextLevel()
+    }
+
+
+
+    @Override
+    public PriceLevel<T> bestLevel() {
+        return levels.first();
+    }
+
+
+
+    @Override
+    public PriceLevel<T> nextLevel(PriceLevel<T> level) {
+        return levels.next(level);
+    }
+
+
+
+    // By price, for ArrayPriceLadder (the price may have no level in this ladder)
+    @Override
+    protected PriceLevel<T> levelAfter(int price) {
+        return levels.higher(price);
+    }
+
+
+
+    @Override
+    public int getLevelCount() {
+        return levels.size();
+    }
+}
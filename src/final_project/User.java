@@ -5,14 +5,14 @@ package final_project;
  * 
  * 1. username
  * 2. password
- * 3. loggedIn
+ * 3. loggedIn (session state, kept in memory only: not saved with the credentials)
  */
 
 
 public class User {
     private String username;
     private String password;
-    private boolean loggedIn; 
+    private transient volatile boolean loggedIn; 
 
     public User(String username, String password) {
         this.username = username;
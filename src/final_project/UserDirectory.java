@@ -0,0 +1,50 @@
+package final_project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * UserDirectory gives each username a small int ID, so off-heap order records
+ * (see OrderSlab) can store their owner in a fixed-width column.
+ *
+ * The directory grows with the number of users, never with the number of orders,
+ * and always returns the same String instance for a user.
+ *
+ * Not thread-safe: always accessed under the order book lock (or on the matching thread).
+ */
+
+public class UserDirectory {
+
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+
+    // ID of the user, assigned on first use
+    public int idOf(String username) {
+
+        Integer id = ids.get(username);
+        if (id == null) {
+            id = names.size();
+            ids.put(username, id);
+            names.add(username);
+        }
+        return id;
+
+    }
+
+
+    // ID of the user, or -1 if the user never had an order here
+    public int find(String username) {
+
+        Integer id = ids.get(username);
+        return id == null ? -1 : id;
+
+    }
+
+
+    public String nameOf(int id) {
+        return names.get(id);
+    }
+}
@@ -0,0 +1,64 @@
+package final_project;
+
+import java.util.HashMap;
+
+
+/**
+ * UserQuantities keeps a running quantity per username (e.g. the quantity each user has
+ * resting in a price level or on a side of the book).
+ *
+ * 1. Each user maps to a mutable counter, so updates do not box a new value each time.
+ * 2. Users whose quantity falls back to zero keep their counter, so a user coming back
+ *    (the usual case on the matching hot path) allocates nothing. Zero counters are
+ *    purged when the map reaches its purge size, which then doubles (or becomes four times
+ *    the number of users with a quantity), so purges get rarer as the set of users settles.
+ *
+ * Not thread-safe: always accessed under the order book lock.
+ */
+
+public class UserQuantities {
+
+    private static final int MIN_PURGE_SIZE = 64;
+
+    private final HashMap<String, Quantity> quantities = new HashMap<>();
+
+    // Number of users with a non-zero quantity, and the map size that triggers a purge
+    private int nonZero;
+    private int purgeAt = MIN_PURGE_SIZE;
+
+    private static final class Quantity {
+        long value;
+    }
+
+
+    public void add(String username, long delta) {
+
+        Quantity q = quantities.get(username);
+        if (q == null) {
+            if (quantities.size() >= purgeAt) {
+                quantities.values().removeIf(x -> x.value == 0);
+                purgeAt = Math.max(2 * purgeAt, 4 * quantities.size());
+            }
+            q = new Quantity();
+            quantities.put(username, q);
+        }
+        if (q.value == 0) nonZero++;
+        q.value += delta;
+        if (q.value == 0) nonZero--;
+
+    }
+
+
+    // Quantity of the given user, 0 if none
+    public long get(String username) {
+
+        Quantity q = quantities.get(username);
+        return q == null ? 0 : q.value;
+
+    }
+
+
+    public boolean isEmpty() {
+        return nonZero == 0;
+    }
+}
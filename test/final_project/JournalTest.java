@@ -0,0 +1,283 @@
+package final_project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+
+/**
+ * Checks the recovery and replay of a Journal and of the BookJournal written to it: a torn
+ * record at the tail is trimmed, a bad record anywhere else fails the open (and so the
+ * startup), and a replay reaching a bad record fails instead of ending early.
+ *
+ * Plain main() test (the project has no test framework):
+ *
+ *     javac -cp src/gson-2.10.1.jar -d out src/final_project/*.java test/final_project/*.java
+ *     java -cp out:src/gson-2.10.1.jar final_project.JournalTest
+ *
+ * Prints every failed check and exits with status 1 if there was any.
+ */
+
+public class JournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int RECORDS = 100;   // 112-byte frames: 3 segments
+
+    private static int failures;
+
+
+    public static void main(String[] args) throws IOException {
+
+        replayRestoresEvents();
+        tornTailIsTrimmed();
+        corruptRecordFailsOpen();
+        corruptSegmentFailsOpen();
+        replayFailsOnCorruptRecord();
+
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("JournalTest: OK");
+
+    }
+
+
+
+    // The events of committed commands come back in order, one record per command
+    private static void replayRestoresEvents() throws IOException {
+
+        Path dir = Files.createTempDirectory("journal-test");
+        String path = dir.resolve("book.journal").toString();
+        BookJournal journal = bookJournal(new Journal(path, SEGMENT_SIZE));
+
+        journal.begin();
+        journal.limit(new LimitOrder(1, "alice", "ask", 5, 1, 100), true);
+        journal.commit();
+        journal.begin();
+        journal.fill(1, 2);
+        journal.commit();
+        journal.begin();
+        journal.stop(new StopOrder(2, "bob", "bid", 3, 2, 120));
+        journal.cancel(1);
+        journal.commit();
+
+        List<String> events = new ArrayList<>();
+        BookJournal replayed = bookJournal(new Journal(path, SEGMENT_SIZE));
+        int records = replayed.replay(0, -1, 0, recorder(events));
+        check("replayed records", records == 3 && replayed.getSequence() == 3);
+        check("replayed events", events.equals(List.of("limit 1 5 true", "fill 1 2", "stop 2 3", "cancel 1")));
+
+        events.clear();
+        replayed = bookJournal(new Journal(path, SEGMENT_SIZE));
+        check("records after the snapshot", replayed.replay(2, -1, 0, recorder(events)) == 1
+                && events.equals(List.of("stop 2 3", "cancel 1")));
+
+        delete(dir);
+
+    }
+
+
+
+    // A record cut short at the end of the last segment is erased, and appending goes on there
+    private static void tornTailIsTrimmed() throws IOException {
+
+        Path dir = Files.createTempDirectory("journal-test");
+        String path = dir.resolve("test.journal").toString();
+        long[] addresses = write(path);
+        corrupt(path, addresses[RECORDS - 1]);
+
+        Journal journal = new Journal(path, SEGMENT_SIZE);
+        check("records before the torn one kept", journal.replay(record -> { }) == RECORDS - 1);
+        long address = journal.append(record(RECORDS));
+        check("appended where the torn record was", address == addresses[RECORDS - 1]);
+
+        List<Integer> firsts = new ArrayList<>();
+        check("reopened", new Journal(path, SEGMENT_SIZE).replay(record -> firsts.add((int) record.get(0))) == RECORDS);
+        check("new record read back", firsts.get(RECORDS - 1) == (byte) RECORDS);
+
+        delete(dir);
+
+    }
+
+
+
+    // A bad record followed by valid ones is not a torn tail: nothing is erased, the open fails
+    private static void corruptRecordFailsOpen() throws IOException {
+
+        Path dir = Files.createTempDirectory("journal-test");
+        String path = dir.resolve("test.journal").toString();
+        long[] addresses = write(path);
+        corrupt(path, addresses[RECORDS - 3]);
+
+        check("open fails", !opens(path));
+        check("open still fails", !opens(path));
+
+        delete(dir);
+
+    }
+
+
+
+    // A bad record in an earlier segment does not drop the later segments
+    private static void corruptSegmentFailsOpen() throws IOException {
+
+        Path dir = Files.createTempDirectory("journal-test");
+        String path = dir.resolve("test.journal").toString();
+        long[] addresses = write(path);
+        corrupt(path, addresses[5]);
+        long[] segments = Journal.listSegments(path);
+
+        check("several segments", segments.length > 1);
+        check("open fails", !opens(path));
+        check("later segments kept", Journal.listSegments(path).length == segments.length);
+
+        delete(dir);
+
+    }
+
+
+
+    // A replay that reaches a bad record fails, it does not end as a complete journal would
+    private static void replayFailsOnCorruptRecord() throws IOException {
+
+        Path dir = Files.createTempDirectory("journal-test");
+        String path = dir.resolve("book.journal").toString();
+        Journal file = new Journal(path, SEGMENT_SIZE);
+        BookJournal journal = bookJournal(file);
+        for (int i = 1; i <= 10; i++) {
+            journal.begin();
+            journal.limit(new LimitOrder(i, "alice", "ask", 5, i, 100), true);
+            journal.commit();
+        }
+        long[] segments = Journal.listSegments(path);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(Paths.get(Journal.segmentName(path, segments[0])), StandardOpenOption.READ)) {
+            channel.read(buffer, 0);
+        }
+        int frame = Journal.align(Journal.FRAME_HEADER + Integer.reverseBytes(buffer.getInt(0)));
+        corrupt(path, Journal.address(segments[0], 4 * frame));
+
+        BookJournal replayed = bookJournal(file);
+        List<String> events = new ArrayList<>();
+        try {
+            replayed.replay(0, -1, 0, recorder(events));
+            check("replay fails", false);
+        } catch (IOException e) {
+            check("records before the bad one applied", replayed.getSequence() == 4 && events.size() == 4);
+        }
+
+        delete(dir);
+
+    }
+
+
+
+    // Appends RECORDS records of 100 bytes, returns their addresses
+    private static long[] write(String path) throws IOException {
+
+        Journal journal = new Journal(path, SEGMENT_SIZE);
+        long[] addresses = new long[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            addresses[i] = journal.append(record(i));
+        }
+        return addresses;
+
+    }
+
+
+    private static ByteBuffer record(int n) {
+
+        ByteBuffer record = ByteBuffer.allocate(100);
+        for (int i = 0; i < 100; i++) {
+            record.put((byte) (n + i));
+        }
+        record.flip();
+        return record;
+
+    }
+
+
+    // Flips a payload byte of the record at the given address (its CRC no longer matches)
+    private static void corrupt(String path, long address) throws IOException {
+
+        Path segment = Paths.get(Journal.segmentName(path, address >>> 32));
+        long offset = (int) address + Journal.FRAME_HEADER + 10;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, offset);
+            b.put(0, (byte) ~b.get(0));
+            b.rewind();
+            channel.write(b, offset);
+        }
+
+    }
+
+
+    private static boolean opens(String path) {
+
+        try {
+            new Journal(path, SEGMENT_SIZE);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+
+    }
+
+
+    private static BookJournal bookJournal(Journal journal) {
+        return new BookJournal(journal, new JournalFlusher(journal, JournalFlusher.Durability.SYNC, 0, 1, "test"), Integer.MAX_VALUE);
+    }
+
+
+    private static BookJournal.Listener recorder(List<String> events) {
+
+        return new BookJournal.Listener() {
+            public void limit(LimitOrder order, boolean resting) {
+                events.add("limit " + order.getOrderId() + " " + order.getSize() + " " + resting);
+            }
+            public void stop(StopOrder order) {
+                events.add("stop " + order.getOrderId() + " " + order.getSize());
+            }
+            public void fill(int orderId, int size) {
+                events.add("fill " + orderId + " " + size);
+            }
+            public void cancel(int orderId) {
+                events.add("cancel " + orderId);
+            }
+            public void trigger(int orderId) {
+                events.add("trigger " + orderId);
+            }
+        };
+
+    }
+
+
+    private static void delete(Path dir) throws IOException {
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+
+    }
+
+
+    private static void check(String what, boolean ok) {
+
+        if (!ok) {
+            failures++;
+            System.err.println("FAILED: " + what);
+        }
+
+    }
+}
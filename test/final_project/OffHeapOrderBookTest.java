@@ -0,0 +1,158 @@
+package final_project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Checks the cold tier of the off-heap store: orders leaving an OffHeapOrderBook have their
+ * final status in the ColdOrderIndex, and their slot is freed, live and on journal replay.
+ *
+ * Plain main() test (the project has no test framework):
+ *
+ *     javac -cp src/gson-2.10.1.jar -d out src/final_project/*.java test/final_project/*.java
+ *     java -cp out:src/gson-2.10.1.jar final_project.OffHeapOrderBookTest
+ *
+ * Prints every failed check and exits with status 1 if there was any.
+ */
+
+public class OffHeapOrderBookTest {
+
+    private static int failures;
+
+
+    public static void main(String[] args) throws IOException {
+
+        cancelFilledOrder();
+        cancelPartiallyFilledOrder();
+        replayEvictsLikeLiveMatching();
+
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("OffHeapOrderBookTest: OK");
+
+    }
+
+
+
+    // A fully filled resting order is gone from the store, and its cancel answers "finalized"
+    private static void cancelFilledOrder() throws IOException {
+
+        BookJournal journal = scratchJournal();
+        ColdOrderIndex coldOrders = new ColdOrderIndex(null);
+        OffHeapOrderBook book = new OffHeapOrderBook(SelfTradePolicy.SKIP, 16, journal, coldOrders);
+
+        limit(book, journal, new LimitOrder(1, "alice", "ask", 5, 1, 100));
+        limit(book, journal, new LimitOrder(2, "bob", "bid", 5, 2, 100));
+
+        check("filled order left the store", book.getOrder(1) == null);
+        check("filled order cannot be cancelled", !book.cancel(1));
+        check("filled order is finalized", coldOrders.get(1) == ColdOrderIndex.FINALIZED);
+        check("taker never rested", book.getOrder(2) == null && coldOrders.get(2) == ColdOrderIndex.FINALIZED);
+        check("slots freed", book.size() == 0);
+
+    }
+
+
+
+    // A partially filled order is cancelled once, then answers "cancelled" and reuses its slot
+    private static void cancelPartiallyFilledOrder() throws IOException {
+
+        BookJournal journal = scratchJournal();
+        ColdOrderIndex coldOrders = new ColdOrderIndex(null);
+        OffHeapOrderBook book = new OffHeapOrderBook(SelfTradePolicy.SKIP, 16, journal, coldOrders);
+
+        limit(book, journal, new LimitOrder(1, "alice", "ask", 5, 1, 100));
+        limit(book, journal, new LimitOrder(2, "bob", "bid", 3, 2, 100));
+
+        Order rest = book.getOrder(1);
+        check("rest of the order still resting", rest != null && rest.getSize() == 2);
+        check("resting order cancelled", book.cancel(1));
+        check("cancelled order left the store", book.getOrder(1) == null && !book.cancel(1));
+        check("cancelled order status", coldOrders.get(1) == ColdOrderIndex.CANCELLED);
+
+        long reserved = book.getReservedBytes();
+        for (int i = 0; i < 100; i++) {
+            limit(book, journal, new LimitOrder(10 + i, "alice", "ask", 1, 10 + i, 100));
+            check("order cancelled", book.cancel(10 + i));
+        }
+        check("freed slots reused", book.size() == 0 && book.getReservedBytes() == reserved);
+
+    }
+
+
+
+    // Replaying the journal of a book into a new one gives the same statuses and store
+    private static void replayEvictsLikeLiveMatching() throws IOException {
+
+        BookJournal journal = scratchJournal();
+        ColdOrderIndex coldOrders = new ColdOrderIndex(null);
+        OffHeapOrderBook book = new OffHeapOrderBook(SelfTradePolicy.CANCEL_RESTING, 16, journal, coldOrders);
+
+        limit(book, journal, new LimitOrder(1, "alice", "ask", 5, 1, 100));
+        limit(book, journal, new LimitOrder(2, "alice", "ask", 5, 2, 101));
+        limit(book, journal, new LimitOrder(3, "bob", "bid", 5, 3, 100));    // fills 1
+        limit(book, journal, new LimitOrder(4, "alice", "bid", 1, 4, 101));  // cancels 2, rests
+        StopOrder stop = new StopOrder(5, "bob", "ask", 2, 5, 101);         // crossed, rejected
+        journal.begin();
+        book.addStopOrder(stop);
+        journal.stop(stop);
+        journal.commit();
+        ExecutionBuffer fills = new ExecutionBuffer();
+        fills.reset("TEST", 6);
+        journal.begin();
+        check("stop order triggered", book.triggerStopOrders(fills) == 1);
+        journal.commit();
+
+        ColdOrderIndex replayedCold = new ColdOrderIndex(null);
+        OffHeapOrderBook replayed = new OffHeapOrderBook(SelfTradePolicy.CANCEL_RESTING, 16, scratchJournal(), replayedCold);
+        journal.replay(0, -1, 0, replayed.replayListener());
+
+        for (int orderId = 1; orderId <= 5; orderId++) {
+            check("replayed status of order " + orderId, coldOrders.get(orderId) == replayedCold.get(orderId));
+        }
+        check("statuses", coldOrders.get(1) == ColdOrderIndex.FINALIZED && coldOrders.get(2) == ColdOrderIndex.CANCELLED
+                && coldOrders.get(5) == ColdOrderIndex.FINALIZED);
+        check("replayed store", replayed.size() == book.size() && replayed.getOrder(4) != null);
+
+    }
+
+
+
+    // Runs a limit order as OrderBook.addLimitOrder() does (one journal record)
+    private static void limit(OffHeapOrderBook book, BookJournal journal, LimitOrder order) {
+
+        ExecutionBuffer fills = new ExecutionBuffer();
+        fills.reset("TEST", order.getTimestamp());
+        journal.begin();
+        fills.beginGroup(order, OrderKind.LIMIT);
+        boolean resting = book.addLimitOrder(order, fills);
+        journal.limit(order, resting);
+        book.triggerStopOrders(fills);
+        journal.commit();
+
+    }
+
+
+    private static BookJournal scratchJournal() throws IOException {
+
+        Path dir = Files.createTempDirectory("offheap-test");
+        dir.toFile().deleteOnExit();
+        dir.resolve("test.journal.000000").toFile().deleteOnExit();
+        Journal journal = new Journal(dir.resolve("test.journal").toString(), 1 << 16);
+        return new BookJournal(journal, new JournalFlusher(journal, JournalFlusher.Durability.SYNC, 0, 1, "test"), Integer.MAX_VALUE);
+
+    }
+
+
+    private static void check(String what, boolean ok) {
+
+        if (!ok) {
+            failures++;
+            System.err.println("FAILED: " + what);
+        }
+
+    }
+}
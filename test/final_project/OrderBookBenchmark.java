@@ -0,0 +1,393 @@
+package final_project;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.stream.Stream;
+
+
+/**
+ * OrderBookBenchmark compares the PriceLadder used by OrderBook with the
+ * PriorityBlockingQueue it replaced, on books of 10k, 100k and 1M resting orders.
+ *
+ * Two ladders are measured: "tree" (TreePriceLadder) and "array" (ArrayPriceLadder over
+ * the benchmark's price band).
+ *
+ * The project has no build tool, so instead of a JMH harness this is a plain main()
+ * with warm-up rounds (the JIT has compiled both paths before the measured round).
+ *
+ * Measured operations (one side of the book, ask orders):
+ *
+ *        1. insert: rest N orders with random prices
+ *        2. best:   read the best price
+ *        3. sweep:  take orders in price-time priority (what a market order does)
+ *        4. cancel: remove random resting orders
+ *
+ * A second table reports the heap allocated per OrderBook.addLimitOrder() call in steady
+ * state, for an order taking liquidity and for an order resting, read from the JVM's
+ * per-thread allocation counter. It runs the real OrderBook (lock mode, async journal) of
+ * each order store (and heap ladder) in a child JVM, in a scratch working directory (see
+ * runAllocation()).
+ *
+ * A third table reports the heap retained per resting order by the two order stores
+ * ("order_store" in the config): "heap" (Order objects in a tree ladder plus the
+ * activeOrders map) and "offheap" (OffHeapOrderBook), with the off-heap bytes reserved
+ * by the slab. Heap usage is read after a full GC, so expect some noise.
+ *
+ * Not part of server.jar: compiled with the tests, and run from the project root (the
+ * allocation runs copy its Config_Server.properties):
+ *
+ *     javac -cp src/gson-2.10.1.jar -d out src/final_project/*.java test/final_project/*.java
+ *     java -cp out:src/gson-2.10.1.jar final_project.OrderBookBenchmark
+ */
+
+public class OrderBookBenchmark {
+
+    private static final int[] BOOK_SIZES = {10_000, 100_000, 1_000_000};
+    private static final int PRICE_BAND = 2_000;   // number of distinct prices
+    private static final int SWEEP_ORDERS = 5_000;
+    private static final int CANCEL_ORDERS = 200;
+    private static final int BEST_READS = 1_000_000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ALLOCATION_BOOK = 100_000;
+    private static final int ALLOCATION_ORDERS = 500_000;
+    private static final int[] RETAINED_BOOKS = {100_000, 1_000_000};
+
+    // Same ordering as the original ask queue: ascending price, then ascending timestamp
+    private static final Comparator<LimitOrder> ASK_COMPARATOR = Comparator.comparingInt(LimitOrder::getLimitPrice)
+            .thenComparingLong(LimitOrder::getTimestamp);
+
+    // Prevents the JIT from removing reads whose result is unused
+    private static long sink;
+
+
+    public static void main(String[] args) {
+
+        if (args.length == 3 && "allocation".equals(args[0])) {
+            measureAllocation("offheap".equals(args[1]) ? args[1] : args[1] + "/" + args[2]);
+            return;
+        }
+
+        System.out.printf("%-10s %-8s %14s %14s %14s %14s%n", "orders", "book", "insert ns/op", "best ns/op", "sweep ns/op", "cancel ns/op");
+        for (int n : BOOK_SIZES) {
+            List<LimitOrder> orders = generateOrders(n);
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                boolean report = round == WARMUP_ROUNDS;
+                runQueue(n, orders, report);
+                runLadder(n, orders, report, "tree", new TreePriceLadder<>(false));
+                runLadder(n, orders, report, "array", new ArrayPriceLadder<>(false, 1_000, 1_000 + PRICE_BAND - 1, false));
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-10s %-14s %14s %14s%n", "orders", "store/ladder", "take B/order", "rest B/order");
+        runAllocation("heap", "tree");
+        runAllocation("heap", "array");
+        runAllocation("offheap", "tree");
+
+        System.out.println();
+        System.out.printf("%-10s %-8s %14s %14s%n", "orders", "store", "heap B/order", "off-heap B/order");
+        for (int n : RETAINED_BOOKS) {
+            runRetained(n, "heap");
+            runRetained(n, "offheap");
+        }
+        System.out.println("sink=" + sink);
+
+    }
+
+
+    private static List<LimitOrder> generateOrders(int n) {
+
+        Random random = new Random(42);
+        List<LimitOrder> orders = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int price = 1_000 + random.nextInt(PRICE_BAND);
+            orders.add(new LimitOrder(i + 1, "user" + (i % 100), "ask", 1 + random.nextInt(100), i, price));
+        }
+        return orders;
+
+    }
+
+
+    private static void runQueue(int n, List<LimitOrder> orders, boolean report) {
+
+        PriorityBlockingQueue<LimitOrder> queue = new PriorityBlockingQueue<>(1000, ASK_COMPARATOR);
+
+        long start = System.nanoTime();
+        for (LimitOrder o : orders) {
+            queue.offer(o);
+        }
+        long insert = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BEST_READS; i++) {
+            LimitOrder best = queue.peek();
+            sink += best == null ? -1 : best.getLimitPrice();
+        }
+        long best = System.nanoTime() - start;
+
+        Random random = new Random(7);
+        start = System.nanoTime();
+        for (int i = 0; i < CANCEL_ORDERS; i++) {
+            if (queue.remove(orders.get(random.nextInt(n)))) sink++;
+        }
+        long cancel = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < SWEEP_ORDERS; i++) {
+            sink += queue.poll().getSize();
+        }
+        long sweep = System.nanoTime() - start;
+
+        if (report) print(n, "queue", insert / n, best / BEST_READS, sweep / SWEEP_ORDERS, cancel / CANCEL_ORDERS);
+
+    }
+
+
+    private static void runLadder(int n, List<LimitOrder> orders, boolean report, String name, PriceLadder<LimitOrder> ladder) {
+
+        long start = System.nanoTime();
+        for (LimitOrder o : orders) {
+            ladder.add(o, o.getLimitPrice());
+        }
+        long insert = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BEST_READS; i++) {
+            sink += ladder.getBestPrice();
+        }
+        long best = System.nanoTime() - start;
+
+        Random random = new Random(7);
+        start = System.nanoTime();
+        for (int i = 0; i < CANCEL_ORDERS; i++) {
+            LimitOrder o = orders.get(random.nextInt(n));
+            if (ladder.remove(o)) sink++;
+
+        }
+        long cancel = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < SWEEP_ORDERS; i++) {
+            sink += ladder.pollBest().getSize();
+        }
+        long sweep = System.nanoTime() - start;
+
+        if (report) print(n, name, insert / n, best / BEST_READS, sweep / SWEEP_ORDERS, cancel / CANCEL_ORDERS);
+
+
+    }
+
+
+    /**
+     * Runs measureAllocation() in a child JVM for the given order store and ladder. OrderBook
+     * reads Config_Server.properties from the working directory and opens its journal there, so
+     * the child runs in a scratch directory, with a copy of the config selecting them.
+     * The off-heap store has its own ladder (the "order_book_ladder" setting is ignored).
+     */
+    private static void runAllocation(String store, String ladder) {
+
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("benchmark-" + store);
+            Properties config = new Properties();
+            Path serverConfig = Paths.get("Config_Server.properties");
+            if (Files.exists(serverConfig)) {
+                try (Reader reader = Files.newBufferedReader(serverConfig)) {
+                    config.load(reader);
+                }
+            }
+            config.setProperty("order_store", store);
+            config.setProperty("order_book_ladder", ladder);
+            config.setProperty("price_band_min", "1");
+            config.setProperty("price_band_max", String.valueOf(1_000 + PRICE_BAND));   // array ladder over the prices used
+            config.setProperty("matching_mode", "lock");     // commands run on the calling thread
+            config.setProperty("durability", "async");      // no fsync wait between two orders
+            try (Writer writer = Files.newBufferedWriter(dir.resolve("Config_Server.properties"))) {
+                config.store(writer, "OrderBookBenchmark");
+            }
+
+            StringBuilder classPath = new StringBuilder();
+            for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                if (classPath.length() > 0) classPath.append(File.pathSeparator);
+                classPath.append(Paths.get(entry).toAbsolutePath());
+            }
+            Process child = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", classPath.toString(), OrderBookBenchmark.class.getName(), "allocation", store, ladder)
+                    .directory(dir.toFile())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+
+            // The child also logs its startup on stdout: its result is the last line
+            String result = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    result = line;
+                }
+            }
+            if (child.waitFor() != 0 || result == null) {
+                System.err.println("[Benchmark] Allocation run failed for " + store + "/" + ladder);
+                return;
+            }
+            System.out.println(result);
+        } catch (IOException e) {
+            System.err.println("[Benchmark] Allocation run failed for " + store + "/" + ladder + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            deleteRecursively(dir);
+        }
+
+    }
+
+
+    /**
+     * Heap allocated by OrderBook.addLimitOrder() in steady state, in the order store selected
+     * by the config of the working directory (see runAllocation()).
+     *
+     * 1. ALLOCATION_BOOK asks rest in the book first.
+     * 2. Then each bid of 1..100 takes liquidity from the best ask levels, and an ask of the
+     *    same size rests at a random price, so the book keeps its size.
+     * 3. Warm-up rounds come before the measured round; the orders of a round are built before
+     *    it, as requests are parsed before they reach the book.
+     * 4. The calling thread's allocation counter is read around each call: "take" is a bid
+     *    (matching, journal record, and the trade map returned to the client), "rest" an ask.
+     */
+    private static void measureAllocation(String name) {
+
+        OrderBook book = OrderBook.getInstance();
+        book.load();
+        Random random = new Random(11);
+        int orderId = 0;
+        for (int i = 0; i < ALLOCATION_BOOK; i++) {
+            orderId++;
+            book.addLimitOrder(new LimitOrder(orderId, "user" + (i % 100), "ask", 1 + random.nextInt(100), orderId, 1_000 + random.nextInt(PRICE_BAND)));
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            LimitOrder[] orders = new LimitOrder[2 * ALLOCATION_ORDERS];
+            for (int i = 0; i < orders.length; i += 2) {
+                int size = 1 + random.nextInt(100);
+                orderId++;
+                orders[i] = new LimitOrder(orderId, "taker", "bid", size, orderId, 1_000 + PRICE_BAND);
+                orderId++;
+                orders[i + 1] = new LimitOrder(orderId, "user" + (i % 100), "ask", size, orderId, 1_000 + random.nextInt(PRICE_BAND));
+            }
+
+            long take = 0;
+            long rest = 0;
+            for (int i = 0; i < orders.length; i += 2) {
+                long allocated = threads.getCurrentThreadAllocatedBytes();
+                sink += book.addLimitOrder(orders[i]).size();
+                long taken = threads.getCurrentThreadAllocatedBytes();
+                sink += book.addLimitOrder(orders[i + 1]).size();
+                rest += threads.getCurrentThreadAllocatedBytes() - taken;
+                take += taken - allocated;
+            }
+
+            if (round == WARMUP_ROUNDS) {
+                System.out.printf("%-10d %-14s %14.1f %14.1f%n", ALLOCATION_BOOK, name,
+                        (double) take / ALLOCATION_ORDERS, (double) rest / ALLOCATION_ORDERS);
+            }
+        }
+
+    }
+
+
+    /**
+     * Rests n ask orders (built one by one, as requests would arrive) in the given store
+     * and measures the heap it still holds once the request objects are garbage.
+     */
+    private static void runRetained(int n, String store) {
+
+        long before = usedHeap();
+        Random random = new Random(42);
+        Object book;
+        long offHeapBytes = 0;
+
+        if ("offheap".equals(store)) {
+            OffHeapOrderBook offHeap = new OffHeapOrderBook(SelfTradePolicy.SKIP, 65_536, scratchJournal(), new ColdOrderIndex(null));
+            ExecutionBuffer fills = new ExecutionBuffer();
+            for (int i = 0; i < n; i++) {
+                LimitOrder o = new LimitOrder(i + 1, "user" + (i % 100), "ask", 1 + random.nextInt(100), i, 1_000 + random.nextInt(PRICE_BAND));
+                fills.reset("BENCH", i);
+                fills.beginGroup(o, OrderKind.LIMIT);
+                offHeap.addLimitOrder(o, fills);
+            }
+            offHeapBytes = offHeap.getReservedBytes();
+            book = offHeap;
+        } else {
+            PriceLadder<LimitOrder> ladder = new TreePriceLadder<>(false);
+            java.util.Map<Integer, Order> activeOrders = new java.util.concurrent.ConcurrentHashMap<>();
+            for (int i = 0; i < n; i++) {
+                LimitOrder o = new LimitOrder(i + 1, "user" + (i % 100), "ask", 1 + random.nextInt(100), i, 1_000 + random.nextInt(PRICE_BAND));
+                activeOrders.put(o.getOrderId(), o);
+                ladder.add(o, o.getLimitPrice());
+            }
+            book = new Object[] {ladder, activeOrders};
+        }
+
+        long retained = usedHeap() - before;
+        sink += book.hashCode();
+        System.out.printf("%-10d %-8s %14.1f %14.1f%n", n, store, (double) retained / n, (double) offHeapBytes / n);
+
+    }
+
+
+    // Journal in a temporary file: resting orders alone produce no event, nothing is committed
+    private static BookJournal scratchJournal() {
+
+        try {
+            Path dir = Files.createTempDirectory("benchmark");
+            dir.toFile().deleteOnExit();
+            dir.resolve("benchmark.journal.000000").toFile().deleteOnExit();
+            Journal journal = new Journal(dir.resolve("benchmark.journal").toString(), 4096);
+            return new BookJournal(journal, new JournalFlusher(journal, JournalFlusher.Durability.SYNC, 0, 1, "benchmark"), Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+
+    }
+
+
+    private static void deleteRecursively(Path dir) {
+
+        if (dir == null) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("[Benchmark] Cannot delete " + dir + ": " + e.getMessage());
+        }
+
+    }
+
+
+    private static long usedHeap() {
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+    }
+
+
+    private static void print(int n, String book, long insert, long best, long sweep, long cancel) {
+
+        System.out.printf("%-10d %-8s %14d %14d %14d %14d%n", n, book, insert, best, sweep, cancel);
+    }
+}